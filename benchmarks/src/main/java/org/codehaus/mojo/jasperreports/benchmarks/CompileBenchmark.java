@@ -0,0 +1,168 @@
+package org.codehaus.mojo.jasperreports.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.util.JRSaver;
+import net.sf.jasperreports.engine.xml.JRXmlLoader;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.mojo.jasperreports.ExpressionBatch;
+import org.codehaus.mojo.jasperreports.JavaFileManagerPool;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compiles a generated corpus the way the mojo does: every design is loaded, compiled and serialized,
+ * either report by report or, for the batch strategies, with the expression classes of all reports
+ * compiled together.
+ * <p>
+ * Scores are given per report. With <code>reuse=warm</code> the context and its file managers are kept
+ * from one invocation to the next, as within a build; with <code>reuse=cold</code> they are created for
+ * every invocation, as at the start of a build.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@OperationsPerInvocation(CompileBenchmark.REPORTS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CompileBenchmark {
+
+    static final int REPORTS = 20;
+
+    @Param({"javac", "inMemory", "javacBatch", "inMemoryBatch"})
+    public String strategy;
+
+    @Param({"10", "100", "400"})
+    public int expressions;
+
+    @Param({"cold", "warm"})
+    public String reuse;
+
+    private File directory;
+
+    private List<File> designs;
+
+    private ExecutorService executor;
+
+    private JavaFileManagerPool fileManagerPool;
+
+    private SimpleJasperReportsContext context;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() throws IOException {
+        directory = Files.createTempDirectory("jasperreports-benchmark").toFile();
+        designs = ReportCorpus.generate(new File(directory, "src"), REPORTS, expressions);
+        executor = Executors.newSingleThreadExecutor();
+        if ("warm".equals(reuse)) {
+            createContext();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareInvocation() {
+        if ("cold".equals(reuse)) {
+            createContext();
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void finishInvocation() {
+        if ("cold".equals(reuse)) {
+            fileManagerPool.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        executor.shutdownNow();
+        fileManagerPool.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private void createContext() {
+        File tempDir = new File(directory, "java");
+        tempDir.mkdirs();
+        fileManagerPool = new JavaFileManagerPool();
+        context = Compilers.createContext(Compilers.getCompilerClass(strategy), tempDir, fileManagerPool);
+    }
+
+    @Benchmark
+    public void compile(Blackhole blackhole) throws Exception {
+        if (strategy.endsWith("Batch")) {
+            compileBatch(blackhole);
+        } else {
+            JasperCompileManager compileManager = JasperCompileManager.getInstance(context);
+            for (File design : designs) {
+                JasperReport report = compileManager.compile(JRXmlLoader.load(context, design));
+                blackhole.consume(serialize(report));
+            }
+        }
+    }
+
+    private void compileBatch(Blackhole blackhole) throws Exception {
+        ExpressionBatch batch = new ExpressionBatch(new SystemStreamLog(), null);
+        SimpleJasperReportsContext batchContext = new SimpleJasperReportsContext(context);
+        batchContext.setValue(ExpressionBatch.CONTEXT_KEY, batch);
+        JasperCompileManager compileManager = JasperCompileManager.getInstance(batchContext);
+
+        List<JasperReport> reports = new ArrayList<JasperReport>(designs.size());
+        for (File design : designs) {
+            JasperDesign jasperDesign = JRXmlLoader.load(batchContext, design);
+            reports.add(compileManager.compile(jasperDesign));
+        }
+        batch.compile(executor, Compilers.getClasspath(), 500);
+        for (JasperReport report : reports) {
+            batch.resolve(report);
+            blackhole.consume(serialize(report));
+        }
+    }
+
+    private static byte[] serialize(JasperReport report) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JRSaver.saveObject(report, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+package org.codehaus.mojo.jasperreports.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import net.sf.jasperreports.engine.design.JRCompiler;
+import net.sf.jasperreports.engine.xml.JRXmlLoader;
+import org.codehaus.mojo.jasperreports.JavaFileManagerPool;
+import org.codehaus.mojo.jasperreports.MavenJavacCompiler;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compiles the expression sources of a generated corpus with
+ * {@link MavenJavacCompiler#compileClasses(File[], String)}, one call per report like the mojo does,
+ * leaving out loading, verifying and serializing the reports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@OperationsPerInvocation(CompileClassesBenchmark.REPORTS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CompileClassesBenchmark {
+
+    static final int REPORTS = 20;
+
+    @Param({"10", "100", "400"})
+    public int expressions;
+
+    private File directory;
+
+    private final List<File[]> sources = new ArrayList<File[]>();
+
+    private MavenJavacCompiler compiler;
+
+    /**
+     * Compiles the corpus once, keeping the generated sources of each report in a directory of its own.
+     */
+    @Setup(Level.Trial)
+    public void generateSources() throws Exception {
+        directory = Files.createTempDirectory("jasperreports-benchmark").toFile();
+        List<File> designs = ReportCorpus.generate(new File(directory, "src"), REPORTS, expressions);
+        JavaFileManagerPool fileManagerPool = new JavaFileManagerPool();
+        for (File design : designs) {
+            File tempDir = new File(directory, design.getName() + ".java");
+            tempDir.mkdirs();
+            SimpleJasperReportsContext context =
+                    Compilers.createContext(MavenJavacCompiler.class.getName(), tempDir, fileManagerPool);
+            context.setProperty(JRCompiler.COMPILER_KEEP_JAVA_FILE, Boolean.TRUE.toString());
+            JasperCompileManager.getInstance(context).compile(JRXmlLoader.load(context, design));
+            sources.add(tempDir.listFiles(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".java");
+                }
+            }));
+            if (compiler == null) {
+                compiler = new MavenJavacCompiler(context);
+            }
+        }
+        fileManagerPool.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSources() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void compileClasses() throws Exception {
+        String classpath = Compilers.getClasspath();
+        for (File[] reportSources : sources) {
+            compiler.compileClasses(reportSources, classpath);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.codehaus.mojo.jasperreports.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.lang.reflect.Field;
+
+import net.sf.jasperreports.engine.JRReport;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import net.sf.jasperreports.engine.design.JRCompiler;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.mojo.jasperreports.CompilerSettings;
+import org.codehaus.mojo.jasperreports.InMemoryJavacCompiler;
+import org.codehaus.mojo.jasperreports.JavaFileManagerPool;
+import org.codehaus.mojo.jasperreports.MavenJavacCompiler;
+import org.codehaus.plexus.compiler.javac.JavacCompiler;
+import org.codehaus.plexus.compiler.javac.JavaxToolsCompiler;
+
+/**
+ * Sets up JasperReports contexts the way the mojo does, outside of a Maven build.
+ */
+public class Compilers {
+
+    private Compilers() {}
+
+    /**
+     * @return the report compiler class of the given strategy
+     */
+    public static String getCompilerClass(String strategy) {
+        if (strategy.startsWith("inMemory")) {
+            return InMemoryJavacCompiler.class.getName();
+        } else if (strategy.startsWith("javac")) {
+            return MavenJavacCompiler.class.getName();
+        }
+        throw new IllegalArgumentException("Unknown strategy " + strategy);
+    }
+
+    /**
+     * Creates a context holding the compiler settings and file managers, like the mojo does.
+     */
+    public static SimpleJasperReportsContext createContext(
+            String compilerClass, File tempDir, JavaFileManagerPool fileManagerPool) {
+        SimpleJasperReportsContext context = new SimpleJasperReportsContext();
+        context.setProperty(JRCompiler.COMPILER_CLASSPATH, getClasspath());
+        context.setProperty(JRCompiler.COMPILER_TEMP_DIR, tempDir.getAbsolutePath());
+        context.setProperty(JRCompiler.COMPILER_KEEP_JAVA_FILE, Boolean.FALSE.toString());
+        context.setProperty(JRCompiler.COMPILER_PREFIX + JRReport.LANGUAGE_JAVA, compilerClass);
+        context.setValue(
+                CompilerSettings.CONTEXT_KEY,
+                new CompilerSettings(new SystemStreamLog(), createJavacCompiler(), true, "UTF-8", null, "1.8", "1.8"));
+        context.setValue(JavaFileManagerPool.CONTEXT_KEY, fileManagerPool);
+        return context;
+    }
+
+    public static String getClasspath() {
+        return System.getProperty("java.class.path");
+    }
+
+    /**
+     * Creates the plexus compiler the mojo gets from the compiler manager. Outside of a container its
+     * in-process compiler has to be set by hand.
+     */
+    static JavacCompiler createJavacCompiler() {
+        JavacCompiler compiler = new JavacCompiler();
+        try {
+            Field field = JavacCompiler.class.getDeclaredField("inProcessCompiler");
+            field.setAccessible(true);
+            field.set(compiler, new JavaxToolsCompiler());
+        } catch (NoSuchFieldException e) {
+            // older versions create it themselves
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return compiler;
+    }
+}
@@ -0,0 +1,136 @@
+package org.codehaus.mojo.jasperreports.benchmarks;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates report designs with a given number of text field expressions, a few parameters, fields
+ * and variables, and a subdataset every hundred expressions, so that the benchmarks do not depend on
+ * report designs checked in somewhere.
+ */
+public class ReportCorpus {
+
+    private static final int FIELDS = 10;
+
+    private static final int ROWS = 40;
+
+    private ReportCorpus() {}
+
+    /**
+     * Writes <code>count</code> report designs to the given directory.
+     *
+     * @return the written files
+     */
+    public static List<File> generate(File directory, int count, int expressions) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < count; i++) {
+            String name = "Report" + i + "x" + expressions;
+            File file = new File(directory, name + ".jrxml");
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                writer.write(design(name, i, expressions));
+            } finally {
+                writer.close();
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    static String design(String name, int seed, int expressions) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<jasperReport xmlns=\"http://jasperreports.sourceforge.net/jasperreports\"")
+                .append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"")
+                .append(" xsi:schemaLocation=\"http://jasperreports.sourceforge.net/jasperreports")
+                .append(" http://jasperreports.sourceforge.net/xsd/jasperreport.xsd\"")
+                .append(" name=\"")
+                .append(name)
+                .append("\" pageWidth=\"595\" pageHeight=\"842\" columnWidth=\"555\"")
+                .append(" leftMargin=\"20\" rightMargin=\"20\" topMargin=\"20\" bottomMargin=\"20\">\n");
+        sb.append("\t<import value=\"java.text.*\"/>\n");
+
+        int datasets = expressions / 100;
+        for (int d = 0; d < datasets; d++) {
+            sb.append("\t<subDataset name=\"dataset").append(d).append("\">\n");
+            fields(sb, "\t\t");
+            sb.append("\t\t<variable name=\"total\" class=\"java.lang.Integer\" calculation=\"Sum\">\n")
+                    .append("\t\t\t<variableExpression><![CDATA[Integer.valueOf($F{field0} == null ? 0 : ")
+                    .append(seed + d)
+                    .append(")]]></variableExpression>\n")
+                    .append("\t\t</variable>\n");
+            sb.append("\t</subDataset>\n");
+        }
+
+        sb.append("\t<parameter name=\"TITLE\" class=\"java.lang.String\"/>\n");
+        sb.append("\t<parameter name=\"LIMIT\" class=\"java.lang.Integer\"/>\n");
+        fields(sb, "\t");
+        sb.append("\t<variable name=\"count\" class=\"java.lang.Integer\" calculation=\"Count\">\n")
+                .append("\t\t<variableExpression><![CDATA[Integer.valueOf(1)]]></variableExpression>\n")
+                .append("\t</variable>\n");
+
+        sb.append("\t<detail>\n\t\t<band height=\"").append(ROWS * 15).append("\">\n");
+        for (int e = 0; e < expressions; e++) {
+            sb.append("\t\t\t<textField>\n")
+                    .append("\t\t\t\t<reportElement x=\"")
+                    .append((e / ROWS) % 5 * 110)
+                    .append("\" y=\"")
+                    .append(e % ROWS * 15)
+                    .append("\" width=\"110\" height=\"15\"/>\n")
+                    .append("\t\t\t\t<textFieldExpression><![CDATA[")
+                    .append(expression(seed, e))
+                    .append("]]></textFieldExpression>\n")
+                    .append("\t\t\t</textField>\n");
+        }
+        sb.append("\t\t</band>\n\t</detail>\n");
+        sb.append("</jasperReport>\n");
+        return sb.toString();
+    }
+
+    private static void fields(StringBuilder sb, String indent) {
+        for (int f = 0; f < FIELDS; f++) {
+            sb.append(indent).append("<field name=\"field").append(f).append("\" class=\"java.lang.String\"/>\n");
+        }
+    }
+
+    /**
+     * @return one of a few kinds of expressions, all different, so that no two reports share classes
+     */
+    private static String expression(int seed, int index) {
+        String field = "$F{field" + index % FIELDS + "}";
+        switch (index % 4) {
+            case 0:
+                return field + " + \" " + seed + "/" + index + "\"";
+            case 1:
+                return "$V{count} + \": \" + (" + field + " == null ? \"n/a\" : " + field + ".trim())";
+            case 2:
+                return "new DecimalFormat(\"#,##0.00\").format(" + field + " == null ? " + index + " : " + field
+                        + ".length() * " + (seed + 1) + ")";
+            default:
+                return "$P{LIMIT} != null && $V{count} > $P{LIMIT} ? $P{TITLE} : String.valueOf(" + index + ")";
+        }
+    }
+}
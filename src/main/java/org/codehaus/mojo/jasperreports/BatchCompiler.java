@@ -0,0 +1,40 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.util.Map;
+
+import net.sf.jasperreports.engine.JRException;
+
+/**
+ * A report compiler able to compile the expression classes of many reports at once.
+ *
+ * @see ExpressionBatch
+ */
+public interface BatchCompiler {
+
+    /**
+     * Compiles expression classes with a single compiler invocation.
+     *
+     * @param sources the source code of the classes to compile, by class name
+     * @param classpath the compilation classpath
+     * @param errors receives the compilation errors, by class name
+     * @return the bytecode of the classes which were compiled, by class name
+     * @throws JRException if the compiler could not be run at all
+     */
+    Map<String, byte[]> compileBatch(Map<String, String> sources, String classpath, Map<String, String> errors)
+            throws JRException;
+}
@@ -0,0 +1,374 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The state of the report designs compiled by the previous builds, kept in a single file.
+ * <p>
+ * Each entry records, by path relative to the source directory, the size, modification time and
+ * content hash of the design, the hash of the compiled report and the files the design depends on.
+ * These dependencies, such as style templates or images, have entries of their own without an output
+ * hash. The manifest also records a fingerprint of the compile environment, as compiled reports are
+ * only valid for the environment they were compiled in, and the builds of shards record its portable
+ * fingerprint, which does not depend on the machine, for the manifest merged from them. The manifest
+ * is read once when the build starts, updated in memory as reports are compiled
+ * (possibly concurrently), and written back atomically when the build ends, only if it changed.
+ * </p>
+ */
+public class BuildManifest {
+
+    private static final String HEADER = "#jasperreports-maven-plugin manifest 2";
+
+    private static final String ENVIRONMENT = "#environment\t";
+
+    private static final String PORTABLE_ENVIRONMENT = "#portable-environment\t";
+
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    private String environment;
+
+    private String portableEnvironment;
+
+    private boolean modified;
+
+    /**
+     * Reads a manifest. A missing file, or one written in another format, gives an empty manifest.
+     */
+    public static BuildManifest read(File file) throws IOException {
+        BuildManifest manifest = new BuildManifest();
+        if (!file.isFile()) {
+            return manifest;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            if (!HEADER.equals(reader.readLine())) {
+                return manifest;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(ENVIRONMENT)) {
+                    manifest.environment = line.substring(ENVIRONMENT.length());
+                    continue;
+                }
+                if (line.startsWith(PORTABLE_ENVIRONMENT)) {
+                    manifest.portableEnvironment = line.substring(PORTABLE_ENVIRONMENT.length());
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 6) {
+                    try {
+                        List<String> dependencies = fields[5].length() == 0
+                                ? Collections.<String>emptyList()
+                                : Arrays.asList(fields[5].split("\\|"));
+                        manifest.entries.put(
+                                fields[0],
+                                new Entry(
+                                        Long.parseLong(fields[1]),
+                                        Long.parseLong(fields[2]),
+                                        fields[3],
+                                        "-".equals(fields[4]) ? null : fields[4],
+                                        dependencies));
+                    } catch (NumberFormatException e) {
+                        // corrupt entry, the design is compiled again
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * @return the fingerprint of the environment the recorded reports were compiled in, or
+     *         <code>null</code>
+     */
+    public synchronized String getEnvironment() {
+        return environment;
+    }
+
+    public synchronized void setEnvironment(String environment) {
+        if (!environment.equals(this.environment)) {
+            this.environment = environment;
+            modified = true;
+        }
+    }
+
+    /**
+     * @return the portable fingerprint of the environment the recorded reports were compiled in, or
+     *         <code>null</code>
+     */
+    public synchronized String getPortableEnvironment() {
+        return portableEnvironment;
+    }
+
+    public synchronized void setPortableEnvironment(String portableEnvironment) {
+        if (portableEnvironment == null
+                ? this.portableEnvironment != null
+                : !portableEnvironment.equals(this.portableEnvironment)) {
+            this.portableEnvironment = portableEnvironment;
+            modified = true;
+        }
+    }
+
+    /**
+     * Drops all the entries.
+     */
+    public synchronized void clear() {
+        if (!entries.isEmpty()) {
+            entries.clear();
+            modified = true;
+        }
+    }
+
+    /**
+     * @return the entry of the given design, or <code>null</code> if it was not compiled before
+     */
+    public synchronized Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public synchronized void put(String path, Entry entry) {
+        if (!entry.equals(entries.put(path, entry))) {
+            modified = true;
+        }
+    }
+
+    public synchronized void remove(String path) {
+        if (entries.remove(path) != null) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Drops the entries of the designs which are not in the given collection, and those of the files
+     * no remaining design depends on.
+     */
+    public synchronized void prune(Collection<String> designs) {
+        Set<String> retained = new HashSet<String>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!entry.getValue().isResource() && designs.contains(entry.getKey())) {
+                retained.addAll(entry.getValue().getDependencies());
+            }
+        }
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Entry> entry = it.next();
+            if (entry.getValue().isResource()
+                    ? !retained.contains(entry.getKey())
+                    : !designs.contains(entry.getKey())) {
+                it.remove();
+                modified = true;
+            }
+        }
+    }
+
+    /**
+     * Adds the entries of another manifest, such as the partial manifest of a shard, replacing those
+     * of the same paths.
+     */
+    public synchronized void merge(BuildManifest other) {
+        for (Map.Entry<String, Entry> entry : other.getEntries().entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return a copy of the entries, by path
+     */
+    public synchronized Map<String, Entry> getEntries() {
+        return new TreeMap<String, Entry>(entries);
+    }
+
+    /**
+     * @return the paths of the entries which depend, directly or not, on one of the given paths
+     */
+    public synchronized Set<String> getDependents(Collection<String> paths) {
+        Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            for (String dependency : entry.getValue().getDependencies()) {
+                List<String> list = dependents.get(dependency);
+                if (list == null) {
+                    list = new ArrayList<String>();
+                    dependents.put(dependency, list);
+                }
+                list.add(entry.getKey());
+            }
+        }
+
+        Set<String> result = new TreeSet<String>();
+        LinkedList<String> queue = new LinkedList<String>(paths);
+        while (!queue.isEmpty()) {
+            List<String> list = dependents.get(queue.removeFirst());
+            if (list != null) {
+                for (String dependent : list) {
+                    if (result.add(dependent)) {
+                        queue.add(dependent);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return whether entries were added, changed or removed since the manifest was read
+     */
+    public synchronized boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Writes the manifest to a temporary file, which then replaces the given file.
+     */
+    public synchronized void write(File file) throws IOException {
+        OutputFiles.write(file, new OutputFiles.Content() {
+            public void writeTo(OutputStream out) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+                writer.write(HEADER);
+                writer.write('\n');
+                if (environment != null) {
+                    writer.write(ENVIRONMENT + environment + '\n');
+                }
+                if (portableEnvironment != null) {
+                    writer.write(PORTABLE_ENVIRONMENT + portableEnvironment + '\n');
+                }
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    Entry value = entry.getValue();
+                    writer.write(entry.getKey());
+                    writer.write('\t' + Long.toString(value.size));
+                    writer.write('\t' + Long.toString(value.lastModified));
+                    writer.write('\t' + value.sourceHash);
+                    writer.write('\t' + (value.outputHash == null ? "-" : value.outputHash));
+                    writer.write('\t');
+                    for (Iterator<String> it = value.dependencies.iterator(); it.hasNext(); ) {
+                        writer.write(it.next());
+                        if (it.hasNext()) {
+                            writer.write('|');
+                        }
+                    }
+                    writer.write('\n');
+                }
+                writer.flush();
+            }
+        });
+        modified = false;
+    }
+
+    /**
+     * The recorded state of a compiled report design, or of a file designs depend on.
+     */
+    public static class Entry {
+        private final long size;
+
+        private final long lastModified;
+
+        private final String sourceHash;
+
+        private final String outputHash;
+
+        private final List<String> dependencies;
+
+        public Entry(long size, long lastModified, String sourceHash, String outputHash) {
+            this(size, lastModified, sourceHash, outputHash, Collections.<String>emptyList());
+        }
+
+        /**
+         * @param outputHash the hash of the compiled report, <code>null</code> for a file which is not
+         *        a report design
+         * @param dependencies the paths of the files the design depends on
+         */
+        public Entry(
+                long size, long lastModified, String sourceHash, String outputHash, Collection<String> dependencies) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sourceHash = sourceHash;
+            this.outputHash = outputHash;
+            this.dependencies = Collections.unmodifiableList(new ArrayList<String>(dependencies));
+        }
+
+        /**
+         * Creates the entry of a file which is not a report design.
+         */
+        public static Entry resource(long size, long lastModified, String hash) {
+            return new Entry(size, lastModified, hash, null);
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getSourceHash() {
+            return sourceHash;
+        }
+
+        public String getOutputHash() {
+            return outputHash;
+        }
+
+        public boolean isResource() {
+            return outputHash == null;
+        }
+
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) obj;
+            return size == other.size
+                    && lastModified == other.lastModified
+                    && sourceHash.equals(other.sourceHash)
+                    && (outputHash == null ? other.outputHash == null : outputHash.equals(other.outputHash))
+                    && dependencies.equals(other.dependencies);
+        }
+
+        @Override
+        public int hashCode() {
+            return sourceHash.hashCode();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounds the size of the directories of files kept between builds, such as compiled reports and
+ * expression classes, by deleting the least recently used files first. Files are marked as used by
+ * updating their modification time when they are read.
+ */
+class CacheFiles {
+
+    private CacheFiles() {}
+
+    /**
+     * Deletes the least recently used files until their total size fits in the maximum size.
+     *
+     * @param files the files of the cache, sorted in place from the least recently used
+     * @param size the total size of the files
+     * @return the number of deleted files
+     */
+    static int evict(List<File> files, long size, long maxSize) {
+        if (size <= maxSize) {
+            return 0;
+        }
+
+        // the times are read once, as concurrent builds may update them while sorting
+        final Map<File, Long> lastModified = new HashMap<File, Long>();
+        for (File file : files) {
+            lastModified.put(file, Long.valueOf(file.lastModified()));
+        }
+        Collections.sort(files, new Comparator<File>() {
+            public int compare(File file1, File file2) {
+                return lastModified.get(file1).compareTo(lastModified.get(file2));
+            }
+        });
+
+        int deleted = 0;
+        for (File file : files) {
+            if (size <= maxSize) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,221 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rewrites compiled classes.
+ */
+public class ClassFiles {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int UTF8 = 1;
+
+    private static final int CLASS = 7;
+
+    private static final int STRING = 8;
+
+    private static final int NAME_AND_TYPE = 12;
+
+    private static final int METHOD_TYPE = 16;
+
+    /** The characters which may precede a class type in a descriptor or a signature. */
+    private static final String TYPE_PREFIXES = "()[;<>:+-*^";
+
+    private ClassFiles() {}
+
+    /**
+     * Renames a class in the default package. The class name is replaced in the names of the classes
+     * referred to, in the descriptors and signatures, and in the name of the source file; string literals
+     * and the names of fields and methods are left as they are, even when they contain the class name.
+     * <p>
+     * A string of the constant pool holding the class name is shared with the string literals equal to
+     * it: the renamed references then get a new string. Descriptors used by fields, methods or attributes
+     * only are renamed in place, as they never equal a literal of an expression class.
+     * </p>
+     *
+     * @param from the name the class was compiled with, in the default package
+     * @param to the name to give the class
+     */
+    public static byte[] rename(byte[] classBytes, String from, String to) throws IOException {
+        if (from.equals(to)) {
+            return classBytes;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classBytes));
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        int minorVersion = in.readUnsignedShort();
+        int majorVersion = in.readUnsignedShort();
+        int count = in.readUnsignedShort();
+        int[] tags = new int[count];
+        String[] strings = new String[count];
+        int[] references = new int[count];
+        byte[][] data = new byte[count][];
+        Set<Integer> literals = new HashSet<Integer>();
+        for (int i = 1; i < count; i++) {
+            tags[i] = in.readUnsignedByte();
+            switch (tags[i]) {
+                case UTF8:
+                    strings[i] = in.readUTF();
+                    break;
+                case CLASS:
+                case METHOD_TYPE:
+                    references[i] = in.readUnsignedShort();
+                    break;
+                case STRING:
+                    references[i] = in.readUnsignedShort();
+                    literals.add(Integer.valueOf(references[i]));
+                    break;
+                case NAME_AND_TYPE:
+                    data[i] = read(in, 2);
+                    references[i] = in.readUnsignedShort();
+                    break;
+                case 19: // Module
+                case 20: // Package
+                    data[i] = read(in, 2);
+                    break;
+                case 15: // MethodHandle
+                    data[i] = read(in, 3);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    data[i] = read(in, 4);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    data[i] = read(in, 8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tags[i]);
+            }
+        }
+
+        // rename the strings used as class names and descriptors, adding a new string for those shared
+        // with literals
+        List<String> added = new ArrayList<String>();
+        int[] renamedReferences = new int[count];
+        for (int i = 1; i < count; i++) {
+            if (tags[i] == CLASS || tags[i] == NAME_AND_TYPE || tags[i] == METHOD_TYPE) {
+                String string = strings[references[i]];
+                String renamed = tags[i] == CLASS && string.equals(from) ? to : renameTypes(string, from, to);
+                renamedReferences[i] = references[i];
+                if (renamed.equals(string)) {
+                    continue;
+                } else if (literals.contains(Integer.valueOf(references[i]))) {
+                    renamedReferences[i] = count + added.size();
+                    added.add(renamed);
+                } else {
+                    strings[references[i]] = renamed;
+                }
+            }
+        }
+        // the other strings are names, descriptors and signatures of fields, methods and attributes
+        for (int i = 1; i < count; i++) {
+            if (tags[i] == UTF8 && !literals.contains(Integer.valueOf(i))) {
+                strings[i] = strings[i].equals(from + ".java") ? to + ".java" : renameTypes(strings[i], from, to);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(classBytes.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(magic);
+        out.writeShort(minorVersion);
+        out.writeShort(majorVersion);
+        out.writeShort(count + added.size());
+        for (int i = 1; i < count; i++) {
+            out.writeByte(tags[i]);
+            switch (tags[i]) {
+                case UTF8:
+                    out.writeUTF(strings[i]);
+                    break;
+                case CLASS:
+                case METHOD_TYPE:
+                    out.writeShort(renamedReferences[i]);
+                    break;
+                case STRING:
+                    out.writeShort(references[i]);
+                    break;
+                case NAME_AND_TYPE:
+                    out.write(data[i]);
+                    out.writeShort(renamedReferences[i]);
+                    break;
+                default:
+                    out.write(data[i]);
+                    if (tags[i] == 5 || tags[i] == 6) {
+                        i++;
+                    }
+            }
+        }
+        for (String string : added) {
+            out.writeByte(UTF8);
+            out.writeUTF(string);
+        }
+        byte[] rest = read(in, in.available());
+        out.write(rest);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the descriptor or signature with the class types of the given name renamed
+     */
+    static String renameTypes(String descriptor, String from, String to) {
+        StringBuilder sb = null;
+        int start = 0;
+        int index = descriptor.indexOf('L' + from);
+        while (index >= 0) {
+            int end = index + 1 + from.length();
+            if ((index == 0 || TYPE_PREFIXES.indexOf(descriptor.charAt(index - 1)) >= 0)
+                    && end < descriptor.length()
+                    && (descriptor.charAt(end) == ';' || descriptor.charAt(end) == '<')) {
+                if (sb == null) {
+                    sb = new StringBuilder(descriptor.length() + to.length());
+                }
+                sb.append(descriptor, start, index + 1).append(to);
+                start = end;
+            }
+            index = descriptor.indexOf('L' + from, index + 1);
+        }
+        if (sb == null) {
+            return descriptor;
+        }
+        return sb.append(descriptor, start, descriptor.length()).toString();
+    }
+
+    private static byte[] read(DataInputStream in, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        in.readFully(buffer);
+        return buffer;
+    }
+}
@@ -0,0 +1,326 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import net.sf.jasperreports.engine.JasperReportsContext;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Narrows the compile classpath of expression classes down to the entries providing the packages their
+ * sources refer to, so that the compiler does not open and index every jar of the project for a few
+ * expressions.
+ * <p>
+ * The packages of each classpath entry are indexed once, the first time a classpath is narrowed. The
+ * packages referred to by a source are guessed from its imports and qualified names: every prefix of a
+ * qualified name is taken as a possible package, which keeps more entries than needed rather than fewer.
+ * A class may still need classes of entries which are left out, through its supertypes or signatures,
+ * so the compilers compile again with the whole classpath when the narrowed one fails.
+ * </p>
+ */
+public class ClasspathIndex {
+
+    public static final String CONTEXT_KEY = ClasspathIndex.class.getName();
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+    private static Set<String> jdkPackages;
+
+    private final String classpath;
+
+    private final Log log;
+
+    private List<Element> elements;
+
+    public ClasspathIndex(String classpath, Log log) {
+        this.classpath = classpath;
+        this.log = log;
+    }
+
+    /**
+     * @return the index stored in the given context, or <code>null</code> if the classpath is not narrowed
+     */
+    public static ClasspathIndex get(JasperReportsContext jasperReportsContext) {
+        return (ClasspathIndex) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    /**
+     * @return the entries of the given classpath which provide a package the given sources may refer to,
+     *         in their original order, or the classpath itself if it is not the indexed one
+     */
+    public String narrow(String classpath, Collection<String> sources) {
+        if (!this.classpath.equals(classpath)) {
+            return classpath;
+        }
+        Set<String> packages = new HashSet<String>();
+        for (String source : sources) {
+            addReferencedPackages(source, packages);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Element element : getElements()) {
+            if (element.providesAny(packages)) {
+                if (sb.length() > 0) {
+                    sb.append(File.pathSeparator);
+                }
+                sb.append(element.path);
+            }
+        }
+        return sb.toString();
+    }
+
+    private synchronized List<Element> getElements() {
+        if (elements == null) {
+            long start = System.nanoTime();
+            elements = new ArrayList<Element>();
+            for (String path : classpath.split(File.pathSeparator)) {
+                File file = new File(path);
+                if (path.length() == 0 || !file.exists()) {
+                    continue;
+                }
+                Set<String> packages = new HashSet<String>();
+                try {
+                    if (file.isDirectory()) {
+                        addDirectoryPackages(file, "", packages);
+                    } else {
+                        addJarPackages(file, packages);
+                    }
+                } catch (IOException e) {
+                    log.debug("Unable to index " + path + ", keeping it on the classpath: " + e);
+                    packages = null;
+                }
+                elements.add(new Element(path, packages));
+            }
+            log.debug("Indexed the packages of " + elements.size() + " classpath entries in "
+                    + CompileTimings.toMillis(System.nanoTime() - start) + " ms");
+        }
+        return elements;
+    }
+
+    /**
+     * @return the packages of the classes of the given classpath, along with the packages enclosing them
+     */
+    static Set<String> getPackages(String classpath) throws IOException {
+        Set<String> packages = new HashSet<String>();
+        for (String path : classpath.split(File.pathSeparator)) {
+            File file = new File(path);
+            if (path.length() == 0 || !file.exists()) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                addDirectoryPackages(file, "", packages);
+            } else {
+                addJarPackages(file, packages);
+            }
+        }
+        return addEnclosingPackages(packages);
+    }
+
+    /**
+     * @return the packages of the classes of the running JDK, along with the packages enclosing them: those
+     *         of the boot classpath up to Java 8, those of all the modules of the run-time image from Java 9
+     */
+    static synchronized Set<String> getJdkPackages() throws IOException {
+        if (jdkPackages == null) {
+            String bootClasspath = System.getProperty("sun.boot.class.path");
+            if (bootClasspath != null) {
+                jdkPackages = getPackages(bootClasspath);
+            } else {
+                Set<String> packages = new HashSet<String>();
+                DirectoryStream<Path> dirs = Files.newDirectoryStream(
+                        FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/packages"));
+                try {
+                    for (Path dir : dirs) {
+                        packages.add(dir.getFileName().toString());
+                    }
+                } finally {
+                    dirs.close();
+                }
+                jdkPackages = addEnclosingPackages(packages);
+            }
+        }
+        return jdkPackages;
+    }
+
+    private static Set<String> addEnclosingPackages(Set<String> packages) {
+        Set<String> all = new HashSet<String>(packages);
+        for (String packageName : packages) {
+            for (int dot = packageName.indexOf('.'); dot > 0; dot = packageName.indexOf('.', dot + 1)) {
+                all.add(packageName.substring(0, dot));
+            }
+        }
+        all.remove("");
+        return all;
+    }
+
+    private static void addJarPackages(File file, Set<String> packages) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            for (Enumeration<? extends ZipEntry> it = zip.entries(); it.hasMoreElements(); ) {
+                String name = it.nextElement().getName();
+                if (!name.endsWith(CLASS_SUFFIX)) {
+                    continue;
+                }
+                if (name.startsWith(VERSIONS_PREFIX)) {
+                    int slash = name.indexOf('/', VERSIONS_PREFIX.length());
+                    name = name.substring(slash + 1);
+                }
+                int slash = name.lastIndexOf('/');
+                packages.add(slash < 0 ? "" : name.substring(0, slash).replace('/', '.'));
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static void addDirectoryPackages(File dir, String packageName, Set<String> packages) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addDirectoryPackages(
+                        file,
+                        packageName.length() == 0 ? file.getName() : packageName + '.' + file.getName(),
+                        packages);
+            } else if (file.getName().endsWith(CLASS_SUFFIX)) {
+                packages.add(packageName);
+            }
+        }
+    }
+
+    /**
+     * Adds the packages the given Java source may refer to: those of its imports and the prefixes of its
+     * qualified names. Comments and literals are skipped.
+     */
+    static void addReferencedPackages(String source, Set<String> packages) {
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                i = source.indexOf('\n', i);
+                i = i < 0 ? length : i + 1;
+            } else if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*') {
+                i = source.indexOf("*/", i + 2);
+                i = i < 0 ? length : i + 2;
+            } else if (c == '"' || c == '\'') {
+                i = skipLiteral(source, i, c);
+            } else if (Character.isJavaIdentifierStart(c)) {
+                i = addQualifiedName(source, i, packages);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static int skipLiteral(String source, int start, char quote) {
+        int i = start + 1;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static int addQualifiedName(String source, int start, Set<String> packages) {
+        StringBuilder name = new StringBuilder();
+        int i = start;
+        while (true) {
+            int end = i;
+            while (end < source.length() && Character.isJavaIdentifierPart(source.charAt(end))) {
+                end++;
+            }
+            name.append(source, i, end);
+            int next = skipWhitespace(source, end);
+            if (next >= source.length() || source.charAt(next) != '.') {
+                return end;
+            }
+            int afterDot = skipWhitespace(source, next + 1);
+            if (afterDot < source.length() && source.charAt(afterDot) == '*') {
+                // an import on demand names a package, or a class
+                packages.add(name.toString());
+                return afterDot + 1;
+            }
+            if (afterDot >= source.length() || !Character.isJavaIdentifierStart(source.charAt(afterDot))) {
+                return afterDot;
+            }
+            packages.add(name.toString());
+            name.append('.');
+            i = afterDot;
+        }
+    }
+
+    private static int skipWhitespace(String source, int start) {
+        int i = start;
+        while (i < source.length() && Character.isWhitespace(source.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * A classpath entry and the packages it provides, <code>null</code> if they are unknown.
+     */
+    private static class Element {
+        private final String path;
+
+        private final Set<String> packages;
+
+        Element(String path, Set<String> packages) {
+            this.path = path;
+            this.packages = packages;
+        }
+
+        boolean providesAny(Set<String> referenced) {
+            if (packages == null) {
+                return true;
+            }
+            Set<String> smaller = packages.size() < referenced.size() ? packages : referenced;
+            Set<String> larger = smaller == packages ? referenced : packages;
+            for (String packageName : smaller) {
+                if (larger.contains(packageName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
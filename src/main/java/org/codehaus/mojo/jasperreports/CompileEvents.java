@@ -0,0 +1,97 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+/**
+ * Emits the phases of the compilation of the report designs as events of the Java Flight Recorder,
+ * so that a recording of a build shows which reports the plugin was loading, verifying or compiling
+ * next to the garbage collections and I/O of the same time.
+ * <p>
+ * The plugin is compiled for Java 8, which lacks the <code>jdk.jfr</code> API. The events are emitted
+ * by {@link #JFR_IMPLEMENTATION}, which is compiled separately into the Java 11 version of the
+ * multi-release plugin jar; when the plugin was built without it, or runs on an older JVM, this class
+ * does nothing. The events cost close to
+ * nothing while no recording is running.
+ * </p>
+ */
+public class CompileEvents {
+
+    static final String JFR_IMPLEMENTATION = "org.codehaus.mojo.jasperreports.JfrCompileEvents";
+
+    private static final CompileEvents INSTANCE = create();
+
+    private static CompileEvents create() {
+        try {
+            return (CompileEvents) Class.forName(JFR_IMPLEMENTATION).newInstance();
+        } catch (ClassNotFoundException e) {
+            // the plugin was built without the events
+        } catch (LinkageError e) {
+            // the JVM does not provide the events
+        } catch (InstantiationException e) {
+            // idem
+        } catch (IllegalAccessException e) {
+            // idem
+        }
+        return new CompileEvents();
+    }
+
+    public static CompileEvents get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts timing a phase of the compilation of a report design.
+     *
+     * @param report the path of the design, or <code>null</code> if the phase is not specific to one
+     */
+    public Span begin(CompileTimings.Phase phase, String report) {
+        return Span.NONE;
+    }
+
+    /**
+     * Starts timing an invocation of the Java compiler.
+     *
+     * @param report the path of the design, or <code>null</code> if the sources are those of a batch
+     */
+    public Span beginJavac(String report, int sourceCount, int classpathSize) {
+        return Span.NONE;
+    }
+
+    /**
+     * Starts timing the check of whether a report design needs to be compiled. Its outcome is only known
+     * once the dependencies of all the designs were checked: the check is then {@link Span#stop stopped},
+     * and {@link Span#end ended} after its outcome was given to {@link Span#setUpToDate}.
+     */
+    public Span beginUpToDateCheck(String report) {
+        return Span.NONE;
+    }
+
+    /**
+     * A phase being timed, emitted once {@link #end} is called.
+     */
+    public static class Span {
+        static final Span NONE = new Span();
+
+        public void setUpToDate(boolean upToDate) {}
+
+        /**
+         * Stops timing the phase, which is emitted later by {@link #end}.
+         */
+        public void stop() {}
+
+        public void end() {}
+    }
+}
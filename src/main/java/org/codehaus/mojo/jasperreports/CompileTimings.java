@@ -0,0 +1,290 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.jasperreports.engine.JasperReportsContext;
+
+/**
+ * The time spent compiling each report design, by phase.
+ * <p>
+ * The mojo times the phases it runs itself. The compilers of the plugin find the instance in the
+ * {@link JasperReportsContext} under {@link #CONTEXT_KEY} and add the time spent generating and
+ * compiling the expression classes to the report the current thread is compiling. Expression classes
+ * compiled in batches are not attributed to single reports, their time is recorded separately.
+ * </p>
+ */
+public class CompileTimings {
+
+    public static final String CONTEXT_KEY = CompileTimings.class.getName();
+
+    /**
+     * The phases of the compilation of a report design.
+     */
+    public enum Phase {
+        /** Parsing and validating the XML of the design. */
+        LOAD("load"),
+        /** Verifying the design and collecting its expressions. */
+        VERIFY("verify"),
+        /** Generating the sources of the expression classes. */
+        GENERATE("generate"),
+        /** Compiling the expression classes. */
+        JAVAC("javac"),
+        /** Serializing and writing the compiled report. */
+        WRITE("write");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Map<String, Report> reports = new TreeMap<String, Report>();
+
+    private final ThreadLocal<Report> current = new ThreadLocal<Report>();
+
+    private final AtomicLong batchNanos = new AtomicLong();
+
+    /**
+     * @return the timings stored in the given context, or <code>null</code> if compile times are not
+     *         recorded
+     */
+    public static CompileTimings get(JasperReportsContext jasperReportsContext) {
+        return (CompileTimings) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    /**
+     * Starts recording the timings of a report design, which the current thread compiles until
+     * {@link #end} is called.
+     */
+    public Report start(String name) {
+        Report report = new Report(name);
+        synchronized (reports) {
+            reports.put(name, report);
+        }
+        current.set(report);
+        return report;
+    }
+
+    public void end() {
+        current.remove();
+    }
+
+    /**
+     * @return the path of the report design the current thread compiles, or <code>null</code> if none
+     */
+    public String getCurrentReport() {
+        Report report = current.get();
+        return report != null ? report.getName() : null;
+    }
+
+    /**
+     * Adds time to a phase of the report design the current thread compiles, if any.
+     */
+    public void add(Phase phase, long nanos) {
+        Report report = current.get();
+        if (report != null) {
+            report.add(phase, nanos);
+        }
+    }
+
+    /**
+     * Adds time spent compiling the expression classes of several reports at once.
+     */
+    public void addBatch(long nanos) {
+        batchNanos.addAndGet(nanos);
+    }
+
+    public long getBatchNanos() {
+        return batchNanos.get();
+    }
+
+    public List<Report> getReports() {
+        synchronized (reports) {
+            return new ArrayList<Report>(reports.values());
+        }
+    }
+
+    /**
+     * @return the time spent in a phase by all reports
+     */
+    public long getTotal(Phase phase) {
+        long total = 0;
+        for (Report report : getReports()) {
+            total += report.get(phase);
+        }
+        return total;
+    }
+
+    /**
+     * @return the reports which took the most time, slowest first
+     */
+    public List<Report> getSlowest(int count) {
+        List<Report> slowest = getReports();
+        Collections.sort(slowest, new Comparator<Report>() {
+            public int compare(Report report1, Report report2) {
+                long total1 = report1.getTotal();
+                long total2 = report2.getTotal();
+                return total1 > total2 ? -1 : total1 < total2 ? 1 : 0;
+            }
+        });
+        return slowest.subList(0, Math.min(count, slowest.size()));
+    }
+
+    /**
+     * Writes the timings as CSV if the file name ends with <code>.csv</code>, as JSON otherwise.
+     * Times are given in milliseconds.
+     */
+    public void write(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            if (file.getName().endsWith(".csv")) {
+                writeCsv(writer);
+            } else {
+                writeJson(writer);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeCsv(Writer writer) throws IOException {
+        writer.write("report,cached");
+        for (Phase phase : Phase.values()) {
+            writer.write(',' + phase.getLabel() + "_ms");
+        }
+        writer.write(",total_ms\n");
+        for (Report report : getReports()) {
+            String name = report.getName();
+            if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0) {
+                name = '"' + name.replace("\"", "\"\"") + '"';
+            }
+            writer.write(name + ',' + report.isCached());
+            for (Phase phase : Phase.values()) {
+                writer.write(',' + toMillis(report.get(phase)));
+            }
+            writer.write(',' + toMillis(report.getTotal()) + '\n');
+        }
+    }
+
+    private void writeJson(Writer writer) throws IOException {
+        writer.write("{\n  \"reports\": [");
+        String separator = "\n";
+        for (Report report : getReports()) {
+            writer.write(
+                    separator + "    {\"report\": " + quote(report.getName()) + ", \"cached\": " + report.isCached());
+            for (Phase phase : Phase.values()) {
+                writer.write(", \"" + phase.getLabel() + "Ms\": " + toMillis(report.get(phase)));
+            }
+            writer.write(", \"totalMs\": " + toMillis(report.getTotal()) + "}");
+            separator = ",\n";
+        }
+        writer.write("\n  ],\n  \"totals\": {");
+        separator = "";
+        for (Phase phase : Phase.values()) {
+            writer.write(separator + "\"" + phase.getLabel() + "Ms\": " + toMillis(getTotal(phase)));
+            separator = ", ";
+        }
+        writer.write("},\n  \"batchJavacMs\": " + toMillis(getBatchNanos()) + "\n}\n");
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", Integer.valueOf(c)));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    public static String toMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", Double.valueOf(nanos / 1000000.0));
+    }
+
+    /**
+     * The timings of one report design.
+     */
+    public static class Report {
+        private final String name;
+
+        private final long[] nanos = new long[Phase.values().length];
+
+        private boolean cached;
+
+        Report(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized void add(Phase phase, long time) {
+            nanos[phase.ordinal()] += time;
+        }
+
+        public synchronized long get(Phase phase) {
+            return nanos[phase.ordinal()];
+        }
+
+        public synchronized long getTotal() {
+            long total = 0;
+            for (long time : nanos) {
+                total += time;
+            }
+            return total;
+        }
+
+        /**
+         * @return whether the compiled report was restored from the cache rather than compiled
+         */
+        public synchronized boolean isCached() {
+            return cached;
+        }
+
+        public synchronized void setCached(boolean cached) {
+            this.cached = cached;
+        }
+    }
+}
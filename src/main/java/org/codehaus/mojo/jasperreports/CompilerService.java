@@ -0,0 +1,341 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import org.apache.maven.execution.MavenSession;
+import org.codehaus.plexus.compiler.Compiler;
+import org.codehaus.plexus.compiler.manager.CompilerManager;
+import org.codehaus.plexus.compiler.manager.NoSuchCompilerException;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Keeps the report class loaders and compiler file managers of a Maven session, so that the executions
+ * of the plugin in the modules of a reactor sharing a classpath reuse the loaded and warmed up classes
+ * instead of creating new ones.
+ * <p>
+ * Resources are keyed by a fingerprint of the classpath and by their parent class loader. A few of them are kept while unused; the least
+ * recently used ones beyond that are closed, and all of them are closed when the session ends.
+ * </p>
+ * <p>
+ * The service of a session is started and closed by the {@link CompilerServiceParticipant}, which Maven
+ * only runs when the plugin is declared with <code>&lt;extensions&gt;true&lt;/extensions&gt;</code>.
+ * Otherwise there is no service, each execution closes the resources it created, and the plugin warns
+ * once per session when the build has several modules.
+ * </p>
+ */
+public class CompilerService {
+
+    /**
+     * The key of the service in the session data, which is specific to the class loader of the plugin:
+     * executions configured with other plugin dependencies do not share it.
+     */
+    private static final String SESSION_KEY =
+            CompilerService.class.getName() + '@' + System.identityHashCode(CompilerService.class.getClassLoader());
+
+    /**
+     * The key of the flag recording that the executions of a session were told they do not share their
+     * resources.
+     */
+    private static final String UNSHARED_KEY = SESSION_KEY + ".unshared";
+
+    private static final int MAX_IDLE = 4;
+
+    private final Map<Key, Resources> resources = new LinkedHashMap<Key, Resources>(16, 0.75f, true);
+
+    /**
+     * @return the service of the given session, or <code>null</code> if it was not started
+     */
+    public static CompilerService get(MavenSession session) {
+        return get(getRepositorySession(session));
+    }
+
+    static CompilerService get(RepositorySystemSession session) {
+        return session != null ? (CompilerService) session.getData().get(SESSION_KEY) : null;
+    }
+
+    /**
+     * Starts the service of a session, which is then kept until {@link #stop stopped}.
+     */
+    static void start(MavenSession session) {
+        start(getRepositorySession(session));
+    }
+
+    static void start(RepositorySystemSession session) {
+        if (session != null) {
+            session.getData().set(SESSION_KEY, null, new CompilerService());
+        }
+    }
+
+    /**
+     * Closes the service of a session.
+     */
+    static void stop(MavenSession session) {
+        stop(getRepositorySession(session));
+    }
+
+    static void stop(RepositorySystemSession session) {
+        CompilerService service = get(session);
+        if (service != null) {
+            session.getData().set(SESSION_KEY, service, null);
+            service.close();
+        }
+    }
+
+    /**
+     * @return whether this is the first execution of the session to find it has no service
+     */
+    static boolean isFirstUnshared(MavenSession session) {
+        RepositorySystemSession repositorySession = getRepositorySession(session);
+        if (repositorySession == null) {
+            return false;
+        }
+        SessionData data = repositorySession.getData();
+        return data.set(UNSHARED_KEY, null, Boolean.TRUE);
+    }
+
+    private static RepositorySystemSession getRepositorySession(MavenSession session) {
+        return session != null ? session.getRepositorySession() : null;
+    }
+
+    /**
+     * Gets the resources of a classpath, creating them if needed. They must be given back with
+     * {@link #release} once the execution is done with them.
+     *
+     * @param fingerprint the fingerprint of the classpath
+     */
+    public synchronized Resources acquire(String fingerprint, URL[] urls, ClassLoader parent) {
+        Key key = new Key(fingerprint, parent);
+        Resources shared = resources.get(key);
+        if (shared == null) {
+            shared = new Resources(urls, parent);
+            resources.put(key, shared);
+        }
+        shared.users++;
+        return shared;
+    }
+
+    public synchronized void release(Resources shared) {
+        shared.users--;
+
+        int idle = 0;
+        for (Resources candidate : resources.values()) {
+            if (candidate.users == 0) {
+                idle++;
+            }
+        }
+        for (Iterator<Resources> it = resources.values().iterator(); it.hasNext() && idle > MAX_IDLE; ) {
+            Resources candidate = it.next();
+            if (candidate.users == 0) {
+                it.remove();
+                candidate.close();
+                idle--;
+            }
+        }
+    }
+
+    /**
+     * Closes all the resources.
+     */
+    public synchronized void close() {
+        for (Resources shared : resources.values()) {
+            shared.close();
+        }
+        resources.clear();
+    }
+
+    /**
+     * Identifies the resources of a classpath loaded by a given parent class loader.
+     */
+    private static final class Key {
+        private final String fingerprint;
+
+        private final ClassLoader parent;
+
+        Key(String fingerprint, ClassLoader parent) {
+            this.fingerprint = fingerprint;
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return fingerprint.equals(other.fingerprint) && parent == other.parent;
+        }
+
+        @Override
+        public int hashCode() {
+            return fingerprint.hashCode();
+        }
+    }
+
+    /**
+     * The class loader, compiler file managers, forked compilers, design validator and JasperReports
+     * contexts of a classpath.
+     */
+    public static class Resources {
+        private final URLClassLoader classLoader;
+
+        private final JavaFileManagerPool fileManagerPool = new JavaFileManagerPool();
+
+        private final Map<String, ForkedCompilerPool> forkedCompilerPools = new HashMap<String, ForkedCompilerPool>();
+
+        private final Map<String, Compiler> compilers = new HashMap<String, Compiler>();
+
+        private final List<Environment> environments = new ArrayList<Environment>();
+
+        private ReportValidator validator;
+
+        private int users;
+
+        public Resources(URL[] urls, ClassLoader parent) {
+            this.classLoader = new URLClassLoader(urls, parent);
+        }
+
+        public ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        public JavaFileManagerPool getFileManagerPool() {
+            return fileManagerPool;
+        }
+
+        /**
+         * @return the compiler JVMs with the given settings, started on demand
+         */
+        public synchronized ForkedCompilerPool getForkedCompilerPool(int size, String maxMemory, List<String> jvmArgs)
+                throws IOException {
+            String key = size + "\n" + maxMemory + "\n" + jvmArgs;
+            ForkedCompilerPool pool = forkedCompilerPools.get(key);
+            if (pool == null) {
+                pool = new ForkedCompilerPool(size, maxMemory, jvmArgs);
+                forkedCompilerPools.put(key, pool);
+            }
+            return pool;
+        }
+
+        /**
+         * @return the plexus compiler with the given id, looked up once
+         */
+        public synchronized Compiler getCompiler(CompilerManager compilerManager, String compilerId)
+                throws NoSuchCompilerException {
+            Compiler compiler = compilers.get(compilerId);
+            if (compiler == null) {
+                compiler = compilerManager.getCompiler(compilerId);
+                compilers.put(compilerId, compiler);
+            }
+            return compiler;
+        }
+
+        /**
+         * @return the validator of report designs, whose schemas, including those of the components on
+         *         the classpath, are compiled once; it must be created with the class loader of the
+         *         classpath as context class loader
+         */
+        public synchronized ReportValidator getValidator() throws JRException {
+            if (validator == null) {
+                validator = new ReportValidator(new SimpleJasperReportsContext());
+            }
+            return validator;
+        }
+
+        /**
+         * Gets an idle JasperReports context, creating one if needed. It must be given back with
+         * {@link #releaseEnvironment} once the execution is done with it.
+         */
+        public synchronized Environment acquireEnvironment() {
+            return environments.isEmpty() ? new Environment() : environments.remove(environments.size() - 1);
+        }
+
+        public synchronized void releaseEnvironment(Environment environment) {
+            environment.context.clear();
+            environments.add(environment);
+        }
+
+        public synchronized void close() {
+            environments.clear();
+            for (ForkedCompilerPool pool : forkedCompilerPools.values()) {
+                pool.close();
+            }
+            forkedCompilerPools.clear();
+            fileManagerPool.close();
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                // the jars are released when the class loader is collected anyway
+            }
+        }
+    }
+
+    /**
+     * A JasperReports context and its compile manager, used by one execution at a time. The values and
+     * properties an execution sets are removed when it gives the context back, so that the next
+     * execution starts from a clean context.
+     */
+    public static class Environment {
+        private final RecordingContext context = new RecordingContext();
+
+        private final JasperCompileManager compileManager = JasperCompileManager.getInstance(context);
+
+        public SimpleJasperReportsContext getContext() {
+            return context;
+        }
+
+        public JasperCompileManager getCompileManager() {
+            return compileManager;
+        }
+    }
+
+    /**
+     * Records the keys of its values, which the JasperReports context does not list, so that they can be
+     * removed.
+     */
+    private static class RecordingContext extends SimpleJasperReportsContext {
+        private final Set<String> keys = new HashSet<String>();
+
+        @Override
+        public synchronized void setValue(String key, Object value) {
+            keys.add(key);
+            super.setValue(key, value);
+        }
+
+        synchronized void clear() {
+            for (String key : keys) {
+                removeValue(key);
+            }
+            keys.clear();
+            setPropertiesMap(null);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * Keeps a {@link CompilerService} for the whole session, so the modules of a reactor share their class
+ * loaders and compilers, and closes it when the session ends. Maven only runs this participant when the
+ * plugin is declared with <code>&lt;extensions&gt;true&lt;/extensions&gt;</code>.
+ *
+ * @since 1.0-beta-5
+ */
+public class CompilerServiceParticipant extends AbstractMavenLifecycleParticipant {
+
+    @Override
+    public void afterProjectsRead(MavenSession session) {
+        CompilerService.start(session);
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session) {
+        CompilerService.stop(session);
+    }
+}
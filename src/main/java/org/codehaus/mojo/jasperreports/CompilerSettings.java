@@ -0,0 +1,100 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import net.sf.jasperreports.engine.JasperReportsContext;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.compiler.Compiler;
+
+/**
+ * Java compiler configuration of one mojo execution.
+ * <p>
+ * JasperReports instantiates the report compiler itself, passing only the {@link JasperReportsContext}.
+ * The mojo therefore stores its settings in the context under {@link #CONTEXT_KEY}, and each compiler
+ * instance picks them up from there instead of from shared static state.
+ * </p>
+ */
+public class CompilerSettings {
+
+    public static final String CONTEXT_KEY = CompilerSettings.class.getName();
+
+    private final Log log;
+
+    private final Compiler compiler;
+
+    private final boolean debug;
+
+    private final String encoding;
+
+    private final String executable;
+
+    private final String sourceVersion;
+
+    private final String targetVersion;
+
+    public CompilerSettings(
+            Log log,
+            Compiler compiler,
+            boolean debug,
+            String encoding,
+            String executable,
+            String sourceVersion,
+            String targetVersion) {
+        this.log = log;
+        this.compiler = compiler;
+        this.debug = debug;
+        this.encoding = encoding;
+        this.executable = executable;
+        this.sourceVersion = sourceVersion;
+        this.targetVersion = targetVersion;
+    }
+
+    /**
+     * @return the settings stored in the given context, or <code>null</code> when the context was not
+     *         prepared by the mojo (e.g. when JasperReports only loads evaluators at runtime)
+     */
+    public static CompilerSettings get(JasperReportsContext jasperReportsContext) {
+        return (CompilerSettings) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    public Log getLog() {
+        return log;
+    }
+
+    public Compiler getCompiler() {
+        return compiler;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public String getExecutable() {
+        return executable;
+    }
+
+    public String getSourceVersion() {
+        return sourceVersion;
+    }
+
+    public String getTargetVersion() {
+        return targetVersion;
+    }
+}
@@ -0,0 +1,168 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The main class of the compiler JVMs forked by the {@link ForkedCompilerPool}. It compiles the
+ * expression classes it reads from its standard input, and writes their bytecode and the compiler
+ * messages to its standard output, until its standard input is closed.
+ * <p>
+ * A request holds the compiler options, the classpath and the sources by class name. The response
+ * holds the compiled classes and the compiler messages, or a negative class count followed by an
+ * error message if the compiler could not run. Strings are written as UTF-8 bytes preceded by their
+ * length, since sources and classpaths can exceed what {@link DataOutputStream#writeUTF} allows.
+ * </p>
+ * <p>
+ * The worker only depends on the JDK and on classes of this package which do, so that it runs with
+ * the plugin jar alone on its classpath.
+ * </p>
+ */
+public class CompilerWorker {
+
+    private final JavaCompiler tool = ToolProvider.getSystemJavaCompiler();
+
+    private StandardJavaFileManager fileManager;
+
+    private String fileManagerClasspath;
+
+    public static void main(String[] args) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        // the standard output carries the responses, anything else printed goes to the standard error
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+        new CompilerWorker().run(in, out);
+    }
+
+    void run(DataInputStream in, DataOutputStream out) throws IOException {
+        try {
+            while (true) {
+                int optionCount;
+                try {
+                    optionCount = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                List<String> options = new ArrayList<String>(optionCount);
+                for (int i = 0; i < optionCount; i++) {
+                    options.add(readString(in));
+                }
+                String classpath = readString(in);
+                int sourceCount = in.readInt();
+                Map<String, String> sources = new LinkedHashMap<String, String>();
+                for (int i = 0; i < sourceCount; i++) {
+                    String className = readString(in);
+                    sources.put(className, readString(in));
+                }
+
+                compile(options, classpath, sources, out);
+                out.flush();
+            }
+        } finally {
+            if (fileManager != null) {
+                fileManager.close();
+            }
+        }
+    }
+
+    private void compile(List<String> options, String classpath, Map<String, String> sources, DataOutputStream out)
+            throws IOException {
+        if (tool == null) {
+            out.writeInt(-1);
+            writeString(out, "No Java compiler available in the forked JVM, make sure it runs on a JDK");
+            return;
+        }
+        if (!classpath.equals(fileManagerClasspath)) {
+            if (fileManager != null) {
+                fileManager.close();
+            }
+            fileManager = JavaFileManagerPool.create(tool, classpath);
+            fileManagerClasspath = classpath;
+        }
+
+        List<JavaFileObject> compilationUnits = new ArrayList<JavaFileObject>(sources.size());
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            compilationUnits.add(MemoryFileManager.source(source.getKey(), source.getValue()));
+        }
+        MemoryFileManager memoryFileManager = new MemoryFileManager(fileManager);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        try {
+            tool.getTask(null, memoryFileManager, diagnostics, options, null, compilationUnits)
+                    .call();
+        } catch (RuntimeException e) {
+            out.writeInt(-1);
+            writeString(out, "Fatal error compiling: " + e);
+            return;
+        }
+
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        for (String className : sources.keySet()) {
+            byte[] classBytes = memoryFileManager.getClassBytes(className);
+            if (classBytes != null) {
+                classes.put(className, classBytes);
+            }
+        }
+        out.writeInt(classes.size());
+        for (Map.Entry<String, byte[]> compiled : classes.entrySet()) {
+            writeString(out, compiled.getKey());
+            out.writeInt(compiled.getValue().length);
+            out.write(compiled.getValue());
+        }
+
+        out.writeInt(diagnostics.getDiagnostics().size());
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            String className = MemoryFileManager.getClassName(diagnostic.getSource());
+            writeString(out, className == null ? "" : className);
+            writeString(out, diagnostic.getKind().name());
+            out.writeLong(diagnostic.getLineNumber());
+            out.writeLong(diagnostic.getColumnNumber());
+            writeString(out, diagnostic.getMessage(Locale.ROOT));
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
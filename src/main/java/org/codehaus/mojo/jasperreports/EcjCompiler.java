@@ -0,0 +1,230 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import javax.tools.Diagnostic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.util.JRLoader;
+import org.codehaus.plexus.compiler.CompilerMessage;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.ClassFile;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.DefaultErrorHandlingPolicies;
+import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.env.ICompilationUnit;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+
+/**
+ * Compiles the expression classes in memory with the Eclipse compiler (ECJ), which starts faster than
+ * javac and does not need the running JVM to be a JDK.
+ * <p>
+ * Unlike the <code>JRJdtCompiler</code> of JasperReports, it is configured by the settings of the
+ * plugin like the other compilers, and only sees the compile classpath and the JDK, read through a class loader
+ * kept in the {@link JavaFileManagerPool} of the build. Only errors are reported: the warnings of the
+ * Eclipse compiler are mostly about the unused imports of the generated classes.
+ * </p>
+ */
+public class EcjCompiler extends InMemoryJavacCompiler {
+
+    public EcjCompiler(JasperReportsContext jasperReportsContext) {
+        super(jasperReportsContext);
+    }
+
+    @Override
+    protected Map<String, byte[]> compile(
+            Map<String, String> sources, String classpath, final Map<CompilerMessage, String> messages)
+            throws JRException {
+        final Map<String, ICompilationUnit> units = new HashMap<String, ICompilationUnit>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            units.put(
+                    source.getKey(),
+                    new CompilationUnit(source.getValue().toCharArray(), getSourceFileName(source.getKey()), null));
+        }
+
+        final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        ICompilerRequestor requestor = new ICompilerRequestor() {
+            public void acceptResult(CompilationResult result) {
+                String className = new String(result.getCompilationUnit().getMainTypeName());
+                if (result.hasErrors()) {
+                    for (CategorizedProblem problem : result.getErrors()) {
+                        messages.put(
+                                toMessage(
+                                        className,
+                                        Diagnostic.Kind.ERROR,
+                                        problem.getSourceLineNumber(),
+                                        0,
+                                        problem.getMessage()),
+                                className);
+                    }
+                } else {
+                    for (ClassFile classFile : result.getClassFiles()) {
+                        classes.put(
+                                new String(CharOperation.concatWith(classFile.getCompoundName(), '.')),
+                                classFile.getBytes());
+                    }
+                }
+            }
+        };
+
+        JavaFileManagerPool pool = JavaFileManagerPool.get(jasperReportsContext);
+        ClassLoader classpathLoader;
+        Set<String> packages;
+        try {
+            classpathLoader =
+                    pool != null ? pool.getClassLoader(classpath) : JavaFileManagerPool.createClassLoader(classpath);
+            packages = pool != null ? pool.getPackages(classpath) : ClasspathIndex.getPackages(classpath);
+        } catch (IOException e) {
+            throw new JRException("Error setting up the compiler classpath", e);
+        }
+        Compiler compiler = new Compiler(
+                new NameEnvironment(classpathLoader, packages, units),
+                DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+                new CompilerOptions(getCompilerSettings()),
+                requestor,
+                new DefaultProblemFactory(Locale.ROOT));
+        try {
+            compiler.compile(units.values().toArray(new ICompilationUnit[units.size()]));
+        } catch (RuntimeException e) {
+            throw new JRException("Fatal error compiling", e);
+        } finally {
+            if (pool == null) {
+                try {
+                    ((URLClassLoader) classpathLoader).close();
+                } catch (IOException e) {
+                    // the jars are released when the class loader is collected anyway
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return the settings of the Eclipse compiler matching the settings of the plugin
+     */
+    protected Map<String, String> getCompilerSettings() {
+        CompilerSettings settings = CompilerSettings.get(jasperReportsContext);
+        Map<String, String> options = new HashMap<String, String>();
+        String debug = settings.isDebug() ? CompilerOptions.GENERATE : CompilerOptions.DO_NOT_GENERATE;
+        options.put(CompilerOptions.OPTION_LineNumberAttribute, debug);
+        options.put(CompilerOptions.OPTION_SourceFileAttribute, debug);
+        options.put(CompilerOptions.OPTION_LocalVariableAttribute, debug);
+        String source = getVersion(settings.getSourceVersion());
+        String target = getVersion(settings.getTargetVersion());
+        options.put(CompilerOptions.OPTION_Source, source != null ? source : CompilerOptions.VERSION_1_8);
+        options.put(CompilerOptions.OPTION_Compliance, source != null ? source : CompilerOptions.VERSION_1_8);
+        options.put(CompilerOptions.OPTION_TargetPlatform, target != null ? target : CompilerOptions.VERSION_1_8);
+        if (settings.getEncoding() != null) {
+            options.put(CompilerOptions.OPTION_Encoding, settings.getEncoding());
+        }
+        return options;
+    }
+
+    /**
+     * @return the version in the form the Eclipse compiler expects, with the <code>1.</code> prefix up to
+     *         Java 8
+     */
+    private static String getVersion(String version) {
+        if (version == null || version.length() == 0) {
+            return null;
+        }
+        return version.matches("[1-8]") ? "1." + version : version;
+    }
+
+    /**
+     * Finds the sources being compiled, and the classes of the compile classpath and of the JDK.
+     */
+    private static class NameEnvironment implements INameEnvironment {
+        private final ClassLoader classLoader;
+
+        private final Set<String> packages;
+
+        private final Map<String, ICompilationUnit> units;
+
+        NameEnvironment(ClassLoader classLoader, Set<String> packages, Map<String, ICompilationUnit> units) {
+            this.classLoader = classLoader;
+            this.packages = packages;
+            this.units = units;
+        }
+
+        public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+            return findType(new String(CharOperation.concatWith(compoundTypeName, '.')));
+        }
+
+        public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+            return findType(new String(CharOperation.concatWith(packageName, typeName, '.')));
+        }
+
+        private NameEnvironmentAnswer findType(String className) {
+            ICompilationUnit unit = units.get(className);
+            if (unit != null) {
+                return new NameEnvironmentAnswer(unit, null);
+            }
+            String resourceName = className.replace('.', '/') + ".class";
+            InputStream in = classLoader.getResourceAsStream(resourceName);
+            if (in == null) {
+                return null;
+            }
+            try {
+                try {
+                    return new NameEnvironmentAnswer(
+                            new ClassFileReader(JRLoader.readBytes(in), resourceName.toCharArray(), true), null);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return null;
+            } catch (ClassFormatException e) {
+                return null;
+            }
+        }
+
+        public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+            String name = new String(CharOperation.concatWith(parentPackageName, packageName, '.'));
+            if (units.containsKey(name)) {
+                return false;
+            }
+            if (packages.contains(name)) {
+                return true;
+            }
+            try {
+                return ClasspathIndex.getJdkPackages().contains(name);
+            } catch (IOException e) {
+                // without the packages of the JDK, a name is taken for a package unless it is a class
+                return classLoader.getResource(name.replace('.', '/') + ".class") == null;
+            }
+        }
+
+        public void cleanup() {}
+    }
+}
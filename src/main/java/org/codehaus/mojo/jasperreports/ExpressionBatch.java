@@ -0,0 +1,294 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.sf.jasperreports.compilers.ReportExpressionEvaluationData;
+import net.sf.jasperreports.engine.JRDataset;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.design.JRCompilationUnit;
+import net.sf.jasperreports.engine.design.JRReportCompileData;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Collects the expression classes of many reports, so that they can be compiled together.
+ * <p>
+ * When an instance is stored in the {@link JasperReportsContext} under {@link #CONTEXT_KEY}, a
+ * {@link BatchCompiler} does not compile the expression classes of a report but {@link #defer defers}
+ * them: the compiled report then holds placeholders instead of bytecode. Once all reports are
+ * generated, {@link #compile} compiles all the collected classes with as few compiler invocations as
+ * possible, and {@link #resolve} replaces the placeholders of each report with the bytecode.
+ * </p>
+ * <p>
+ * Classes of different reports which only differ by their name are only compiled once, under the name
+ * of the first one: the others get a renamed copy of its bytecode. Class names only hold the names of
+ * the report and of the dataset, followed in recent JasperReports versions by a hash which leaves the
+ * imports out: classes sharing a name but not their source are compiled in separate compiler
+ * invocations.
+ * </p>
+ */
+public class ExpressionBatch {
+
+    public static final String CONTEXT_KEY = ExpressionBatch.class.getName();
+
+    private final Log log;
+
+    private final ExpressionClassCache classCache;
+
+    private final Map<String, Integer> sourceIds = new HashMap<String, Integer>();
+
+    private final List<DeferredClass> deferred = new ArrayList<DeferredClass>();
+
+    private final Map<Integer, byte[]> classes = new ConcurrentHashMap<Integer, byte[]>();
+
+    private final Map<Integer, String> errors = new ConcurrentHashMap<Integer, String>();
+
+    private final Map<Integer, String> classNames = new ConcurrentHashMap<Integer, String>();
+
+    private BatchCompiler compiler;
+
+    /**
+     * @param classCache the cache the compiled classes are stored in, or <code>null</code>
+     */
+    public ExpressionBatch(Log log, ExpressionClassCache classCache) {
+        this.log = log;
+        this.classCache = classCache;
+    }
+
+    /**
+     * @return the batch stored in the given context, or <code>null</code> if classes must be compiled
+     *         report by report
+     */
+    public static ExpressionBatch get(JasperReportsContext jasperReportsContext) {
+        return (ExpressionBatch) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    /**
+     * Records the classes of the given compilation units, and gives them placeholder compile data.
+     *
+     * @param compiler the compiler used later on to compile the classes
+     */
+    public synchronized void defer(BatchCompiler compiler, JRCompilationUnit[] units) {
+        if (this.compiler == null) {
+            this.compiler = compiler;
+        }
+        for (JRCompilationUnit unit : units) {
+            String key = ExpressionStore.getKey(unit.getCompileName(), unit.getSourceCode());
+            Integer id = sourceIds.get(key);
+            if (id == null) {
+                id = Integer.valueOf(deferred.size());
+                sourceIds.put(key, id);
+                deferred.add(new DeferredClass(id.intValue(), unit.getCompileName(), unit.getSourceCode()));
+                classNames.put(id, unit.getCompileName());
+            }
+            DeferredClass deferredClass = deferred.get(id.intValue());
+            if (!deferredClass.className.equals(unit.getCompileName())) {
+                deferredClass = new DeferredClass(id.intValue(), unit.getCompileName(), unit.getSourceCode());
+            }
+            unit.setCompileData(deferredClass);
+        }
+    }
+
+    /**
+     * Compiles all the deferred classes, in chunks of at most <code>batchSize</code> classes which are
+     * compiled concurrently.
+     */
+    public void compile(ExecutorService executor, String classpath, int batchSize) throws InterruptedException {
+        List<Map<String, DeferredClass>> chunks = new ArrayList<Map<String, DeferredClass>>();
+        synchronized (this) {
+            for (DeferredClass deferredClass : deferred) {
+                Map<String, DeferredClass> chunk = null;
+                for (Map<String, DeferredClass> candidate : chunks) {
+                    if ((batchSize <= 0 || candidate.size() < batchSize)
+                            && !candidate.containsKey(deferredClass.className)) {
+                        chunk = candidate;
+                        break;
+                    }
+                }
+                if (chunk == null) {
+                    chunk = new LinkedHashMap<String, DeferredClass>();
+                    chunks.add(chunk);
+                }
+                chunk.put(deferredClass.className, deferredClass);
+            }
+            deferred.clear();
+            sourceIds.clear();
+        }
+        if (chunks.isEmpty()) {
+            return;
+        }
+
+        log.info("Compiling expression classes in " + chunks.size() + " batch(es).");
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(chunks.size());
+        for (Map<String, DeferredClass> chunk : chunks) {
+            futures.add(executor.submit(new ChunkTask(chunk, classpath)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                for (DeferredClass deferredClass : chunks.get(i).values()) {
+                    errors.put(deferredClass.id, String.valueOf(e.getCause()));
+                }
+            }
+        }
+    }
+
+    private void compileChunk(Map<String, DeferredClass> chunk, String classpath) {
+        Map<String, String> chunkSources = new LinkedHashMap<String, String>();
+        for (DeferredClass deferredClass : chunk.values()) {
+            chunkSources.put(deferredClass.className, deferredClass.source);
+        }
+
+        Map<String, String> chunkErrors = new HashMap<String, String>();
+        Map<String, byte[]> compiled = new HashMap<String, byte[]>();
+        try {
+            compiled.putAll(compiler.compileBatch(chunkSources, classpath, chunkErrors));
+            if (!chunkErrors.isEmpty()) {
+                // the compiler may not write any class once one of them fails, retry those without errors
+                for (Iterator<String> it = chunkSources.keySet().iterator(); it.hasNext(); ) {
+                    String className = it.next();
+                    if (compiled.containsKey(className) || chunkErrors.containsKey(className)) {
+                        it.remove();
+                    }
+                }
+                if (!chunkSources.isEmpty()) {
+                    log.debug("Recompiling " + chunkSources.size() + " expression classes without errors");
+                    compiled.putAll(compiler.compileBatch(chunkSources, classpath, chunkErrors));
+                }
+            }
+        } catch (JRException e) {
+            for (String className : chunk.keySet()) {
+                chunkErrors.put(className, e.toString());
+            }
+        }
+
+        for (DeferredClass deferredClass : chunk.values()) {
+            byte[] classBytes = compiled.get(deferredClass.className);
+            if (classBytes != null) {
+                classes.put(deferredClass.id, classBytes);
+                if (classCache != null) {
+                    classCache.put(deferredClass.className, deferredClass.source, classBytes);
+                }
+            } else if (chunkErrors.containsKey(deferredClass.className)) {
+                errors.put(deferredClass.id, chunkErrors.get(deferredClass.className));
+            }
+        }
+    }
+
+    /**
+     * Replaces the placeholders of a report with the bytecode of its expression classes.
+     *
+     * @throws JRException if one of the classes of the report could not be compiled
+     */
+    public void resolve(JasperReport report) throws JRException {
+        if (!(report.getCompileData() instanceof JRReportCompileData)) {
+            return;
+        }
+        JRReportCompileData compileData = (JRReportCompileData) report.getCompileData();
+        resolve(compileData.getMainDatasetCompileData());
+        JRDataset[] datasets = report.getDatasets();
+        if (datasets != null) {
+            for (JRDataset dataset : datasets) {
+                resolve(compileData.getDatasetCompileData(dataset));
+            }
+        }
+        if (compileData.getCrosstabsCompileData() != null) {
+            for (Serializable crosstabCompileData :
+                    compileData.getCrosstabsCompileData().values()) {
+                resolve(crosstabCompileData);
+            }
+        }
+    }
+
+    private void resolve(Serializable compileData) throws JRException {
+        if (!(compileData instanceof ReportExpressionEvaluationData)) {
+            return;
+        }
+        ReportExpressionEvaluationData evaluationData = (ReportExpressionEvaluationData) compileData;
+        if (evaluationData.getCompileData() instanceof DeferredClass) {
+            DeferredClass deferredClass = (DeferredClass) evaluationData.getCompileData();
+            byte[] classBytes = classes.get(deferredClass.id);
+            if (classBytes == null) {
+                String error = errors.get(deferredClass.id);
+                throw new JRException("Errors were encountered when compiling report expressions class file:\n"
+                        + (error != null ? error : deferredClass.className + " was not compiled"));
+            }
+            String compiledName = classNames.get(deferredClass.id);
+            if (!deferredClass.className.equals(compiledName)) {
+                try {
+                    classBytes = ClassFiles.rename(classBytes, compiledName, deferredClass.className);
+                } catch (IOException e) {
+                    throw new JRException("Unable to rename the expression class " + compiledName, e);
+                }
+                if (classCache != null) {
+                    classCache.put(deferredClass.className, deferredClass.source, classBytes);
+                }
+            }
+            evaluationData.setCompileData(classBytes);
+        }
+    }
+
+    private class ChunkTask implements Callable<Void> {
+        private final Map<String, DeferredClass> chunk;
+
+        private final String classpath;
+
+        ChunkTask(Map<String, DeferredClass> chunk, String classpath) {
+            this.chunk = chunk;
+            this.classpath = classpath;
+        }
+
+        public Void call() {
+            compileChunk(chunk, classpath);
+            return null;
+        }
+    }
+
+    /**
+     * Compile data of an expression class which is not compiled yet.
+     */
+    private static class DeferredClass implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+
+        private final String className;
+
+        private final transient String source;
+
+        DeferredClass(int id, String className, String source) {
+            this.id = id;
+            this.className = className;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.design.JRCompilationUnit;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Keeps the bytecode of the expression classes compiled by previous builds, keyed by their generated
+ * source. Most edits of a report design only change its layout, which leaves the source of its
+ * expression classes unchanged: the compilers of the plugin then reuse the bytecode instead of
+ * compiling the classes again.
+ * <p>
+ * The compilers find the instance in the {@link JasperReportsContext} under {@link #CONTEXT_KEY}. The
+ * classes are stored in a subdirectory per compile environment, and the subdirectories of other
+ * environments are deleted when the cache is created. Within an environment, the least recently used
+ * classes are {@link #evict evicted} beyond a maximum size.
+ * </p>
+ */
+public class ExpressionClassCache {
+
+    public static final String CONTEXT_KEY = ExpressionClassCache.class.getName();
+
+    private static final String EXTENSION = ".class";
+
+    private final File directory;
+
+    private final long maxSize;
+
+    private final Log log;
+
+    private final AtomicInteger restored = new AtomicInteger();
+
+    /**
+     * @param directory the directory of the cache
+     * @param environment the fingerprint of the compile environment
+     * @param maxSize the maximum size of the classes of the environment, in bytes
+     */
+    public ExpressionClassCache(File directory, String environment, long maxSize, Log log) {
+        this.directory = new File(directory, environment);
+        this.maxSize = maxSize;
+        this.log = log;
+    }
+
+    /**
+     * @return the cache stored in the given context, or <code>null</code> if expression classes are
+     *         always compiled
+     */
+    public static ExpressionClassCache get(JasperReportsContext jasperReportsContext) {
+        return (ExpressionClassCache) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    /**
+     * Deletes the classes compiled in other environments.
+     */
+    public void prune() {
+        File[] environments = directory.getParentFile().listFiles();
+        if (environments == null) {
+            return;
+        }
+        for (File environment : environments) {
+            if (environment.isDirectory() && !environment.equals(directory)) {
+                File[] files = environment.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                environment.delete();
+            }
+        }
+    }
+
+    /**
+     * Gives the compilation units whose class is in the cache their bytecode.
+     *
+     * @return the units left to compile
+     */
+    public JRCompilationUnit[] restore(JRCompilationUnit[] units) {
+        List<JRCompilationUnit> missing = new ArrayList<JRCompilationUnit>(units.length);
+        for (JRCompilationUnit unit : units) {
+            byte[] classBytes = get(unit.getCompileName(), unit.getSourceCode());
+            if (classBytes != null) {
+                unit.setCompileData(classBytes);
+            } else {
+                missing.add(unit);
+            }
+        }
+        return missing.toArray(new JRCompilationUnit[missing.size()]);
+    }
+
+    /**
+     * Stores the bytecode of the given compilation units, skipping the ones which were not compiled.
+     */
+    public void store(JRCompilationUnit[] units) {
+        for (JRCompilationUnit unit : units) {
+            if (unit.getCompileData() instanceof byte[]) {
+                put(unit.getCompileName(), unit.getSourceCode(), (byte[]) unit.getCompileData());
+            }
+        }
+    }
+
+    /**
+     * @return the bytecode of the class with the given name and source, or <code>null</code> if it is
+     *         not in the cache
+     */
+    public byte[] get(String className, String source) {
+        File file = getFile(className, source);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] classBytes = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            restored.incrementAndGet();
+            return classBytes;
+        } catch (IOException e) {
+            log.debug("Unable to read " + file + ", compiling " + className + " again", e);
+            return null;
+        }
+    }
+
+    public void put(String className, String source, byte[] classBytes) {
+        try {
+            OutputFiles.write(classBytes, getFile(className, source));
+        } catch (IOException e) {
+            log.warn("Unable to store the expression class " + className + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Deletes the least recently used classes until the classes of the environment fit in the maximum
+     * size.
+     *
+     * @return the number of deleted classes
+     */
+    public int evict() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        List<File> classes = new ArrayList<File>();
+        long size = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(EXTENSION)) {
+                classes.add(file);
+                size += file.length();
+            }
+        }
+        return CacheFiles.evict(classes, size, maxSize);
+    }
+
+    /**
+     * @return the number of classes restored from the cache so far
+     */
+    public int getRestored() {
+        return restored.get();
+    }
+
+    private File getFile(String className, String source) {
+        try {
+            // the class name does not identify the source: it only holds the names of the report and
+            // the dataset, and the hash recent JasperReports versions append to it leaves the imports out
+            String key = XxHash64.hash((className + '\n' + source).getBytes("UTF-8"));
+            return new File(directory, className + '-' + key + EXTENSION);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
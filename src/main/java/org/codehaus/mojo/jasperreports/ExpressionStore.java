@@ -0,0 +1,249 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.design.JRCompilationUnit;
+
+/**
+ * Compiles each distinct expression class once per build. Variants of a report, for instance one per
+ * customer or locale, often share all their expressions: the sources of their expression classes then
+ * only differ by the class name, which starts with the name of the report.
+ * <p>
+ * Classes are keyed by a hash of their source with the class name left out of its declaration. The
+ * first report compiling a class compiles it; the reports needing the same class meanwhile wait for the
+ * bytecode, and get a copy renamed after their own class. When the first compilation fails, each report
+ * compiles the class itself. The compilers find the instance in the {@link JasperReportsContext} under
+ * {@link #CONTEXT_KEY}.
+ * </p>
+ * <p>
+ * A class is dropped once the last report waiting for it has taken it, so that the store does not hold
+ * the bytecode of the whole build. Only the most recently compiled classes, up to
+ * {@link #RECENT_MAX_SIZE} bytes, are kept for the variants compiled right after them.
+ * </p>
+ */
+public class ExpressionStore {
+
+    public static final String CONTEXT_KEY = ExpressionStore.class.getName();
+
+    /**
+     * The size of the recently compiled classes kept after the reports needing them took them.
+     */
+    static final int RECENT_MAX_SIZE = 4 * 1024 * 1024;
+
+    /** The classes being compiled, guarded by this store. */
+    private final Map<String, Entry> pending = new HashMap<String, Entry>();
+
+    /** The recently compiled classes, least recently used first, guarded by this store. */
+    private final LinkedHashMap<String, Entry> recent = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private long recentSize;
+
+    private final AtomicInteger reused = new AtomicInteger();
+
+    /**
+     * @return the store stored in the given context, or <code>null</code> if each report compiles its
+     *         expression classes
+     */
+    public static ExpressionStore get(JasperReportsContext jasperReportsContext) {
+        return (ExpressionStore) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    /**
+     * @return the key of an expression class, identical for the classes which only differ by the name
+     *         they are declared with
+     */
+    public static String getKey(String className, String source) {
+        String declaration = "class " + className + " ";
+        int index = source.indexOf(declaration);
+        String unnamed = index < 0
+                ? className + '\n' + source
+                : source.substring(0, index) + "class " + source.substring(index + declaration.length() - 1);
+        try {
+            return XxHash64.hash(unnamed.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gives the compilation units their bytecode, compiling those whose class is not compiled or being
+     * compiled for another report with the given compilation.
+     *
+     * @return the compilation errors, or <code>null</code>
+     */
+    public String compile(JRCompilationUnit[] units, Compilation compilation) throws JRException {
+        List<JRCompilationUnit> owned = new ArrayList<JRCompilationUnit>();
+        Map<JRCompilationUnit, Entry> claimed = new LinkedHashMap<JRCompilationUnit, Entry>();
+        Map<JRCompilationUnit, Entry> shared = new LinkedHashMap<JRCompilationUnit, Entry>();
+        for (JRCompilationUnit unit : units) {
+            Entry claim = new Entry(getKey(unit.getCompileName(), unit.getSourceCode()), unit.getCompileName());
+            Entry entry = claim(claim);
+            if (entry == claim) {
+                owned.add(unit);
+                claimed.put(unit, entry);
+            } else {
+                shared.put(unit, entry);
+            }
+        }
+
+        String errors = null;
+        boolean compiled = false;
+        try {
+            if (!owned.isEmpty()) {
+                errors = compilation.compile(owned.toArray(new JRCompilationUnit[owned.size()]));
+            }
+            compiled = errors == null;
+        } finally {
+            // complete the entries in any case, the other reports wait for them
+            for (Map.Entry<JRCompilationUnit, Entry> claim : claimed.entrySet()) {
+                Object compileData = claim.getKey().getCompileData();
+                Entry entry = claim.getValue();
+                entry.classBytes.complete(compiled && compileData instanceof byte[] ? (byte[]) compileData : null);
+                release(entry);
+            }
+        }
+        if (errors != null) {
+            for (Entry entry : shared.values()) {
+                release(entry);
+            }
+            return errors;
+        }
+
+        List<JRCompilationUnit> failed = new ArrayList<JRCompilationUnit>();
+        for (Map.Entry<JRCompilationUnit, Entry> share : shared.entrySet()) {
+            JRCompilationUnit unit = share.getKey();
+            Entry entry = share.getValue();
+            byte[] classBytes = entry.await();
+            release(entry);
+            if (classBytes == null) {
+                failed.add(unit);
+                continue;
+            }
+            try {
+                unit.setCompileData(ClassFiles.rename(classBytes, entry.className, unit.getCompileName()));
+                reused.incrementAndGet();
+            } catch (IOException e) {
+                failed.add(unit);
+            }
+        }
+        if (!failed.isEmpty()) {
+            return compilation.compile(failed.toArray(new JRCompilationUnit[failed.size()]));
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of classes reused from other reports so far
+     */
+    public int getReused() {
+        return reused.get();
+    }
+
+    /**
+     * Holds the entry of a class until it is {@link #release released}.
+     *
+     * @param candidate the entry to compile when the class is neither compiled nor being compiled
+     * @return the entry of a recently compiled class or of a class being compiled, or the candidate
+     */
+    private synchronized Entry claim(Entry candidate) {
+        Entry entry = pending.get(candidate.key);
+        if (entry == null) {
+            entry = recent.get(candidate.key);
+            if (entry != null) {
+                return entry;
+            }
+            entry = candidate;
+            pending.put(entry.key, entry);
+        }
+        entry.holders++;
+        return entry;
+    }
+
+    /**
+     * Drops a class being compiled once it failed to compile, or once it is compiled and no report holds
+     * it anymore, keeping it among the recent classes in the latter case.
+     */
+    private synchronized void release(Entry entry) {
+        if (pending.get(entry.key) != entry) {
+            return;
+        }
+        entry.holders--;
+        byte[] classBytes = entry.classBytes.getNow(null);
+        if (entry.classBytes.isDone() && (classBytes == null || entry.holders == 0)) {
+            pending.remove(entry.key);
+            if (classBytes != null && classBytes.length <= RECENT_MAX_SIZE) {
+                recent.put(entry.key, entry);
+                recentSize += classBytes.length;
+                for (Iterator<Entry> eldest = recent.values().iterator(); recentSize > RECENT_MAX_SIZE; ) {
+                    recentSize -= eldest.next().classBytes.getNow(null).length;
+                    eldest.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles expression classes, giving the units their bytecode.
+     */
+    public interface Compilation {
+        /**
+         * @return the compilation errors, or <code>null</code>
+         */
+        String compile(JRCompilationUnit[] units) throws JRException;
+    }
+
+    private static class Entry {
+        private final String key;
+
+        private final String className;
+
+        /** The bytecode, or <code>null</code> if the class could not be compiled. */
+        private final CompletableFuture<byte[]> classBytes = new CompletableFuture<byte[]>();
+
+        /** The number of reports holding the entry, guarded by the store. */
+        private int holders;
+
+        Entry(String key, String className) {
+            this.key = key;
+            this.className = className;
+        }
+
+        byte[] await() {
+            try {
+                return classBytes.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The time and memory spent filling and exporting each compiled report, which can be stored as a
+ * baseline to detect the regressions of later builds.
+ * <p>
+ * Results are written as CSV, times in milliseconds and allocations in kilobytes, so that baselines
+ * can be reviewed and kept under version control.
+ * </p>
+ */
+public class FillBenchmark {
+
+    private static final String HEADER = "report,pages,fill_ms,export_ms,allocated_kb";
+
+    /**
+     * Allocation differences below this are not regressions, whatever the threshold.
+     */
+    private static final long MINIMUM_ALLOCATION_DIFFERENCE = 64 * 1024;
+
+    private final Map<String, Result> results = new TreeMap<String, Result>();
+
+    /**
+     * Reads results written by {@link #write}. A missing file gives no results.
+     */
+    public static FillBenchmark read(File file) throws IOException {
+        FillBenchmark benchmark = new FillBenchmark();
+        if (!file.isFile()) {
+            return benchmark;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("Unknown format of " + file);
+            }
+            while ((line = reader.readLine()) != null) {
+                // the report path may contain commas, the numbers do not
+                String[] fields = line.split(",");
+                if (fields.length < 5) {
+                    continue;
+                }
+                int offset = fields.length - 4;
+                String report = line.substring(0, line.length() - 4 - sum(fields, offset));
+                try {
+                    benchmark.add(new Result(
+                            unquote(report),
+                            Integer.parseInt(fields[offset]),
+                            fromMillis(fields[offset + 1]),
+                            fromMillis(fields[offset + 2]),
+                            fromKilobytes(Long.parseLong(fields[offset + 3]))));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid line in " + file + ": " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return benchmark;
+    }
+
+    private static int sum(String[] fields, int offset) {
+        int length = 0;
+        for (int i = offset; i < fields.length; i++) {
+            length += fields[i].length();
+        }
+        return length;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+
+    private static long fromKilobytes(long kilobytes) {
+        return kilobytes < 0 ? -1 : kilobytes * 1024;
+    }
+
+    private static long fromMillis(String millis) {
+        return (long) (Double.parseDouble(millis) * 1000000);
+    }
+
+    public synchronized void add(Result result) {
+        results.put(result.getReport(), result);
+    }
+
+    /**
+     * @return the result of the given report, or <code>null</code> if it was not benchmarked
+     */
+    public synchronized Result get(String report) {
+        return results.get(report);
+    }
+
+    public synchronized List<Result> getResults() {
+        return new ArrayList<Result>(results.values());
+    }
+
+    /**
+     * Compares the results with a baseline. Reports missing from the baseline are not compared.
+     *
+     * @param threshold the percentage by which a time or an allocation may exceed the baseline
+     * @param minimumNanos the time differences which are too small to be told from noise
+     * @return the descriptions of the regressions, empty if there is none
+     */
+    public List<String> compare(FillBenchmark baseline, int threshold, long minimumNanos) {
+        List<String> regressions = new ArrayList<String>();
+        for (Result result : getResults()) {
+            Result base = baseline.get(result.getReport());
+            if (base == null) {
+                continue;
+            }
+            if (exceeds(result.getFillNanos(), base.getFillNanos(), threshold, minimumNanos)) {
+                regressions.add(result.getReport() + ": fill time " + CompileTimings.toMillis(result.getFillNanos())
+                        + " ms, baseline " + CompileTimings.toMillis(base.getFillNanos()) + " ms");
+            }
+            if (exceeds(result.getExportNanos(), base.getExportNanos(), threshold, minimumNanos)) {
+                regressions.add(result.getReport() + ": export time "
+                        + CompileTimings.toMillis(result.getExportNanos()) + " ms, baseline "
+                        + CompileTimings.toMillis(base.getExportNanos()) + " ms");
+            }
+            if (result.getAllocatedBytes() >= 0
+                    && base.getAllocatedBytes() >= 0
+                    && exceeds(
+                            result.getAllocatedBytes(),
+                            base.getAllocatedBytes(),
+                            threshold,
+                            MINIMUM_ALLOCATION_DIFFERENCE)) {
+                regressions.add(result.getReport() + ": allocated " + result.getAllocatedBytes() / 1024
+                        + " KB, baseline " + base.getAllocatedBytes() / 1024 + " KB");
+            }
+        }
+        return regressions;
+    }
+
+    private static boolean exceeds(long value, long baseline, int threshold, long minimumDifference) {
+        return value - baseline > minimumDifference && value * 100 > baseline * (100 + threshold);
+    }
+
+    /**
+     * Writes the results to the given file, replacing it.
+     */
+    public void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(HEADER + '\n');
+            for (Result result : getResults()) {
+                String report = result.getReport();
+                if (report.indexOf(',') >= 0 || report.indexOf('"') >= 0) {
+                    report = '"' + report.replace("\"", "\"\"") + '"';
+                }
+                writer.write(report
+                        + ','
+                        + result.getPages()
+                        + ','
+                        + CompileTimings.toMillis(result.getFillNanos())
+                        + ','
+                        + CompileTimings.toMillis(result.getExportNanos())
+                        + ','
+                        + (result.getAllocatedBytes() < 0 ? -1 : result.getAllocatedBytes() / 1024)
+                        + '\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The measures of one compiled report.
+     */
+    public static class Result {
+        private final String report;
+
+        private final int pages;
+
+        private final long fillNanos;
+
+        private final long exportNanos;
+
+        private final long allocatedBytes;
+
+        /**
+         * @param report the path of the compiled report
+         * @param allocatedBytes the memory allocated while filling and exporting the report, or
+         *        <code>-1</code> if the JVM does not measure it
+         */
+        public Result(String report, int pages, long fillNanos, long exportNanos, long allocatedBytes) {
+            this.report = report;
+            this.pages = pages;
+            this.fillNanos = fillNanos;
+            this.exportNanos = exportNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getReport() {
+            return report;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        public long getFillNanos() {
+            return fillNanos;
+        }
+
+        public long getExportNanos() {
+            return exportNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import net.sf.jasperreports.engine.JRDataSource;
+import net.sf.jasperreports.engine.JREmptyDataSource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRField;
+import net.sf.jasperreports.engine.JasperFillManager;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import net.sf.jasperreports.engine.export.JRCsvExporter;
+import net.sf.jasperreports.engine.export.JRPdfExporter;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.export.SimpleExporterInput;
+import net.sf.jasperreports.export.SimpleOutputStreamExporterOutput;
+import net.sf.jasperreports.export.SimpleWriterExporterOutput;
+import net.sf.jasperreports.repo.FileRepositoryPersistenceServiceFactory;
+import net.sf.jasperreports.repo.FileRepositoryService;
+import net.sf.jasperreports.repo.PersistenceServiceFactory;
+import net.sf.jasperreports.repo.RepositoryService;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Fills the compiled reports with generated data and exports them in memory, measuring the time and
+ * memory each report takes, and fails when they regressed beyond a threshold compared to a baseline.
+ * <p>
+ * The reports of the report designs of the source directory are loaded from the output directory,
+ * so the goal runs after <code>compile-reports</code>. Each report is filled and exported a few times
+ * on the same thread, after warming up, and the fastest run is kept. Subreports and other resources
+ * are looked up in the output directory, then in the source directory and on the classpath.
+ * </p>
+ *
+ * @goal fill-benchmark
+ * @phase process-classes
+ * @requiresDependencyResolution compile
+ * @since 1.0-beta-5
+ */
+public class FillBenchmarkMojo extends JasperReportsMojo {
+
+    /**
+     * The number of rows of the data source the reports are filled with.
+     *
+     * @parameter property="jasperreports.benchmark.rows" default-value="100"
+     * @since 1.0-beta-5
+     */
+    private int benchmarkRows;
+
+    /**
+     * The data source the reports are filled with: <code>synthetic</code> gives every field a value of
+     * its class derived from the row number, <code>empty</code> gives null to all fields.
+     *
+     * @parameter property="jasperreports.benchmark.dataSource" default-value="synthetic"
+     * @since 1.0-beta-5
+     */
+    private String benchmarkDataSource;
+
+    /**
+     * Values of report parameters, given as strings.
+     *
+     * @parameter
+     * @since 1.0-beta-5
+     */
+    private Map<String, String> benchmarkParameters = new HashMap<String, String>();
+
+    /**
+     * The formats the filled reports are exported to, in memory: <code>pdf</code> or <code>csv</code>.
+     * Reports are only filled when none is given.
+     *
+     * @parameter
+     * @since 1.0-beta-5
+     */
+    private List<String> benchmarkExports = new ArrayList<String>();
+
+    /**
+     * Patterns of the report designs, relative to the source directory, whose reports are not
+     * benchmarked, such as those requiring real data.
+     *
+     * @parameter
+     * @since 1.0-beta-5
+     */
+    private Set<String> benchmarkExcludes = new HashSet<String>();
+
+    /**
+     * The number of runs of each report before it is measured.
+     *
+     * @parameter property="jasperreports.benchmark.warmup" default-value="2"
+     * @since 1.0-beta-5
+     */
+    private int benchmarkWarmup;
+
+    /**
+     * The number of measured runs of each report, the fastest of which is kept.
+     *
+     * @parameter property="jasperreports.benchmark.iterations" default-value="3"
+     * @since 1.0-beta-5
+     */
+    private int benchmarkIterations;
+
+    /**
+     * The CSV file the measures are written to.
+     *
+     * @parameter default-value="${project.build.directory}/jasperreports/fill-benchmark.csv"
+     * @since 1.0-beta-5
+     */
+    private File benchmarkResultsFile;
+
+    /**
+     * The CSV file of the measures the results are compared with. No comparison is made when it does
+     * not exist.
+     *
+     * @parameter property="jasperreports.benchmark.baseline"
+     *            default-value="${basedir}/src/test/jasperreports/fill-baseline.csv"
+     * @since 1.0-beta-5
+     */
+    private File benchmarkBaseline;
+
+    /**
+     * Whether to replace the baseline with the results instead of comparing them.
+     *
+     * @parameter property="jasperreports.benchmark.updateBaseline" default-value="false"
+     * @since 1.0-beta-5
+     */
+    private boolean updateBaseline;
+
+    /**
+     * The percentage by which the fill time, the export time or the allocated memory of a report may
+     * exceed the baseline before the build fails.
+     *
+     * @parameter property="jasperreports.benchmark.threshold" default-value="50"
+     * @since 1.0-beta-5
+     */
+    private int benchmarkThreshold;
+
+    /**
+     * Time differences in milliseconds below which a report is not considered slower, as they are
+     * within the noise of the measures.
+     *
+     * @parameter property="jasperreports.benchmark.minimumDifference" default-value="10"
+     * @since 1.0-beta-5
+     */
+    private int benchmarkMinimumDifference;
+
+    /**
+     * Skips the benchmark.
+     *
+     * @parameter property="jasperreports.benchmark.skip" default-value="false"
+     * @since 1.0-beta-5
+     */
+    private boolean skipBenchmark;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skipBenchmark) {
+            getLog().info("Skipping the fill benchmark");
+            return;
+        }
+        if (!"synthetic".equals(benchmarkDataSource) && !"empty".equals(benchmarkDataSource)) {
+            throw new MojoExecutionException("Unknown benchmark data source: " + benchmarkDataSource);
+        }
+        for (String format : benchmarkExports) {
+            if (!"pdf".equals(format) && !"csv".equals(format)) {
+                throw new MojoExecutionException("Unknown benchmark export format: " + format);
+            }
+        }
+
+        final Map<String, File> reports = new TreeMap<String, File>();
+        if (getSourceDirectory().isDirectory()) {
+            for (File src : scanSrcDir(getSourceMapping(), benchmarkExcludes)) {
+                String srcName = getPathRelativeToRoot(src);
+                String path = srcName.substring(0, srcName.lastIndexOf('.')) + getOutputFileExt();
+                reports.put(path.replace(File.separatorChar, '/'), new File(getOutputDirectory(), path));
+            }
+        }
+        if (reports.isEmpty()) {
+            getLog().info("No report to benchmark");
+            return;
+        }
+
+        getLog().info("Benchmarking " + reports.size() + " reports with " + benchmarkRows + " rows.");
+        FillBenchmark results = callWithClasspath(new Callable<FillBenchmark>() {
+            public FillBenchmark call() throws MojoExecutionException {
+                return run(reports);
+            }
+        });
+        for (FillBenchmark.Result result : results.getResults()) {
+            getLog().info("  fill " + CompileTimings.toMillis(result.getFillNanos()) + " ms, export "
+                    + CompileTimings.toMillis(result.getExportNanos()) + " ms, " + result.getPages() + " pages, "
+                    + (result.getAllocatedBytes() < 0 ? "?" : Long.toString(result.getAllocatedBytes() / 1024))
+                    + " KB: " + result.getReport());
+        }
+
+        try {
+            results.write(benchmarkResultsFile);
+            if (updateBaseline) {
+                results.write(benchmarkBaseline);
+                getLog().info("Updated the baseline " + benchmarkBaseline);
+                return;
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write the benchmark results", e);
+        }
+
+        if (benchmarkBaseline != null && benchmarkBaseline.isFile()) {
+            FillBenchmark baseline;
+            try {
+                baseline = FillBenchmark.read(benchmarkBaseline);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to read the baseline " + benchmarkBaseline, e);
+            }
+            List<String> regressions =
+                    results.compare(baseline, benchmarkThreshold, benchmarkMinimumDifference * 1000000L);
+            if (!regressions.isEmpty()) {
+                for (String regression : regressions) {
+                    getLog().error(regression);
+                }
+                throw new MojoFailureException(regressions.size() + " fill benchmark measures exceed the baseline "
+                        + benchmarkBaseline + " by more than " + benchmarkThreshold + "%");
+            }
+            getLog().info("No regression compared to the baseline " + benchmarkBaseline);
+        }
+    }
+
+    private FillBenchmark run(Map<String, File> reports) throws MojoExecutionException {
+        SimpleJasperReportsContext reportsContext = new SimpleJasperReportsContext();
+        // the default repository of the parent context, which loads from the classpath, comes last
+        List<RepositoryService> repositories = Arrays.<RepositoryService>asList(
+                new FileRepositoryService(reportsContext, getOutputDirectory().getAbsolutePath(), true),
+                new FileRepositoryService(reportsContext, getSourceDirectory().getAbsolutePath(), true));
+        reportsContext.setExtensions(RepositoryService.class, repositories);
+        reportsContext.setExtensions(
+                PersistenceServiceFactory.class,
+                Collections.singletonList(FileRepositoryPersistenceServiceFactory.getInstance()));
+
+        FillBenchmark benchmark = new FillBenchmark();
+        for (Map.Entry<String, File> entry : reports.entrySet()) {
+            File file = entry.getValue();
+            try {
+                JasperReport report = (JasperReport) JRLoader.loadObject(file);
+                for (int i = 0; i < benchmarkWarmup; i++) {
+                    measure(entry.getKey(), report, reportsContext);
+                }
+                FillBenchmark.Result fastest = null;
+                for (int i = 0; i < Math.max(1, benchmarkIterations); i++) {
+                    FillBenchmark.Result result = measure(entry.getKey(), report, reportsContext);
+                    if (fastest == null
+                            || result.getFillNanos() + result.getExportNanos()
+                                    < fastest.getFillNanos() + fastest.getExportNanos()) {
+                        fastest = result;
+                    }
+                }
+                benchmark.add(fastest);
+            } catch (JRException e) {
+                throw new MojoExecutionException("Error filling report : " + file, e);
+            } catch (RuntimeException e) {
+                throw new MojoExecutionException("Error filling report : " + file, e);
+            }
+        }
+        return benchmark;
+    }
+
+    private FillBenchmark.Result measure(String path, JasperReport report, JasperReportsContext reportsContext)
+            throws JRException {
+        Map<String, Object> parameters = new HashMap<String, Object>(benchmarkParameters);
+        JRDataSource dataSource = "empty".equals(benchmarkDataSource)
+                ? new JREmptyDataSource(benchmarkRows)
+                : new SyntheticDataSource(benchmarkRows);
+
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        JasperPrint print = JasperFillManager.getInstance(reportsContext).fill(report, parameters, dataSource);
+        long fillNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (String format : benchmarkExports) {
+            OutputStream out = new DiscardingOutputStream();
+            if ("pdf".equals(format)) {
+                JRPdfExporter exporter = new JRPdfExporter(reportsContext);
+                exporter.setExporterInput(new SimpleExporterInput(print));
+                exporter.setExporterOutput(new SimpleOutputStreamExporterOutput(out));
+                exporter.exportReport();
+            } else {
+                JRCsvExporter exporter = new JRCsvExporter(reportsContext);
+                exporter.setExporterInput(new SimpleExporterInput(print));
+                exporter.setExporterOutput(new SimpleWriterExporterOutput(out));
+                exporter.exportReport();
+            }
+        }
+        long exportNanos = System.nanoTime() - start;
+
+        if (allocated >= 0) {
+            allocated = getAllocatedBytes() - allocated;
+        }
+        return new FillBenchmark.Result(path, print.getPages().size(), fillNanos, exportNanos, allocated);
+    }
+
+    /**
+     * @return the memory allocated by the current thread so far, or <code>-1</code> if the JVM does
+     *         not measure it
+     */
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()) {
+                return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A data source of a given number of rows, giving each field a value of its class derived from
+     * the row number, or null for the classes it does not know.
+     */
+    private static class SyntheticDataSource implements JRDataSource {
+        private static final long DAY = 24L * 60 * 60 * 1000;
+
+        private static final long EPOCH = 1577836800000L;
+
+        private final int rows;
+
+        private int row;
+
+        SyntheticDataSource(int rows) {
+            this.rows = rows;
+        }
+
+        public boolean next() {
+            return row++ < rows;
+        }
+
+        public Object getFieldValue(JRField field) {
+            Class<?> type = field.getValueClass();
+            if (type == String.class) {
+                return field.getName() + " " + row;
+            } else if (type == Integer.class) {
+                return Integer.valueOf(row);
+            } else if (type == Long.class) {
+                return Long.valueOf(row);
+            } else if (type == Short.class) {
+                return Short.valueOf((short) row);
+            } else if (type == Byte.class) {
+                return Byte.valueOf((byte) row);
+            } else if (type == Double.class || type == Number.class) {
+                return Double.valueOf(row * 1.5);
+            } else if (type == Float.class) {
+                return Float.valueOf(row * 1.5f);
+            } else if (type == BigDecimal.class) {
+                return BigDecimal.valueOf(row * 150L, 2);
+            } else if (type == BigInteger.class) {
+                return BigInteger.valueOf(row);
+            } else if (type == Boolean.class) {
+                return Boolean.valueOf(row % 2 == 0);
+            } else if (type == java.util.Date.class) {
+                return new java.util.Date(EPOCH + row * DAY);
+            } else if (type == java.sql.Date.class) {
+                return new java.sql.Date(EPOCH + row * DAY);
+            } else if (type == java.sql.Timestamp.class) {
+                return new java.sql.Timestamp(EPOCH + row * DAY);
+            } else if (type == java.sql.Time.class) {
+                return new java.sql.Time(EPOCH + row * 60000L);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Discards the exported reports, whose export is only measured.
+     */
+    private static class DiscardingOutputStream extends OutputStream {
+        public void write(int b) {}
+
+        public void write(byte[] b, int off, int len) {}
+    }
+}
@@ -0,0 +1,265 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import javax.tools.Diagnostic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jasperreports.engine.JasperReportsContext;
+import org.codehaus.plexus.compiler.CompilerMessage;
+
+/**
+ * A pool of long-lived JVMs running the {@link CompilerWorker}, so that the expression classes are
+ * compiled outside of the Maven JVM without starting a JVM per report.
+ * <p>
+ * Workers are started on demand, up to the size of the pool, and each one compiles a single request at
+ * a time. A worker which fails to answer is killed and replaced by a new one on the next request.
+ * </p>
+ */
+public class ForkedCompilerPool {
+
+    public static final String CONTEXT_KEY = ForkedCompilerPool.class.getName();
+
+    private static final long STOP_TIMEOUT_SECONDS = 10;
+
+    private final int size;
+
+    private final List<String> command;
+
+    private final LinkedList<Worker> idle = new LinkedList<Worker>();
+
+    private final List<Worker> all = new ArrayList<Worker>();
+
+    private int starting;
+
+    private boolean closed;
+
+    /**
+     * @param size the maximum number of workers
+     * @param maxMemory the maximum heap size of each worker, as given to <code>-Xmx</code>, or
+     *        <code>null</code> for the JVM default
+     * @param jvmArgs additional options of the worker JVMs
+     */
+    public ForkedCompilerPool(int size, String maxMemory, List<String> jvmArgs) throws IOException {
+        this.size = Math.max(1, size);
+        this.command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (maxMemory != null && maxMemory.length() > 0) {
+            command.add("-Xmx" + maxMemory);
+        }
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(getWorkerClasspath());
+        command.add(CompilerWorker.class.getName());
+    }
+
+    /**
+     * @return the pool stored in the given context, or <code>null</code>
+     */
+    public static ForkedCompilerPool get(JasperReportsContext jasperReportsContext) {
+        return (ForkedCompilerPool) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    /**
+     * Compiles sources in one of the workers.
+     *
+     * @param messages receives the compiler messages, with the name of the class they refer to
+     * @return the bytecode of the compiled classes, by class name
+     */
+    public Map<String, byte[]> compile(
+            List<String> options, String classpath, Map<String, String> sources, Map<CompilerMessage, String> messages)
+            throws IOException, InterruptedException {
+        Worker worker = acquire();
+        boolean answered = false;
+        try {
+            DataOutputStream out = worker.out;
+            out.writeInt(options.size());
+            for (String option : options) {
+                CompilerWorker.writeString(out, option);
+            }
+            CompilerWorker.writeString(out, classpath);
+            out.writeInt(sources.size());
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                CompilerWorker.writeString(out, source.getKey());
+                CompilerWorker.writeString(out, source.getValue());
+            }
+            out.flush();
+
+            DataInputStream in = worker.in;
+            int classCount = in.readInt();
+            if (classCount < 0) {
+                String error = CompilerWorker.readString(in);
+                answered = true;
+                throw new IOException(error);
+            }
+            Map<String, byte[]> classes = new HashMap<String, byte[]>();
+            for (int i = 0; i < classCount; i++) {
+                String className = CompilerWorker.readString(in);
+                byte[] classBytes = new byte[in.readInt()];
+                in.readFully(classBytes);
+                classes.put(className, classBytes);
+            }
+            int messageCount = in.readInt();
+            for (int i = 0; i < messageCount; i++) {
+                String className = CompilerWorker.readString(in);
+                Diagnostic.Kind kind = Diagnostic.Kind.valueOf(CompilerWorker.readString(in));
+                long line = in.readLong();
+                long column = in.readLong();
+                String message = CompilerWorker.readString(in);
+                messages.put(
+                        InMemoryJavacCompiler.toMessage(
+                                className.length() == 0 ? null : className, kind, line, column, message),
+                        className.length() == 0 ? null : className);
+            }
+            answered = true;
+            return classes;
+        } finally {
+            if (answered) {
+                release(worker);
+            } else {
+                discard(worker);
+            }
+        }
+    }
+
+    /**
+     * Stops all the workers.
+     */
+    public void close() {
+        List<Worker> workers;
+        synchronized (this) {
+            closed = true;
+            workers = new ArrayList<Worker>(all);
+            all.clear();
+            idle.clear();
+            notifyAll();
+        }
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    private Worker acquire() throws IOException, InterruptedException {
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new IOException("The compiler workers were stopped");
+                }
+                if (!idle.isEmpty()) {
+                    return idle.removeFirst();
+                }
+                if (all.size() + starting < size) {
+                    starting++;
+                    break;
+                }
+                wait();
+            }
+        }
+
+        Worker worker = null;
+        try {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            worker = new Worker(builder.start());
+            return worker;
+        } finally {
+            synchronized (this) {
+                starting--;
+                if (worker != null) {
+                    all.add(worker);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void release(Worker worker) {
+        if (closed) {
+            worker.stop();
+        } else {
+            idle.addFirst(worker);
+            notifyAll();
+        }
+    }
+
+    private void discard(Worker worker) {
+        synchronized (this) {
+            all.remove(worker);
+            notifyAll();
+        }
+        worker.process.destroy();
+    }
+
+    /**
+     * @return the location of the plugin classes, which is all the workers need
+     */
+    private static String getWorkerClasspath() throws IOException {
+        CodeSource codeSource = CompilerWorker.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+            throw new IOException("Unable to locate the classes of " + CompilerWorker.class.getName());
+        }
+        try {
+            return new File(codeSource.getLocation().toURI()).getPath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to locate the classes of " + CompilerWorker.class.getName(), e);
+        }
+    }
+
+    private static class Worker {
+        private final Process process;
+
+        private final DataOutputStream out;
+
+        private final DataInputStream in;
+
+        Worker(Process process) {
+            this.process = process;
+            this.out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        /**
+         * Closes the standard input of the worker, which makes it exit, and kills it if it does not.
+         */
+        void stop() {
+            try {
+                out.close();
+                if (!process.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            } catch (IOException e) {
+                process.destroy();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
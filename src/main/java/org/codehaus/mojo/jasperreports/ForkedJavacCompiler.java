@@ -0,0 +1,52 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import org.codehaus.plexus.compiler.CompilerMessage;
+
+/**
+ * Compiles the expression classes in the compiler JVMs of the {@link ForkedCompilerPool} stored in the
+ * context, keeping the memory used by the compiler out of the Maven JVM.
+ */
+public class ForkedJavacCompiler extends InMemoryJavacCompiler {
+
+    public ForkedJavacCompiler(JasperReportsContext jasperReportsContext) {
+        super(jasperReportsContext);
+    }
+
+    @Override
+    protected Map<String, byte[]> compile(
+            Map<String, String> sources, String classpath, Map<CompilerMessage, String> messages) throws JRException {
+        ForkedCompilerPool pool = ForkedCompilerPool.get(jasperReportsContext);
+        if (pool == null) {
+            throw new JRException("No compiler workers found in the JasperReports context; "
+                    + getClass().getName() + " can only compile reports from within the jasperreports-maven-plugin");
+        }
+        try {
+            return pool.compile(getOptions(), classpath, sources, messages);
+        } catch (IOException e) {
+            throw new JRException("Error compiling in a forked compiler JVM", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JRException("Interrupted while compiling in a forked compiler JVM", e);
+        }
+    }
+}
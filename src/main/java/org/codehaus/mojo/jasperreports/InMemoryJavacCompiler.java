@@ -0,0 +1,344 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRReport;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.design.JRAbstractJavaCompiler;
+import net.sf.jasperreports.engine.design.JRClassGenerator;
+import net.sf.jasperreports.engine.design.JRCompilationSourceCode;
+import net.sf.jasperreports.engine.design.JRCompilationUnit;
+import net.sf.jasperreports.engine.design.JRJavacCompiler;
+import net.sf.jasperreports.engine.design.JRSourceCompileTask;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.compiler.CompilerMessage;
+
+/**
+ * Compiles the expression classes with the <code>javax.tools</code> compiler of the running JVM, without
+ * writing sources or classes to disk.
+ * <p>
+ * The classpath is read through standard file managers kept in the {@link JavaFileManagerPool} of the
+ * context, so that its jars are opened once per build rather than once per report. The
+ * <code>executable</code> setting does not apply, as the compiler is never forked.
+ * </p>
+ */
+public class InMemoryJavacCompiler extends JRAbstractJavaCompiler implements BatchCompiler {
+
+    private final CompilerSettings settings;
+
+    public InMemoryJavacCompiler(JasperReportsContext jasperReportsContext) {
+        super(jasperReportsContext, false);
+        this.settings = CompilerSettings.get(jasperReportsContext);
+    }
+
+    protected Log getLog() {
+        return settings.getLog();
+    }
+
+    /**
+     * Records JasperReports' own javac compiler in the compiled reports, so that filling them does not need
+     * this plugin on the classpath.
+     */
+    @Override
+    protected String getCompilerClass() {
+        return JRJavacCompiler.class.getName();
+    }
+
+    /**
+     * @return the compiler to use, or <code>null</code> if none is available
+     */
+    protected JavaCompiler getJavaCompiler() {
+        return ToolProvider.getSystemJavaCompiler();
+    }
+
+    /**
+     * @return the compiler options matching the settings of the plugin
+     */
+    protected List<String> getOptions() {
+        List<String> options = new ArrayList<String>();
+        options.add(settings.isDebug() ? "-g" : "-g:none");
+        options.add("-proc:none");
+        if (settings.getSourceVersion() != null && settings.getSourceVersion().length() > 0) {
+            options.add("-source");
+            options.add(settings.getSourceVersion());
+        }
+        if (settings.getTargetVersion() != null && settings.getTargetVersion().length() > 0) {
+            options.add("-target");
+            options.add(settings.getTargetVersion());
+        }
+        return options;
+    }
+
+    @Override
+    protected void checkLanguage(String language) throws JRException {
+        if (!JRReport.LANGUAGE_JAVA.equals(language)) {
+            throw new JRException("compilers.language.expected.java", new Object[] {language, JRReport.LANGUAGE_JAVA});
+        }
+    }
+
+    @Override
+    protected JRCompilationSourceCode generateSourceCode(JRSourceCompileTask sourceTask) throws JRException {
+        CompileEvents.Span span = CompileEvents.get()
+                .begin(CompileTimings.Phase.GENERATE, MavenJavacCompiler.getCurrentReport(jasperReportsContext));
+        long start = System.nanoTime();
+        try {
+            return JRClassGenerator.generateClass(sourceTask);
+        } finally {
+            CompileTimings timings = CompileTimings.get(jasperReportsContext);
+            if (timings != null) {
+                timings.add(CompileTimings.Phase.GENERATE, System.nanoTime() - start);
+            }
+            span.end();
+        }
+    }
+
+    @Override
+    protected String getSourceFileName(String unitName) {
+        return unitName + ".java";
+    }
+
+    @Override
+    protected String compileUnits(JRCompilationUnit[] units, final String classpath, File tempDirFile)
+            throws JRException {
+        ExpressionClassCache classCache = ExpressionClassCache.get(jasperReportsContext);
+        ExpressionBatch batch = ExpressionBatch.get(jasperReportsContext);
+        long start = System.nanoTime();
+        try {
+            if (classCache != null) {
+                units = classCache.restore(units);
+                if (units.length == 0) {
+                    return null;
+                }
+            }
+            if (batch != null) {
+                batch.defer(this, units);
+                return null;
+            }
+            ExpressionStore store = ExpressionStore.get(jasperReportsContext);
+            String errors;
+            if (store != null) {
+                errors = store.compile(units, new ExpressionStore.Compilation() {
+                    public String compile(JRCompilationUnit[] owned) throws JRException {
+                        return compileOwnUnits(owned, classpath);
+                    }
+                });
+            } else {
+                errors = compileOwnUnits(units, classpath);
+            }
+            if (errors == null && classCache != null) {
+                classCache.store(units);
+            }
+            return errors;
+        } finally {
+            CompileTimings timings = CompileTimings.get(jasperReportsContext);
+            if (timings != null) {
+                timings.add(CompileTimings.Phase.JAVAC, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private String compileOwnUnits(JRCompilationUnit[] units, String classpath) throws JRException {
+        Map<String, String> sources = new LinkedHashMap<String, String>();
+        for (JRCompilationUnit unit : units) {
+            sources.put(unit.getCompileName(), unit.getSourceCode());
+        }
+        Map<String, String> errors = new LinkedHashMap<String, String>();
+        Map<String, byte[]> classes = compileBatch(sources, classpath, errors);
+        if (!errors.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (String error : errors.values()) {
+                sb.append(error).append('\n');
+            }
+            return sb.toString();
+        }
+        for (JRCompilationUnit unit : units) {
+            byte[] classBytes = classes.get(unit.getCompileName());
+            if (classBytes == null) {
+                return unit.getCompileName() + " was not compiled";
+            }
+            unit.setCompileData(classBytes);
+        }
+        return null;
+    }
+
+    public Map<String, byte[]> compileBatch(Map<String, String> sources, String classpath, Map<String, String> errors)
+            throws JRException {
+        if (settings == null) {
+            throw new JRException("No compiler settings found in the JasperReports context; "
+                    + getClass().getName() + " can only compile reports from within the jasperreports-maven-plugin");
+        }
+
+        Map<CompilerMessage, String> messages = new LinkedHashMap<CompilerMessage, String>();
+        Map<String, byte[]> compiled = null;
+        ClasspathIndex classpathIndex = ClasspathIndex.get(jasperReportsContext);
+        if (classpathIndex != null) {
+            String narrowed = classpathIndex.narrow(classpath, sources.values());
+            if (!narrowed.equals(classpath)) {
+                compiled = compileTimed(sources, narrowed, messages);
+                if (MavenJavacCompiler.hasErrors(messages.keySet())) {
+                    getLog().debug("Compiling again with the whole classpath, the narrowed one lacks classes");
+                    messages.clear();
+                    compiled = null;
+                }
+            }
+        }
+        if (compiled == null) {
+            compiled = compileTimed(sources, classpath, messages);
+        }
+        for (CompilerMessage error :
+                MavenJavacCompiler.logMessages(getLog(), new ArrayList<CompilerMessage>(messages.keySet()))) {
+            String className = messages.get(error);
+            String previous = errors.get(className);
+            errors.put(className, previous == null ? error.toString() : previous + "\n" + error);
+        }
+
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        for (String className : sources.keySet()) {
+            byte[] classBytes = compiled.get(className);
+            if (!errors.containsKey(className) && classBytes != null) {
+                classes.put(className, classBytes);
+            }
+        }
+        return classes;
+    }
+
+    private Map<String, byte[]> compileTimed(
+            Map<String, String> sources, String classpath, Map<CompilerMessage, String> messages) throws JRException {
+        CompileEvents.Span span = CompileEvents.get()
+                .beginJavac(
+                        MavenJavacCompiler.getCurrentReport(jasperReportsContext),
+                        sources.size(),
+                        classpath.split(File.pathSeparator).length);
+        try {
+            return compile(sources, classpath, messages);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Compiles the given sources.
+     *
+     * @param messages receives the compiler messages, with the name of the class they refer to
+     * @return the bytecode of the compiled classes, by class name
+     */
+    protected Map<String, byte[]> compile(
+            Map<String, String> sources, String classpath, Map<CompilerMessage, String> messages) throws JRException {
+        JavaCompiler tool = getJavaCompiler();
+        if (tool == null) {
+            throw new JRException("No Java compiler available in this JVM, make sure Maven runs on a JDK");
+        }
+
+        JavaFileManagerPool pool = JavaFileManagerPool.get(jasperReportsContext);
+        StandardJavaFileManager standardFileManager;
+        try {
+            standardFileManager =
+                    pool != null ? pool.acquire(tool, classpath) : JavaFileManagerPool.create(tool, classpath);
+        } catch (IOException e) {
+            throw new JRException("Error setting up the compiler classpath", e);
+        }
+
+        try {
+            List<JavaFileObject> compilationUnits = new ArrayList<JavaFileObject>(sources.size());
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                compilationUnits.add(MemoryFileManager.source(source.getKey(), source.getValue()));
+            }
+
+            MemoryFileManager fileManager = new MemoryFileManager(standardFileManager);
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+            try {
+                tool.getTask(null, fileManager, diagnostics, getOptions(), null, compilationUnits)
+                        .call();
+            } catch (RuntimeException e) {
+                throw new JRException("Fatal error compiling", e);
+            }
+
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                String className = MemoryFileManager.getClassName(diagnostic.getSource());
+                messages.put(
+                        toMessage(
+                                className,
+                                diagnostic.getKind(),
+                                diagnostic.getLineNumber(),
+                                diagnostic.getColumnNumber(),
+                                diagnostic.getMessage(Locale.ROOT)),
+                        className);
+            }
+
+            Map<String, byte[]> classes = new HashMap<String, byte[]>();
+            for (String className : sources.keySet()) {
+                byte[] classBytes = fileManager.getClassBytes(className);
+                if (classBytes != null) {
+                    classes.put(className, classBytes);
+                }
+            }
+            return classes;
+        } finally {
+            if (pool != null) {
+                pool.release(tool, classpath, standardFileManager);
+            } else {
+                try {
+                    standardFileManager.close();
+                } catch (IOException e) {
+                    getLog().debug(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param className the class the message refers to, or <code>null</code>
+     */
+    static CompilerMessage toMessage(
+            String className, Diagnostic.Kind diagnosticKind, long lineNumber, long columnNumber, String text) {
+        CompilerMessage.Kind kind;
+        switch (diagnosticKind) {
+            case ERROR:
+                kind = CompilerMessage.Kind.ERROR;
+                break;
+            case MANDATORY_WARNING:
+                kind = CompilerMessage.Kind.MANDATORY_WARNING;
+                break;
+            case NOTE:
+                kind = CompilerMessage.Kind.NOTE;
+                break;
+            default:
+                kind = CompilerMessage.Kind.WARNING;
+                break;
+        }
+        String file = className == null ? null : className + ".java";
+        int line = (int) Math.max(lineNumber, 0);
+        int column = (int) Math.max(columnNumber, 0);
+        return new CompilerMessage(file, kind, line, column, line, column, text);
+    }
+}
@@ -15,40 +15,60 @@ package org.codehaus.mojo.jasperreports;
  * the License.
  */
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLClassLoader;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.security.CodeSource;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRReport;
 import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
 import net.sf.jasperreports.engine.JasperReportsContext;
 import net.sf.jasperreports.engine.SimpleJasperReportsContext;
 import net.sf.jasperreports.engine.design.JRCompiler;
+import net.sf.jasperreports.engine.design.JRValidationException;
+import net.sf.jasperreports.engine.design.JRValidationFault;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.util.JRSaver;
+import net.sf.jasperreports.engine.xml.JRSaxParserFactory;
+import net.sf.jasperreports.engine.xml.JRXmlLoader;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.compiler.Compiler;
 import org.codehaus.plexus.compiler.manager.CompilerManager;
 import org.codehaus.plexus.compiler.manager.NoSuchCompilerException;
 import org.codehaus.plexus.compiler.util.scan.InclusionScanException;
+import org.codehaus.plexus.compiler.util.scan.SimpleSourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
-import org.codehaus.plexus.compiler.util.scan.StaleSourceScanner;
 import org.codehaus.plexus.compiler.util.scan.mapping.SourceMapping;
 import org.codehaus.plexus.compiler.util.scan.mapping.SuffixMapping;
 
@@ -81,6 +101,15 @@ public class JasperReportsMojo extends AbstractMojo {
      */
     private MavenSession session;
 
+    /**
+     * The descriptor of this plugin, whose version is part of the compile environment.
+     *
+     * @parameter default-value="${plugin}"
+     * @required
+     * @readonly
+     */
+    private PluginDescriptor plugin;
+
     /**
      * This is where the generated java sources are stored.
      *
@@ -141,17 +170,53 @@ public class JasperReportsMojo extends AbstractMojo {
     private boolean keepSerializedObject;
 
     /**
-     * Wether the xml design files must be validated.
+     * Wether the xml design files must be validated. All the report designs to compile are then
+     * validated in parallel before any of them is compiled. Designs are validated while they are
+     * loaded as well, as JasperReports relies on the default values of the schemas, so the separate
+     * validation is skipped when the designs are verified.
      *
-     * @parameter default-value="true"
+     * @parameter property="jasperreports.xmlValidation" default-value="true"
      */
     private boolean xmlValidation;
 
     /**
-     * Uses the Javac compiler by default. This is different from the original JasperReports ant
-     * task, which uses the JDT compiler by default.
+     * Whether all the report designs to compile are loaded and verified in parallel before any of them
+     * is compiled, so that the problems of all the designs, such as expressions referring to missing
+     * fields, are reported at once instead of failing the build after the designs before them were
+     * compiled. The designs are validated while they are loaded for the verification, so that invalid
+     * designs are reported at once as well.
+     *
+     * @parameter property="jasperreports.verifyDesigns" default-value="true"
+     * @since 1.0-beta-5
+     */
+    private boolean verifyDesigns;
+
+    /**
+     * The class of the compiler of the expression classes. When not set, JasperReports picks its own
+     * compiler, the JDT compiler when it is on the classpath as it is with this plugin.
+     * <p>
+     * Set to <code>org.codehaus.mojo.jasperreports.MavenJavacCompiler</code> to compile with javac through
+     * the Plexus compiler, for the <code>source</code> and <code>target</code> versions.
+     * </p>
+     * <p>
+     * Set to <code>org.codehaus.mojo.jasperreports.InMemoryJavacCompiler</code> to compile with the
+     * compiler of the running JDK, without writing sources and classes to disk.
+     * </p>
+     * <p>
+     * Set to <code>org.codehaus.mojo.jasperreports.EcjCompiler</code> to compile in memory with the
+     * Eclipse compiler, which also works when Maven does not run on a JDK.
+     * </p>
+     * <p>
+     * Up to 1.0-beta-4 this parameter defaulted to the <code>MavenJavacCompiler</code>, registered under a
+     * property JasperReports does not read, so the reports were actually compiled with the JDT compiler.
+     * The compiler is now registered so that JasperReports uses it, and is only set when configured,
+     * which keeps the JDT compiler for the builds which do not set it. The reports compiled by the
+     * compilers of the plugin name the JasperReports <code>JRJavacCompiler</code> as their compiler, so
+     * filling them does not need this plugin. Forking, batches and the reuse of expression classes
+     * need one of the compilers of the plugin.
+     * </p>
      *
-     * @parameter default-value="org.codehaus.mojo.jasperreports.MavenJavacCompiler"
+     * @parameter property="jasperreports.compiler"
      */
     private String compiler;
 
@@ -175,6 +240,17 @@ public class JasperReportsMojo extends AbstractMojo {
      */
     private String additionalClasspath;
 
+    /**
+     * Whether the expression classes of each report are compiled with only the classpath entries
+     * providing the packages their sources import or refer to, rather than the whole classpath. The
+     * packages of the classpath entries are indexed once per build. The whole classpath is used again
+     * when the narrowed one lacks classes needed by the expressions.
+     *
+     * @parameter property="jasperreports.minimizeClasspath" default-value="false"
+     * @since 1.0-beta-5
+     */
+    private boolean minimizeClasspath;
+
     /**
      * Plexus compiler manager.
      *
@@ -190,16 +266,18 @@ public class JasperReportsMojo extends AbstractMojo {
     private String executable;
 
     /**
-     * The -source argument for the Java compiler.
+     * The -source argument of the compilers of the plugin, see <code>compiler</code>. It defaulted to 1.5 up to
+     * 1.0-beta-4, when it had no effect; recent JDKs no longer accept it.
      *
-     * @parameter property="maven.compiler.source" default-value="1.5"
+     * @parameter property="maven.compiler.source" default-value="1.8"
      */
     protected String source;
 
     /**
-     * The -target argument for the Java compiler.
+     * The -target argument of the compilers of the plugin, see <code>compiler</code>. It defaulted to 1.5 up to
+     * 1.0-beta-4, when it had no effect; recent JDKs no longer accept it.
      *
-     * @parameter property="maven.compiler.target" default-value="1.5"
+     * @parameter property="maven.compiler.target" default-value="1.8"
      */
     protected String target;
 
@@ -217,6 +295,251 @@ public class JasperReportsMojo extends AbstractMojo {
      */
     private boolean debug = true;
 
+    /**
+     * The number of report design files compiled concurrently. Zero or less uses one thread per
+     * available processor.
+     *
+     * @parameter property="jasperreports.threads" default-value="0"
+     * @since 1.0-beta-5
+     */
+    private int threads;
+
+    /**
+     * The memory in megabytes the report designs compiled at the same time may take, as estimated from
+     * the size of their files and their number of expressions. A design waits for its estimate to fit
+     * before it is loaded, and batch compilations are split into batches which fit. Zero or less uses
+     * half of the maximum heap.
+     *
+     * @parameter property="jasperreports.memoryBudget" default-value="0"
+     * @since 1.0-beta-5
+     */
+    private int memoryBudget;
+
+    /**
+     * Set to true to generate the expression sources of all stale reports first, and to compile them
+     * with as few compiler invocations as possible instead of invoking the compiler once per report.
+     * This only has an effect with compilers supporting it, like the default one.
+     *
+     * @parameter property="jasperreports.batch" default-value="false"
+     * @since 1.0-beta-5
+     */
+    private boolean batch;
+
+    /**
+     * The maximum number of expression classes passed to a single compiler invocation in batch mode.
+     *
+     * @parameter property="jasperreports.batchSize" default-value="500"
+     * @since 1.0-beta-5
+     */
+    private int batchSize;
+
+    /**
+     * The file recording the state of the report designs compiled by the previous builds, used to
+     * skip the unchanged ones.
+     *
+     * @parameter default-value="${project.build.directory}/jasperreports/manifest.txt"
+     * @since 1.0-beta-5
+     */
+    private File manifestFile;
+
+    /**
+     * A properties file indexing the compiled reports, with their parameters and their dependencies,
+     * for applications to look reports up on the classpath without loading them. No index is written
+     * when not set; set it to
+     * <code>${project.build.outputDirectory}/META-INF/jasperreports/reports.properties</code> to package
+     * the index along with the reports.
+     *
+     * @parameter property="jasperreports.reportIndexFile"
+     * @since 1.0-beta-5
+     */
+    private File reportIndexFile;
+
+    /**
+     * The number of shards the report designs are split into, to be compiled by as many builds, such as
+     * the agents of a CI pipeline. Each build compiles the designs of its shard and writes a partial
+     * manifest and report index, which the <code>merge-shards</code> goal combines.
+     *
+     * @parameter property="jasperreports.shardCount" default-value="1"
+     * @since 1.0-beta-5
+     */
+    private int shardCount;
+
+    /**
+     * The shard of report designs compiled by this build, from 0 to <code>shardCount - 1</code>.
+     *
+     * @parameter property="jasperreports.shardIndex" default-value="0"
+     * @since 1.0-beta-5
+     */
+    private int shardIndex;
+
+    /**
+     * A directory where compiled reports are kept, to be restored instead of compiled when a report
+     * design, its dependencies and the compile environment match a previous build. The directory can be
+     * shared by several projects, branches and build agents. The cache is disabled when not set.
+     *
+     * @parameter property="jasperreports.cacheDirectory"
+     * @since 1.0-beta-5
+     */
+    private File cacheDirectory;
+
+    /**
+     * The maximum size of the cache directory in megabytes, beyond which the least recently used
+     * compiled reports are deleted.
+     *
+     * @parameter property="jasperreports.cacheMaxSize" default-value="512"
+     * @since 1.0-beta-5
+     */
+    private long cacheMaxSize;
+
+    /**
+     * Set to true to keep the bytecode of the expression classes between builds, and reuse it for the
+     * report designs whose generated expression source did not change. Editing only the layout of a
+     * design then serializes it again without running the Java compiler. The classes are kept for as
+     * long as the compile environment does not change.
+     *
+     * @parameter property="jasperreports.reuseExpressionClasses" default-value="true"
+     * @since 1.0-beta-5
+     */
+    private boolean reuseExpressionClasses;
+
+    /**
+     * The directory the bytecode of the expression classes is kept in.
+     *
+     * @parameter default-value="${project.build.directory}/jasperreports/expressions"
+     * @since 1.0-beta-5
+     */
+    private File expressionClassDirectory;
+
+    /**
+     * The maximum size of the expression classes kept between builds, in megabytes. The least recently
+     * used classes are deleted after each build beyond that size, so that the directory does not grow
+     * without bounds while the <code>watch</code> goal runs.
+     *
+     * @parameter property="jasperreports.expressionClassMaxSize" default-value="64"
+     * @since 1.0-beta-5
+     */
+    private long expressionClassMaxSize;
+
+    /**
+     * Set to true to compile the expression classes in separate JVMs, which keeps the memory used by
+     * the compiler out of the Maven JVM. The JVMs are started once and reused for all the reports of
+     * the build. This applies to the <code>MavenJavacCompiler</code> and <code>InMemoryJavacCompiler</code>
+     * compilers, which are then replaced by the <code>ForkedJavacCompiler</code>.
+     *
+     * @parameter property="jasperreports.fork" default-value="false"
+     * @since 1.0-beta-5
+     */
+    private boolean fork;
+
+    /**
+     * The maximum number of compiler JVMs when forking. The default of 0 means one per compiler
+     * thread.
+     *
+     * @parameter property="jasperreports.forkCount" default-value="0"
+     * @since 1.0-beta-5
+     */
+    private int forkCount;
+
+    /**
+     * The maximum heap size of each compiler JVM when forking, like <code>512m</code>. The JVM default
+     * applies when not set.
+     *
+     * @parameter property="jasperreports.forkMaxMemory"
+     * @since 1.0-beta-5
+     */
+    private String forkMaxMemory;
+
+    /**
+     * Additional options of the compiler JVMs when forking, separated by spaces.
+     *
+     * @parameter property="jasperreports.forkJvmArgs"
+     * @since 1.0-beta-5
+     */
+    private String forkJvmArgs;
+
+    /**
+     * The file the time spent compiling each report design is written to, by phase: XML loading,
+     * design verification, expression source generation, expression compilation and writing. It is
+     * written as CSV if its name ends with <code>.csv</code>, as JSON otherwise.
+     *
+     * @parameter property="jasperreports.timingsFile"
+     *            default-value="${project.build.directory}/jasperreports/compile-timings.json"
+     * @since 1.0-beta-5
+     */
+    private File timingsFile;
+
+    /**
+     * The number of slowest report designs listed in the build log, along with the total time spent in
+     * each phase.
+     *
+     * @parameter property="jasperreports.slowestReports" default-value="5"
+     * @since 1.0-beta-5
+     */
+    private int slowestReports;
+
+    private ReportCache reportCache;
+
+    /**
+     * The fingerprint of the compile environment which is part of the cache keys.
+     */
+    private String cacheEnvironment;
+
+    private static final int MAX_JAR_HASHES = 1024;
+
+    /**
+     * The content hashes of the classpath jars, by path, size and modification time. The least recently
+     * used ones are dropped beyond {@link #MAX_JAR_HASHES}, so that long-lived daemons rebuilding changed
+     * jars do not keep the hashes of all their versions.
+     */
+    private static final Map<String, String> JAR_HASHES = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_JAR_HASHES;
+        }
+    };
+
+    private BuildManifest manifest;
+
+    private ReportIndex reportIndex;
+
+    /**
+     * The state of the stale report designs, taken when they were found stale.
+     */
+    private final Map<String, SourceState> sourceStates = new HashMap<String, SourceState>();
+
+    /**
+     * The state of the files report designs depend on, taken once per build.
+     */
+    private final Map<String, SourceState> resourceStates = new HashMap<String, SourceState>();
+
+    /**
+     * The content hashes of the class directories of the classpath.
+     */
+    private final Map<File, String> directoryHashes = new HashMap<File, String>();
+
+    /**
+     * The estimated memory taken by the compilation of the stale report designs.
+     */
+    private final Map<File, Long> memoryEstimates = new ConcurrentHashMap<File, Long>();
+
+    private ReportDependencies reportDependencies;
+
+    private CompileTimings timings;
+
+    private MemoryBudget memory;
+
+    /**
+     * The number of compiled reports which were identical to the existing ones.
+     */
+    private final AtomicInteger unchangedReports = new AtomicInteger();
+
+    /**
+     * The JasperReports context of the compilation, with its compile manager.
+     */
+    private CompilerService.Environment environment;
+
     public void execute() throws MojoExecutionException, MojoFailureException {
         getLog().debug("javaDir = " + javaDirectory);
         getLog().debug("sourceDirectory = " + sourceDirectory);
@@ -233,223 +556,1295 @@ public class JasperReportsMojo extends AbstractMojo {
         checkDir(javaDirectory, "Directory for generated java sources", true);
         checkDir(sourceDirectory, "Source directory", false);
         checkDir(outputDirectory, "Target directory", true);
-
-        SourceMapping mapping = new SuffixMapping(sourceFileExt, outputFileExt);
-
-        Set<File> staleSources = scanSrcDir(mapping);
-        if (staleSources.isEmpty()) {
-            getLog().info("Nothing to compile - all Jasper reports are up to date");
-        } else {
-            // actual compilation
-            compile(staleSources, mapping);
-
-            if (keepJava) {
-                project.addCompileSourceRoot(javaDirectory.getAbsolutePath());
-            }
+        if (shardCount > 1 && (shardIndex < 0 || shardIndex >= shardCount)) {
+            throw new MojoExecutionException(
+                    "The shard index must be between 0 and " + (shardCount - 1) + ": " + shardIndex);
         }
-    }
-
-    protected void compile(Set<File> files, SourceMapping mapping) throws MojoFailureException, MojoExecutionException {
-        String classpath = buildClasspathString(classpathElements, additionalClasspath);
-        getLog().debug("buildClasspathString() = " + classpath);
 
-        getLog().info("Compiling " + files.size() + " report design files.");
+        // the watch goal executes the mojo again for every change, files are hashed once per execution
+        sourceStates.clear();
+        resourceStates.clear();
+        directoryHashes.clear();
+        memoryEstimates.clear();
 
-        getLog().debug("Set classloader");
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-        Thread.currentThread().setContextClassLoader(getClassLoader(classLoader));
+        SourceMapping mapping = getSourceMapping();
+        reportDependencies = new ReportDependencies(sourceDirectory, sourceFileExt, outputFileExt);
 
         try {
-            JasperReportsContext reportsContext = new SimpleJasperReportsContext();
-            reportsContext.setProperty(JRCompiler.COMPILER_CLASSPATH, classpath);
-            reportsContext.setProperty(JRCompiler.COMPILER_TEMP_DIR, javaDirectory.getAbsolutePath());
-            reportsContext.setProperty(JRCompiler.COMPILER_KEEP_JAVA_FILE, Boolean.toString(keepJava));
-            reportsContext.setProperty(JRCompiler.COMPILER_PREFIX, compiler);
-            JasperCompileManager jasperCompilerManager = JasperCompileManager.getInstance(reportsContext);
+            manifest = BuildManifest.read(manifestFile);
+        } catch (IOException e) {
+            getLog().warn("Unable to read " + manifestFile + ", compiling all report designs", e);
+            manifest = new BuildManifest();
+        }
 
-            Compiler compilerMaven;
+        reportIndex = null;
+        if (reportIndexFile != null) {
+            try {
+                reportIndex = ReportIndex.read(reportIndexFile);
+            } catch (IOException e) {
+                getLog().warn("Unable to read " + reportIndexFile + ", compiling all report designs", e);
+                reportIndex = new ReportIndex();
+            }
+        }
 
-            String compilerId = "javac";
+        try {
+            Set<File> staleSources = getStaleSources(scanSrcDir(mapping), mapping);
+            if (staleSources.isEmpty()) {
+                getLog().info("Nothing to compile - all Jasper reports are up to date");
+            } else {
+                // actual compilation
+                compile(staleSources, mapping);
 
-            getLog().debug("Using compiler '" + compilerId + "'.");
+                if (keepJava) {
+                    project.addCompileSourceRoot(javaDirectory.getAbsolutePath());
+                }
+            }
+        } finally {
+            writeManifest();
+            writeReportIndex();
+        }
+    }
 
-            try {
-                compilerMaven = compilerManager.getCompiler(compilerId);
-            } catch (NoSuchCompilerException e) {
-                throw new MojoExecutionException("No such compiler '" + e.getCompilerId() + "'.");
+    /**
+     * Selects the report designs which changed since they were last compiled, according to the
+     * manifest, along with the designs depending on them or on another changed file. The size and
+     * modification time of a file are checked first, and its content is only hashed when they differ
+     * from the recorded ones: a file which was merely touched does not cause any compilation. Entries
+     * of designs which no longer exist are dropped from the manifest and the report index. All the
+     * designs are stale when the compile environment changed, and so are those missing from the index.
+     * <p>
+     * When the designs are split into shards, only those of the shard of this build are considered,
+     * and the manifest and the index only keep their entries. A change to a design of another shard
+     * does not make the designs depending on it stale, as it is compiled by another build. The manifest
+     * merged from the shards, compiled on other machines, only records the portable fingerprint of their
+     * environment.
+     * </p>
+     */
+    private Set<File> getStaleSources(Set<File> sources, SourceMapping mapping) throws MojoExecutionException {
+        String environment = getEnvironmentFingerprint(false);
+        if (!environment.equals(manifest.getEnvironment())) {
+            if (manifest.getEnvironment() == null
+                    && manifest.getPortableEnvironment() != null
+                    && manifest.getPortableEnvironment().equals(getEnvironmentFingerprint(true))) {
+                getLog().debug("The manifest was merged from shards compiled in the same environment");
+            } else {
+                if (manifest.getEnvironment() != null || manifest.getPortableEnvironment() != null) {
+                    getLog().info("The compile environment changed, all report designs are compiled again.");
+                }
+                manifest.clear();
             }
+            manifest.setEnvironment(environment);
+        }
+        manifest.setPortableEnvironment(shardCount > 1 ? getEnvironmentFingerprint(true) : null);
 
-            MavenJavacCompiler.init(getLog(), compilerMaven, debug, encoding, executable, source, target);
+        Map<String, File> designs = new TreeMap<String, File>();
+        for (File src : sources) {
+            designs.put(getPathRelativeToRoot(src), src);
+        }
 
-            for (Iterator<String> i = additionalProperties.keySet().iterator(); i.hasNext(); ) {
-                String key = i.next();
-                String value = additionalProperties.get(key);
-                // JRProperties.setProperty( key, value );
-                getLog().debug("Added property: " + key + ":" + value);
+        Set<String> otherShards = Collections.emptySet();
+        if (shardCount > 1) {
+            Map<String, Long> sizes = new HashMap<String, Long>();
+            for (Map.Entry<String, File> design : designs.entrySet()) {
+                sizes.put(design.getKey(), Long.valueOf(design.getValue().length()));
             }
+            Set<String> shard = ReportShards.select(sizes, shardIndex, shardCount);
+            getLog().info("Compiling shard " + shardIndex + " of " + shardCount + ": " + shard.size() + " of "
+                    + designs.size() + " report designs");
+            otherShards = new HashSet<String>(designs.keySet());
+            otherShards.removeAll(shard);
+            designs.keySet().retainAll(shard);
+        }
 
-            Iterator<File> it = files.iterator();
-            while (it.hasNext()) {
-                File src = (File) it.next();
-                String srcName = getPathRelativeToRoot(src);
-                try {
-                    // get the single destination file
-                    File dest = (File) mapping.getTargetFiles(outputDirectory, srcName)
-                            .iterator()
-                            .next();
-
-                    File destFileParent = dest.getParentFile();
-                    if (!destFileParent.exists()) {
-                        if (destFileParent.mkdirs()) {
-                            getLog().debug("Created directory " + destFileParent);
-                        } else {
-                            throw new MojoExecutionException("Could not create directory " + destFileParent);
-                        }
-                    }
-
-                    final File targetdir = new File(project.getBasedir(), "target");
-                    final File md5dir = new File(targetdir, "jaspermd5");
-
-                    final File md5File = new File(md5dir, srcName + ".md5");
-                    if (dest.exists() && md5File.exists()) {
-                        getLog().debug("destination exists, md5 file exists");
-                        try {
-                            final String srcMd5String = getFileMd5(src);
-
-                            BufferedReader br = null;
-                            try {
-                                br = new BufferedReader(new FileReader(md5File));
-                                final String fileMd5 = br.readLine();
-
-                                if (srcMd5String.equals(fileMd5)) {
-                                    getLog().info("Skipping report file: " + src + " (MD5 matches)");
-                                    continue;
-                                }
-                            } finally {
-                                if (br != null) br.close();
-                            }
-                        } catch (final Exception e) {
-                            getLog().warn("unable to read from " + src, e);
-                        }
-                    }
-                    getLog().info("Compiling report file: " + srcName);
-                    jasperCompilerManager.compileToFile(src.getAbsolutePath(), dest.getAbsolutePath());
-
-                    try {
-                        final String destMd5 = getFileMd5(src);
-                        md5File.getParentFile().mkdirs();
-                        final FileWriter fr = new FileWriter(md5File);
-                        fr.write(destMd5);
-                        fr.write("\n");
-                        fr.close();
-                    } catch (final Exception e) {
-                        getLog().warn("unable to MD5 " + dest + ": " + e.getLocalizedMessage());
-                    }
-                } catch (JRException e) {
-                    throw new MojoExecutionException("Error compiling report design : " + src, e);
-                } catch (InclusionScanException e) {
-                    throw new MojoExecutionException("Error compiling report design : " + src, e);
+        Set<String> changed = new HashSet<String>();
+        Map<String, CompileEvents.Span> checks = new LinkedHashMap<String, CompileEvents.Span>();
+        for (Map.Entry<String, File> design : designs.entrySet()) {
+            String srcName = design.getKey();
+            File src = design.getValue();
+            CompileEvents.Span check = CompileEvents.get().beginUpToDateCheck(srcName);
+            BuildManifest.Entry entry = manifest.get(srcName);
+            if (entry == null
+                    || entry.isResource()
+                    || (reportIndex != null && !reportIndex.contains(getOutputPath(srcName)))
+                    || !getDestination(src, srcName, mapping).exists()) {
+                sourceStates.put(srcName, getSourceState(src));
+                changed.add(srcName);
+            } else if (entry.getSize() != src.length() || entry.getLastModified() != src.lastModified()) {
+                SourceState state = getSourceState(src);
+                if (state.hash.equals(entry.getSourceHash())) {
+                    getLog().debug("Skipping report file: " + srcName + " (content unchanged)");
+                    manifest.put(
+                            srcName,
+                            new BuildManifest.Entry(
+                                    state.size,
+                                    state.lastModified,
+                                    state.hash,
+                                    entry.getOutputHash(),
+                                    entry.getDependencies()));
+                } else {
+                    sourceStates.put(srcName, state);
+                    changed.add(srcName);
                 }
             }
-        } finally {
-            if (classLoader != null) {
-                Thread.currentThread().setContextClassLoader(classLoader);
+            check.stop();
+            checks.put(srcName, check);
+        }
+
+        for (String srcName : designs.keySet()) {
+            BuildManifest.Entry entry = manifest.get(srcName);
+            if (entry == null) {
+                continue;
+            }
+            for (String dependency : entry.getDependencies()) {
+                if (!designs.containsKey(dependency)
+                        && !otherShards.contains(dependency)
+                        && !changed.contains(dependency)
+                        && isResourceChanged(dependency)) {
+                    getLog().debug("Changed dependency: " + dependency);
+                    changed.add(dependency);
+                }
             }
         }
-        getLog().info("Compiled " + files.size() + " report design files.");
-    }
 
-    private String getFileMd5(File src) throws NoSuchAlgorithmException, FileNotFoundException, IOException {
-        final MessageDigest md = MessageDigest.getInstance("MD5");
-        FileInputStream sourceIs = null;
-        try {
-            sourceIs = new FileInputStream(src);
-            byte[] dataBytes = new byte[1024];
-            int nread = 0;
-            while ((nread = sourceIs.read(dataBytes)) != -1) {
-                md.update(dataBytes, 0, nread);
+        Set<File> staleSources = new TreeSet<File>();
+        for (String srcName : changed) {
+            if (designs.containsKey(srcName)) {
+                staleSources.add(designs.get(srcName));
             }
-            ;
-        } finally {
-            if (sourceIs != null) sourceIs.close();
         }
-        final byte[] mdbytes = md.digest();
-        final StringBuffer srcMd5 = new StringBuffer();
-        for (int i = 0; i < mdbytes.length; i++) {
-            srcMd5.append(Integer.toString((mdbytes[i] & 0xff) + 0x100, 16).substring(1));
+        for (String srcName : manifest.getDependents(changed)) {
+            File src = designs.get(srcName);
+            if (src != null && staleSources.add(src)) {
+                getLog().debug("Recompiling " + srcName + " as one of its dependencies changed");
+                sourceStates.put(srcName, getSourceState(src));
+            }
+        }
+        for (Map.Entry<String, CompileEvents.Span> check : checks.entrySet()) {
+            check.getValue().setUpToDate(!staleSources.contains(designs.get(check.getKey())));
+            check.getValue().end();
+        }
+
+        manifest.prune(designs.keySet());
+        if (reportIndex != null) {
+            List<String> outputPaths = new ArrayList<String>();
+            for (String srcName : designs.keySet()) {
+                outputPaths.add(getOutputPath(srcName));
+            }
+            reportIndex.prune(outputPaths);
         }
-        final String srcMd5String = srcMd5.toString();
-        return srcMd5String;
+        return staleSources;
     }
 
     /**
-     * Determines source files to be compiled, based on the SourceMapping. No longer needs to be
-     * recursive, since the SourceInclusionScanner handles that.
+     * Computes a fingerprint of everything besides the report designs which affects the compiled
+     * reports: the versions of the plugin and JasperReports, the compiler settings and the classpath.
+     * Jars are identified by their path, size and modification time, and directories by their path
+     * only, as they typically hold the classes of the project, which change with every build.
      *
-     * @param mapping
-     * @return
-     * @throws org.apache.maven.plugin.MojoExecutionException
+     * @param portable whether the fingerprint must not depend on where the build runs, for the cache:
+     *        jars are then identified by their name and content hash, and directories by the paths
+     *        and content hashes of their class files
      */
-    protected Set<File> scanSrcDir(SourceMapping mapping) throws MojoExecutionException {
-        final int staleMillis = 0;
-
-        SourceInclusionScanner scanner = new StaleSourceScanner(staleMillis);
-        scanner.addSourceMapping(mapping);
+    private String getEnvironmentFingerprint(boolean portable) throws MojoExecutionException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("plugin=").append(plugin != null ? plugin.getVersion() : null).append('\n');
+        sb.append("jasperreports=")
+                .append(JasperCompileManager.class.getPackage().getImplementationVersion())
+                .append('\n');
+        CodeSource codeSource = JasperCompileManager.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null && "file".equals(codeSource.getLocation().getProtocol())) {
+            try {
+                appendFile(
+                        sb,
+                        "jasperreports.jar",
+                        new File(codeSource.getLocation().toURI()),
+                        portable);
+            } catch (URISyntaxException e) {
+                sb.append("jasperreports.jar=").append(codeSource.getLocation()).append('\n');
+            }
+        }
+        sb.append("compiler=").append(compiler).append('\n');
+        sb.append("source=").append(source).append('\n');
+        sb.append("target=").append(target).append('\n');
+        sb.append("encoding=").append(encoding).append('\n');
+        sb.append("debug=").append(debug).append('\n');
+        sb.append("executable=").append(executable).append('\n');
+        sb.append("sourceFileExt=").append(sourceFileExt).append('\n');
+        for (Map.Entry<String, String> property : new TreeMap<String, String>(additionalProperties).entrySet()) {
+            sb.append("property.")
+                    .append(property.getKey())
+                    .append('=')
+                    .append(property.getValue())
+                    .append('\n');
+        }
+        for (String element :
+                buildClasspathString(classpathElements, additionalClasspath).split(File.pathSeparator)) {
+            if (element.length() > 0) {
+                appendFile(sb, "classpath", new File(element), portable);
+            }
+        }
 
+        if (getLog().isDebugEnabled()) {
+            getLog().debug((portable ? "Portable compile environment:\n" : "Compile environment:\n") + sb);
+        }
         try {
-            return scanner.getIncludedSources(sourceDirectory, outputDirectory);
-        } catch (InclusionScanException e) {
-            throw new MojoExecutionException(
-                    "Error scanning source root: \'" + sourceDirectory + "\' " + "for stale files to recompile.", e);
+            return XxHash64.hash(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new MojoExecutionException("UTF-8 is not supported", e);
         }
     }
 
-    private String getPathRelativeToRoot(File file) throws MojoExecutionException {
-        try {
-            String root = this.sourceDirectory.getCanonicalPath();
-            String filePath = file.getCanonicalPath();
-            if (!filePath.startsWith(root)) {
-                throw new MojoExecutionException("File is not in source root ??? " + file);
+    private void appendFile(StringBuilder sb, String name, File file, boolean portable) throws MojoExecutionException {
+        if (!portable) {
+            sb.append(name).append('=').append(file.getAbsolutePath());
+            if (file.isFile()) {
+                sb.append(';').append(file.length()).append(';').append(file.lastModified());
             }
-            return filePath.substring(root.length() + 1);
-        } catch (IOException e) {
-            throw new MojoExecutionException("Could not getCanonicalPath from file " + file, e);
+            sb.append('\n');
+        } else if (file.isFile()) {
+            sb.append(name)
+                    .append('=')
+                    .append(file.getName())
+                    .append(';')
+                    .append(getJarHash(file))
+                    .append('\n');
+        } else if (file.isDirectory()) {
+            sb.append(name).append("=dir;").append(getDirectoryHash(file)).append('\n');
         }
     }
 
-    protected String buildClasspathString(List<String> classpathElements, String additionalClasspath) {
-        StringBuffer classpath = new StringBuffer();
-        Iterator<String> it = classpathElements.iterator();
-        while (it.hasNext()) {
-            String cpElement = it.next();
-            classpath.append(cpElement);
-            if (it.hasNext()) {
-                classpath.append(File.pathSeparator);
+    /**
+     * @return the hash of the relative paths and contents of the class files of a directory, which is
+     *         computed once per execution; the compiled reports it may hold are left out
+     */
+    private String getDirectoryHash(File dir) throws MojoExecutionException {
+        synchronized (directoryHashes) {
+            String hash = directoryHashes.get(dir);
+            if (hash == null) {
+                List<String> paths = new ArrayList<String>();
+                collectClassFiles(dir, "", paths);
+                Collections.sort(paths);
+                StringBuilder sb = new StringBuilder();
+                try {
+                    for (String path : paths) {
+                        sb.append(path)
+                                .append('=')
+                                .append(XxHash64.hash(new File(dir, path)))
+                                .append('\n');
+                    }
+                    hash = XxHash64.hash(sb.toString().getBytes("UTF-8"));
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Unable to read the classes of " + dir, e);
+                }
+                directoryHashes.put(dir, hash);
             }
+            return hash;
         }
-        if (additionalClasspath != null) {
-            if (classpath.length() > 0) {
-                classpath.append(File.pathSeparator);
+    }
+
+    private static void collectClassFiles(File dir, String prefix, List<String> paths) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectClassFiles(file, prefix + file.getName() + '/', paths);
+            } else if (file.getName().endsWith(".class")) {
+                paths.add(prefix + file.getName());
             }
-            classpath.append(additionalClasspath);
         }
-        return classpath.toString();
     }
 
-    private void checkDir(File dir, String desc, boolean isTarget) throws MojoExecutionException {
-        if (dir.exists() && !dir.isDirectory()) {
-            throw new MojoExecutionException(desc + " is not a directory : " + dir);
-        } else if (!dir.exists() && isTarget && !dir.mkdirs()) {
-            throw new MojoExecutionException(desc + " could not be created : " + dir);
+    /**
+     * @return the content hash of a jar, which is computed once per JVM as long as the jar is unchanged
+     */
+    private static String getJarHash(File jar) throws MojoExecutionException {
+        String key = jar.getAbsolutePath() + ';' + jar.length() + ';' + jar.lastModified();
+        String hash;
+        synchronized (JAR_HASHES) {
+            hash = JAR_HASHES.get(key);
         }
-
-        if (isTarget && !dir.canWrite()) {
-            throw new MojoExecutionException(desc + " is not writable : " + dir);
+        if (hash == null) {
+            try {
+                hash = XxHash64.hash(jar);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to read " + jar, e);
+            }
+            synchronized (JAR_HASHES) {
+                JAR_HASHES.put(key, hash);
+            }
         }
+        return hash;
     }
 
-    private ClassLoader getClassLoader(ClassLoader classLoader) throws MojoExecutionException {
-        List<URL> classpathURLs = new ArrayList<URL>();
+    /**
+     * Computes the key of a compiled report in the cache, from the path and content of its design, the
+     * content of the files it depends on, and the compile environment.
+     */
+    private String getCacheKey(String srcName, Set<String> dependencies) throws MojoExecutionException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("environment=").append(cacheEnvironment).append('\n');
+        sb.append("path=").append(srcName.replace(File.separatorChar, '/')).append('\n');
+        sb.append("design=").append(sourceStates.get(srcName).hash).append('\n');
+        for (String dependency : dependencies) {
+            SourceState state = sourceStates.get(dependency);
+            if (state == null) {
+                state = getResourceState(dependency);
+            }
+            sb.append(dependency.replace(File.separatorChar, '/'))
+                    .append('=')
+                    .append(state.hash)
+                    .append('\n');
+        }
+        try {
+            return XxHash64.hash(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new MojoExecutionException("UTF-8 is not supported", e);
+        }
+    }
+
+    /**
+     * Restores a compiled report from the cache.
+     *
+     * @return whether the report was found in the cache
+     */
+    private boolean restoreFromCache(
+            String srcName,
+            String cacheKey,
+            File dest,
+            JRReport report,
+            Set<String> dependencies,
+            CompileTimings.Report timing) {
+        CompileEvents.Span span = CompileEvents.get().begin(CompileTimings.Phase.WRITE, srcName);
+        try {
+            long start = System.nanoTime();
+            boolean restored = reportCache.restore(cacheKey, dest);
+            span.end();
+            if (restored) {
+                timing.add(CompileTimings.Phase.WRITE, System.nanoTime() - start);
+                timing.setCached(true);
+                getLog().info("Restored report file from cache: " + srcName);
+                recordCompiled(srcName, dest, report, dependencies);
+                return true;
+            }
+        } catch (IOException e) {
+            getLog().warn("Unable to restore " + srcName + " from the cache: " + e.getLocalizedMessage());
+        }
+        return false;
+    }
+
+    private void storeInCache(String srcName, String cacheKey, File dest) {
+        try {
+            reportCache.store(cacheKey, dest);
+        } catch (IOException e) {
+            getLog().warn("Unable to store " + srcName + " in the cache: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return whether a file report designs depend on changed since they were last compiled
+     */
+    private boolean isResourceChanged(String path) throws MojoExecutionException {
+        File file = new File(sourceDirectory, path);
+        BuildManifest.Entry entry = manifest.get(path);
+        if (!file.isFile() || entry == null || !entry.isResource()) {
+            return true;
+        }
+        if (entry.getSize() == file.length() && entry.getLastModified() == file.lastModified()) {
+            return false;
+        }
+        SourceState state = getResourceState(path);
+        if (state.hash.equals(entry.getSourceHash())) {
+            manifest.put(path, BuildManifest.Entry.resource(state.size, state.lastModified, state.hash));
+            return false;
+        }
+        return true;
+    }
+
+    private SourceState getSourceState(File file) throws MojoExecutionException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        try {
+            return new SourceState(size, lastModified, XxHash64.hash(file));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read " + file, e);
+        }
+    }
+
+    /**
+     * @return the state of a file report designs depend on, which is hashed at most once per build
+     */
+    private SourceState getResourceState(String path) throws MojoExecutionException {
+        synchronized (resourceStates) {
+            SourceState state = resourceStates.get(path);
+            if (state == null) {
+                state = getSourceState(new File(sourceDirectory, path));
+                resourceStates.put(path, state);
+            }
+            return state;
+        }
+    }
+
+    protected void compile(Set<File> files, SourceMapping mapping) throws MojoFailureException, MojoExecutionException {
+        String classpath = buildClasspathString(classpathElements, additionalClasspath);
+        getLog().debug("buildClasspathString() = " + classpath);
+
+        getLog().info("Compiling " + files.size() + " report design files.");
+
+        getLog().debug("Set classloader");
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        CompilerService compilerService = getCompilerService();
+        CompilerService.Resources compilerResources = acquireResources(compilerService, classLoader);
+        ClassLoader reportsClassLoader = compilerResources.getClassLoader();
+        Thread.currentThread().setContextClassLoader(reportsClassLoader);
+        environment = compilerResources.acquireEnvironment();
+
+        try {
+            JasperReportsContext reportsContext = environment.getContext();
+            reportsContext.setProperty(JRCompiler.COMPILER_CLASSPATH, classpath);
+            reportsContext.setProperty(JRCompiler.COMPILER_TEMP_DIR, javaDirectory.getAbsolutePath());
+            reportsContext.setProperty(JRCompiler.COMPILER_KEEP_JAVA_FILE, Boolean.toString(keepJava));
+            String compilerClass = getCompilerClass();
+            if (compilerClass != null) {
+                reportsContext.setProperty(JRCompiler.COMPILER_PREFIX + JRReport.LANGUAGE_JAVA, compilerClass);
+            }
+            reportsContext.setProperty(
+                    JRSaxParserFactory.PROPERTY_REPORT_PARSER_FACTORY, ReportValidator.ParserFactory.class.getName());
+            reportsContext.setValue(ReportValidator.CONTEXT_KEY, getValidator(compilerResources));
+
+            Compiler compilerMaven;
+
+            String compilerId = "javac";
+
+            getLog().debug("Using compiler '" + compilerId + "'.");
+
+            try {
+                compilerMaven = compilerResources.getCompiler(compilerManager, compilerId);
+            } catch (NoSuchCompilerException e) {
+                throw new MojoExecutionException("No such compiler '" + e.getCompilerId() + "'.");
+            }
+
+            reportsContext.setValue(
+                    CompilerSettings.CONTEXT_KEY,
+                    new CompilerSettings(getLog(), compilerMaven, debug, encoding, executable, source, target));
+            reportsContext.setValue(JavaFileManagerPool.CONTEXT_KEY, compilerResources.getFileManagerPool());
+            if (minimizeClasspath) {
+                reportsContext.setValue(ClasspathIndex.CONTEXT_KEY, new ClasspathIndex(classpath, getLog()));
+            }
+            timings = new CompileTimings();
+            unchangedReports.set(0);
+            reportsContext.setValue(CompileTimings.CONTEXT_KEY, timings);
+            ExpressionClassCache classCache = null;
+            if (reuseExpressionClasses && expressionClassDirectory != null) {
+                String environment = manifest != null && manifest.getEnvironment() != null
+                        ? manifest.getEnvironment()
+                        : getEnvironmentFingerprint(false);
+                classCache = new ExpressionClassCache(
+                        expressionClassDirectory, environment, expressionClassMaxSize * 1024 * 1024, getLog());
+                classCache.prune();
+                reportsContext.setValue(ExpressionClassCache.CONTEXT_KEY, classCache);
+            }
+            ExpressionStore expressionStore = new ExpressionStore();
+            reportsContext.setValue(ExpressionStore.CONTEXT_KEY, expressionStore);
+
+            for (Iterator<String> i = additionalProperties.keySet().iterator(); i.hasNext(); ) {
+                String key = i.next();
+                String value = additionalProperties.get(key);
+                // JRProperties.setProperty( key, value );
+                getLog().debug("Added property: " + key + ":" + value);
+            }
+
+            List<File> sources = new ArrayList<File>(files);
+            Collections.sort(sources);
+
+            if (cacheDirectory != null) {
+                getLog().debug("Using the report cache in " + cacheDirectory);
+                reportCache = new ReportCache(cacheDirectory, cacheMaxSize * 1024 * 1024);
+                cacheEnvironment = getEnvironmentFingerprint(true);
+            }
+
+            memory = new MemoryBudget(
+                    memoryBudget > 0
+                            ? memoryBudget * 1024L * 1024L
+                            : Runtime.getRuntime().maxMemory() / 2);
+            getLog().debug("Memory budget: " + memory.getCapacity() / (1024 * 1024) + " MB");
+
+            int threadCount = getThreadCount(sources.size());
+            getLog().debug("Compiling with " + threadCount + " thread(s)");
+            if (fork) {
+                int workers = forkCount > 0 ? forkCount : threadCount;
+                getLog().debug("Compiling in up to " + workers + " forked JVM(s)");
+                try {
+                    reportsContext.setValue(
+                            ForkedCompilerPool.CONTEXT_KEY,
+                            compilerResources.getForkedCompilerPool(workers, forkMaxMemory, getForkJvmArgs()));
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Unable to set up the forked compilers", e);
+                }
+            }
+
+            ExecutorService executor =
+                    Executors.newFixedThreadPool(threadCount, new CompilerThreadFactory(reportsClassLoader));
+            try {
+                // failures are collected by source file, so that they are reported in a stable order
+                SortedMap<File, MojoExecutionException> failures = new TreeMap<File, MojoExecutionException>();
+                if (xmlValidation && !verifyDesigns) {
+                    // loading the designs to verify them validates them already
+                    validateAll(sources, getValidator(compilerResources), executor, failures);
+                    checkFailures(failures, "validating");
+                }
+                if (verifyDesigns) {
+                    verifyAll(sources, reportsContext, executor, failures);
+                    checkFailures(failures, "verifying");
+                }
+                if (batch && !isBatchCompiler(compilerClass)) {
+                    getLog().warn("The compiler " + (compilerClass != null ? compilerClass : "of JasperReports")
+                            + " cannot compile in batches, the batch setting is ignored");
+                } else if (batch) {
+                    compileBatch(sources, mapping, reportsContext, classpath, executor, failures);
+                } else {
+                    List<CompileTask> tasks = new ArrayList<CompileTask>(sources.size());
+                    for (File src : sources) {
+                        tasks.add(new CompileTask(src, mapping, reportsContext, threadCount > 1));
+                    }
+                    runAll(executor, sources, tasks, failures);
+                }
+                checkFailures(failures, "compiling");
+            } finally {
+                executor.shutdownNow();
+                if (reportCache != null) {
+                    int evicted = reportCache.evict();
+                    if (evicted > 0) {
+                        getLog().debug("Evicted " + evicted + " compiled reports from the cache");
+                    }
+                }
+                reportTimings();
+                if (unchangedReports.get() > 0) {
+                    getLog().info(unchangedReports.get() + " compiled reports were unchanged and left untouched.");
+                }
+                if (classCache != null) {
+                    int evicted = classCache.evict();
+                    if (evicted > 0) {
+                        getLog().debug("Evicted " + evicted + " expression classes kept between builds");
+                    }
+                }
+                if (classCache != null && classCache.getRestored() > 0) {
+                    getLog().info("Reused " + classCache.getRestored()
+                            + " expression classes compiled by previous builds.");
+                }
+                if (expressionStore.getReused() > 0) {
+                    getLog().info("Reused " + expressionStore.getReused()
+                            + " expression classes compiled for identical expressions of other reports.");
+                }
+            }
+        } finally {
+            if (classLoader != null) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+            }
+            compilerResources.releaseEnvironment(environment);
+            environment = null;
+            releaseResources(compilerService, compilerResources);
+        }
+        getLog().info("Compiled " + files.size() + " report design files.");
+    }
+
+    /**
+     * Validates report designs against the JRXML schemas, without compiling them.
+     */
+    protected void validate(Set<File> files) throws MojoExecutionException {
+        getLog().info("Validating " + files.size() + " report design files.");
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        CompilerService compilerService = getCompilerService();
+        CompilerService.Resources compilerResources = acquireResources(compilerService, classLoader);
+        ClassLoader reportsClassLoader = compilerResources.getClassLoader();
+        Thread.currentThread().setContextClassLoader(reportsClassLoader);
+        try {
+            List<File> sources = new ArrayList<File>(files);
+            Collections.sort(sources);
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    getThreadCount(sources.size()), new CompilerThreadFactory(reportsClassLoader));
+            try {
+                SortedMap<File, MojoExecutionException> failures = new TreeMap<File, MojoExecutionException>();
+                validateAll(sources, getValidator(compilerResources), executor, failures);
+                checkFailures(failures, "validating");
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            if (classLoader != null) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+            }
+            releaseResources(compilerService, compilerResources);
+        }
+        getLog().info("Validated " + files.size() + " report design files.");
+    }
+
+    /**
+     * Validates report designs in parallel, with schemas loaded once for all of them.
+     */
+    private void validateAll(
+            List<File> sources,
+            ReportValidator validator,
+            ExecutorService executor,
+            SortedMap<File, MojoExecutionException> failures)
+            throws MojoExecutionException {
+        long start = System.nanoTime();
+        List<ValidateTask> tasks = new ArrayList<ValidateTask>(sources.size());
+        for (File src : sources) {
+            tasks.add(new ValidateTask(src, validator));
+        }
+        runAll(executor, sources, tasks, failures);
+        getLog().debug("Validated " + sources.size() + " report design files in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Loads and verifies report designs in parallel, without compiling them.
+     */
+    private void verifyAll(
+            List<File> sources,
+            JasperReportsContext reportsContext,
+            ExecutorService executor,
+            SortedMap<File, MojoExecutionException> failures)
+            throws MojoExecutionException {
+        long start = System.nanoTime();
+        List<VerifyTask> tasks = new ArrayList<VerifyTask>(sources.size());
+        for (File src : sources) {
+            tasks.add(new VerifyTask(src, reportsContext));
+        }
+        runAll(executor, sources, tasks, failures);
+        getLog().debug("Verified " + sources.size() + " report design files in " + (System.nanoTime() - start) / 1000000
+                + " ms");
+    }
+
+    /**
+     * @return the validator of report designs, whose schemas are compiled once per classpath
+     */
+    private static ReportValidator getValidator(CompilerService.Resources compilerResources)
+            throws MojoExecutionException {
+        try {
+            return compilerResources.getValidator();
+        } catch (JRException e) {
+            throw new MojoExecutionException("Unable to load the JRXML schemas", e);
+        }
+    }
+
+    /**
+     * @return the compile manager of the context, which is kept with the context of the compilation
+     */
+    private JasperCompileManager getCompileManager(JasperReportsContext reportsContext) {
+        if (environment != null && reportsContext == environment.getContext()) {
+            return environment.getCompileManager();
+        }
+        return JasperCompileManager.getInstance(reportsContext);
+    }
+
+    /**
+     * Runs a task with the class loader of the compile classpath as the context class loader of the
+     * current thread, as needed to load and fill compiled reports.
+     */
+    protected <T> T callWithClasspath(Callable<T> task) throws MojoExecutionException, MojoFailureException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        CompilerService compilerService = getCompilerService();
+        CompilerService.Resources compilerResources = acquireResources(compilerService, classLoader);
+        Thread.currentThread().setContextClassLoader(compilerResources.getClassLoader());
+        try {
+            return task.call();
+        } catch (MojoExecutionException e) {
+            throw e;
+        } catch (MojoFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            if (classLoader != null) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+            }
+            releaseResources(compilerService, compilerResources);
+        }
+    }
+
+    /**
+     * @return the service sharing the class loaders and compilers between the executions of the
+     *         session, or <code>null</code> if each execution uses its own
+     */
+    protected CompilerService getCompilerService() {
+        return CompilerService.get(session);
+    }
+
+    /**
+     * @return the class loader and compiler resources of the compile classpath, shared within the
+     *         session when possible
+     */
+    private CompilerService.Resources acquireResources(CompilerService compilerService, ClassLoader parent)
+            throws MojoExecutionException {
+        if (compilerService != null) {
+            return compilerService.acquire(getClasspathFingerprint(), getClasspathUrls(), parent);
+        }
+        if (session != null
+                && session.getProjects() != null
+                && session.getProjects().size() > 1
+                && CompilerService.isFirstUnshared(session)) {
+            getLog().warn("The modules of this build load the report classpath and start the compilers anew,"
+                    + " declare the plugin with <extensions>true</extensions> to share them");
+        }
+        return new CompilerService.Resources(getClasspathUrls(), parent);
+    }
+
+    private static void releaseResources(CompilerService compilerService, CompilerService.Resources resources) {
+        if (compilerService != null) {
+            compilerService.release(resources);
+        } else {
+            resources.close();
+        }
+    }
+
+    /**
+     * @return the report compiler class, which is the forked compiler when forking with one of the javac
+     *         compilers of the plugin
+     */
+    private String getCompilerClass() {
+        if (fork && compiler == null) {
+            getLog().warn("The compiler of JasperReports cannot fork, the fork setting is ignored");
+        } else if (fork) {
+            if (MavenJavacCompiler.class.getName().equals(compiler)
+                    || InMemoryJavacCompiler.class.getName().equals(compiler)) {
+                return ForkedJavacCompiler.class.getName();
+            } else if (!ForkedJavacCompiler.class.getName().equals(compiler)) {
+                getLog().warn("The compiler " + compiler + " cannot fork, the fork setting is ignored");
+            }
+        }
+        return compiler;
+    }
+
+    private static boolean isBatchCompiler(String compilerClass) {
+        if (compilerClass == null) {
+            return false;
+        }
+        try {
+            return BatchCompiler.class.isAssignableFrom(
+                    Class.forName(compilerClass, false, JasperReportsMojo.class.getClassLoader()));
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private List<String> getForkJvmArgs() {
+        List<String> jvmArgs = new ArrayList<String>();
+        if (forkJvmArgs != null) {
+            for (String jvmArg : forkJvmArgs.trim().split("\\s+")) {
+                if (jvmArg.length() > 0) {
+                    jvmArgs.add(jvmArg);
+                }
+            }
+        }
+        return jvmArgs;
+    }
+
+    /**
+     * Compiles the reports in batches which fit in the memory budget, each in three steps: the
+     * expression sources of all reports are generated first, then compiled with as few compiler
+     * invocations as possible, and finally every report is written out with its expression classes.
+     * The designs, generated sources and compiled reports of a batch are released before the next one
+     * starts.
+     */
+    private void compileBatch(
+            List<File> sources,
+            SourceMapping mapping,
+            JasperReportsContext reportsContext,
+            String classpath,
+            ExecutorService executor,
+            SortedMap<File, MojoExecutionException> failures)
+            throws MojoExecutionException {
+        List<List<File>> batches = new ArrayList<List<File>>();
+        List<File> batch = new ArrayList<File>();
+        long batchMemory = 0;
+        for (File src : sources) {
+            long estimate = estimateMemory(src);
+            if (!batch.isEmpty() && batchMemory + estimate > memory.getCapacity()) {
+                batches.add(batch);
+                batch = new ArrayList<File>();
+                batchMemory = 0;
+            }
+            batch.add(src);
+            batchMemory += estimate;
+        }
+        batches.add(batch);
+        if (batches.size() > 1) {
+            getLog().info("Compiling in " + batches.size() + " batches to stay within the memory budget of "
+                    + memory.getCapacity() / (1024 * 1024) + " MB");
+        }
+
+        for (List<File> batchSources : batches) {
+            compileExpressionBatch(batchSources, mapping, reportsContext, classpath, executor, failures);
+        }
+    }
+
+    /**
+     * @return the estimated memory taken by the compilation of a report design, computed once per build
+     */
+    private long estimateMemory(File src) throws MojoExecutionException {
+        Long estimate = memoryEstimates.get(src);
+        if (estimate == null) {
+            try {
+                estimate = Long.valueOf(MemoryBudget.estimate(src));
+            } catch (IOException e) {
+                throw new MojoExecutionException("Error compiling report design : " + src, e);
+            }
+            memoryEstimates.put(src, estimate);
+        }
+        return estimate.longValue();
+    }
+
+    private void compileExpressionBatch(
+            List<File> sources,
+            SourceMapping mapping,
+            JasperReportsContext reportsContext,
+            String classpath,
+            ExecutorService executor,
+            SortedMap<File, MojoExecutionException> failures)
+            throws MojoExecutionException {
+        ExpressionBatch expressionBatch = new ExpressionBatch(getLog(), ExpressionClassCache.get(reportsContext));
+        reportsContext.setValue(ExpressionBatch.CONTEXT_KEY, expressionBatch);
+
+        List<GenerateTask> generateTasks = new ArrayList<GenerateTask>(sources.size());
+        for (File src : sources) {
+            generateTasks.add(new GenerateTask(src, mapping, reportsContext));
+        }
+        List<PendingReport> pendingReports = runAll(executor, sources, generateTasks, failures);
+
+        try {
+            long start = System.nanoTime();
+            expressionBatch.compile(executor, classpath, batchSize);
+            timings.addBatch(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while compiling report expressions", e);
+        }
+
+        List<File> pendingSources = new ArrayList<File>();
+        List<SaveTask> saveTasks = new ArrayList<SaveTask>();
+        for (PendingReport pendingReport : pendingReports) {
+            if (pendingReport != null) {
+                pendingSources.add(pendingReport.src);
+                saveTasks.add(new SaveTask(pendingReport, expressionBatch));
+            }
+        }
+        runAll(executor, pendingSources, saveTasks, failures);
+    }
+
+    /**
+     * Runs one task per source file and waits for all of them.
+     *
+     * @return the task results, in the order of the sources, with <code>null</code> for failed tasks
+     */
+    private <T> List<T> runAll(
+            ExecutorService executor,
+            List<File> sources,
+            List<? extends Callable<T>> tasks,
+            SortedMap<File, MojoExecutionException> failures)
+            throws MojoExecutionException {
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (int i = 0; i < futures.size(); i++) {
+            T result = null;
+            try {
+                result = futures.get(i).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof MojoExecutionException) {
+                    failures.put(sources.get(i), (MojoExecutionException) cause);
+                } else {
+                    failures.put(
+                            sources.get(i),
+                            new MojoExecutionException("Error compiling report design : " + sources.get(i), cause));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while compiling report designs", e);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * @param action what failed, for the error message
+     */
+    private void checkFailures(SortedMap<File, MojoExecutionException> failures, String action)
+            throws MojoExecutionException {
+        if (failures.size() == 1) {
+            throw failures.values().iterator().next();
+        } else if (!failures.isEmpty()) {
+            for (MojoExecutionException failure : failures.values()) {
+                getLog().error(failure.getMessage(), failure.getCause());
+            }
+            throw new MojoExecutionException(
+                    "Error " + action + " " + failures.size() + " report designs, see above for details",
+                    failures.values().iterator().next());
+        }
+    }
+
+    /**
+     * Compiles a single report design.
+     *
+     * @param separateTempDir whether the generated java sources go to a directory of their own, which
+     *        is needed when reports are compiled concurrently since identical designs generate
+     *        identically named sources
+     */
+    private void compileReport(
+            File src, SourceMapping mapping, JasperReportsContext reportsContext, boolean separateTempDir)
+            throws MojoExecutionException {
+        String srcName = getPathRelativeToRoot(src);
+        CompileTimings.Report timing = timings.start(srcName);
+        try {
+            File dest = getDestination(src, srcName, mapping);
+
+            if (separateTempDir) {
+                File tempDir = new File(javaDirectory, srcName.substring(0, srcName.length() - sourceFileExt.length()));
+                checkDir(tempDir, "Directory for generated java sources", true);
+                SimpleJasperReportsContext reportContext = new SimpleJasperReportsContext(reportsContext);
+                reportContext.setProperty(JRCompiler.COMPILER_TEMP_DIR, tempDir.getAbsolutePath());
+                reportsContext = reportContext;
+            }
+
+            JasperDesign design = loadDesign(src, srcName, reportsContext, timing);
+            Set<String> dependencies = getDependencies(design, src);
+            String cacheKey = null;
+            if (reportCache != null) {
+                cacheKey = getCacheKey(srcName, dependencies);
+                if (restoreFromCache(srcName, cacheKey, dest, design, dependencies, timing)) {
+                    return;
+                }
+            }
+
+            getLog().info("Compiling report file: " + srcName);
+            JasperReport report = compileDesign(src, srcName, design, reportsContext, timing);
+            writeReport(srcName, report, dest, timing);
+
+            if (cacheKey != null) {
+                storeInCache(srcName, cacheKey, dest);
+            }
+            recordCompiled(srcName, dest, report, dependencies);
+        } catch (JRException e) {
+            throw new MojoExecutionException("Error compiling report design : " + src, e);
+        } finally {
+            timings.end();
+        }
+    }
+
+    private JasperDesign loadDesign(
+            File src, String srcName, JasperReportsContext reportsContext, CompileTimings.Report timing)
+            throws JRException {
+        CompileEvents.Span span = CompileEvents.get().begin(CompileTimings.Phase.LOAD, srcName);
+        long start = System.nanoTime();
+        try {
+            return JRXmlLoader.load(reportsContext, src);
+        } finally {
+            timing.add(CompileTimings.Phase.LOAD, System.nanoTime() - start);
+            span.end();
+        }
+    }
+
+    private void writeReport(String srcName, JasperReport report, File dest, CompileTimings.Report timing)
+            throws JRException {
+        CompileEvents.Span span = CompileEvents.get().begin(CompileTimings.Phase.WRITE, srcName);
+        long start = System.nanoTime();
+        try {
+            saveReport(srcName, report, dest);
+        } finally {
+            timing.add(CompileTimings.Phase.WRITE, System.nanoTime() - start);
+            span.end();
+        }
+    }
+
+    /**
+     * Compiles a loaded report design. The compilers of the plugin record the time spent generating and
+     * compiling the expression classes, the rest of the time is spent verifying the design. The parts of
+     * the design without UUID are given ones derived from its content, so that the compiled report only
+     * changes along with the design.
+     */
+    private JasperReport compileDesign(
+            File src,
+            String srcName,
+            JasperDesign design,
+            JasperReportsContext reportsContext,
+            CompileTimings.Report timing)
+            throws JRException {
+        CompileEvents.Span span = CompileEvents.get().begin(CompileTimings.Phase.VERIFY, srcName);
+        long start = System.nanoTime();
+        try {
+            try {
+                ReportUuids.assign(design, ReportUuids.getDesignUuids(src), sourceStates.get(srcName).hash);
+            } catch (IOException e) {
+                throw new JRException("Unable to read " + src, e);
+            }
+            long recorded = timing.getTotal();
+            JasperReport report = getCompileManager(reportsContext).compile(design);
+            timing.add(CompileTimings.Phase.VERIFY, System.nanoTime() - start - (timing.getTotal() - recorded));
+            return report;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Writes a compiled report, leaving the existing file untouched when it holds the same report, so
+     * that the packaging steps downstream see unchanged reports as such.
+     */
+    private void saveReport(String srcName, JasperReport report, File dest) throws JRException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JRSaver.saveObject(report, out);
+        try {
+            if (!OutputFiles.writeIfChanged(out.toByteArray(), dest)) {
+                getLog().debug("Compiled report unchanged: " + srcName);
+                unchangedReports.incrementAndGet();
+            }
+        } catch (IOException e) {
+            throw new JRException("Error writing " + dest, e);
+        }
+    }
+
+    /**
+     * Writes the compile timings and logs a summary of them.
+     */
+    private void reportTimings() {
+        List<CompileTimings.Report> reports = timings.getReports();
+        if (reports.isEmpty()) {
+            return;
+        }
+        if (timingsFile != null) {
+            try {
+                timings.write(timingsFile);
+            } catch (IOException e) {
+                getLog().warn("Unable to write " + timingsFile, e);
+            }
+        }
+        if (slowestReports > 0) {
+            StringBuilder sb = new StringBuilder("Report compile time by phase (ms):");
+            for (CompileTimings.Phase phase : CompileTimings.Phase.values()) {
+                sb.append(' ')
+                        .append(phase.getLabel())
+                        .append(' ')
+                        .append(CompileTimings.toMillis(timings.getTotal(phase)));
+            }
+            if (timings.getBatchNanos() > 0) {
+                sb.append(", batched javac ").append(CompileTimings.toMillis(timings.getBatchNanos()));
+            }
+            getLog().info(sb);
+            getLog().info("Slowest report designs (ms):");
+            for (CompileTimings.Report report : timings.getSlowest(slowestReports)) {
+                getLog().info("  " + CompileTimings.toMillis(report.getTotal()) + " " + report.getName()
+                        + (report.isCached() ? " (cached)" : ""));
+            }
+        }
+    }
+
+    /**
+     * Gets the destination of a report design and makes sure its directory exists.
+     */
+    private File getDestination(File src, String srcName, SourceMapping mapping) throws MojoExecutionException {
+        File dest;
+        try {
+            // get the single destination file
+            dest = (File)
+                    mapping.getTargetFiles(outputDirectory, srcName).iterator().next();
+        } catch (InclusionScanException e) {
+            throw new MojoExecutionException("Error compiling report design : " + src, e);
+        }
+
+        File destFileParent = dest.getParentFile();
+        if (!destFileParent.exists()) {
+            if (destFileParent.mkdirs()) {
+                getLog().debug("Created directory " + destFileParent);
+            } else if (!destFileParent.isDirectory()) {
+                throw new MojoExecutionException("Could not create directory " + destFileParent);
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * Records a compiled report design in the manifest and the report index.
+     *
+     * @param report the design or the compiled report
+     */
+    private void recordCompiled(String srcName, File dest, JRReport report, Set<String> dependencies) {
+        SourceState state = sourceStates.get(srcName);
+        try {
+            List<String> subreports = new ArrayList<String>();
+            List<String> resources = new ArrayList<String>();
+            for (String dependency : dependencies) {
+                if (dependency.endsWith(sourceFileExt)) {
+                    subreports.add(getOutputPath(dependency));
+                } else {
+                    resources.add(dependency);
+                    SourceState resourceState = getResourceState(dependency);
+                    manifest.put(
+                            dependency,
+                            BuildManifest.Entry.resource(
+                                    resourceState.size, resourceState.lastModified, resourceState.hash));
+                }
+            }
+            String outputHash = XxHash64.hash(dest);
+            manifest.put(
+                    srcName,
+                    new BuildManifest.Entry(state.size, state.lastModified, state.hash, outputHash, dependencies));
+            if (reportIndex != null) {
+                reportIndex.put(
+                        getOutputPath(srcName), ReportIndex.Entry.of(report, outputHash, subreports, resources));
+            }
+        } catch (Exception e) {
+            getLog().warn("unable to hash " + dest + ": " + e.getLocalizedMessage());
+            manifest.remove(srcName);
+            if (reportIndex != null) {
+                reportIndex.remove(getOutputPath(srcName));
+            }
+        }
+    }
+
+    /**
+     * @return the path of the compiled report of a design relative to the output directory, with
+     *         <code>/</code> separators
+     */
+    private String getOutputPath(String srcName) {
+        String path = srcName.substring(0, srcName.length() - sourceFileExt.length()) + outputFileExt;
+        return path.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * @return the files of the source directory the given design depends on
+     */
+    private Set<String> getDependencies(JasperDesign design, File src) throws MojoExecutionException {
+        try {
+            return reportDependencies.collect(design, src);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to resolve the dependencies of report design : " + src, e);
+        }
+    }
+
+    private void writeManifest() {
+        if (manifest.isModified()) {
+            try {
+                manifest.write(manifestFile);
+            } catch (IOException e) {
+                getLog().warn("Unable to write " + manifestFile, e);
+            }
+        }
+    }
+
+    private void writeReportIndex() {
+        if (reportIndex != null && reportIndex.isModified()) {
+            try {
+                reportIndex.write(reportIndexFile);
+            } catch (IOException e) {
+                getLog().warn("Unable to write " + reportIndexFile, e);
+            }
+        }
+    }
+
+    private int getThreadCount(int reportCount) {
+        int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(threadCount, reportCount));
+    }
+
+    /**
+     * Determines the report design files, based on the SourceMapping. No longer needs to be
+     * recursive, since the SourceInclusionScanner handles that. Which of them need to be compiled is
+     * decided from the manifest.
+     *
+     * @param mapping
+     * @return
+     * @throws org.apache.maven.plugin.MojoExecutionException
+     */
+    protected Set<File> scanSrcDir(SourceMapping mapping) throws MojoExecutionException {
+        return scanSrcDir(mapping, Collections.<String>emptySet());
+    }
+
+    /**
+     * Determines the report design files, leaving out those matching the given patterns.
+     */
+    protected Set<File> scanSrcDir(SourceMapping mapping, Set<String> excludes) throws MojoExecutionException {
+        SourceInclusionScanner scanner =
+                new SimpleSourceInclusionScanner(Collections.singleton("**/*" + sourceFileExt), excludes);
+        scanner.addSourceMapping(mapping);
+
+        try {
+            return scanner.getIncludedSources(sourceDirectory, outputDirectory);
+        } catch (InclusionScanException e) {
+            throw new MojoExecutionException(
+                    "Error scanning source root: \'" + sourceDirectory + "\' " + "for report design files.", e);
+        }
+    }
+
+    protected File getSourceDirectory() {
+        return sourceDirectory;
+    }
+
+    protected File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    protected String getOutputFileExt() {
+        return outputFileExt;
+    }
+
+    protected SourceMapping getSourceMapping() {
+        return new SuffixMapping(sourceFileExt, outputFileExt);
+    }
+
+    protected String getPathRelativeToRoot(File file) throws MojoExecutionException {
+        try {
+            String root = this.sourceDirectory.getCanonicalPath();
+            String filePath = file.getCanonicalPath();
+            if (!filePath.startsWith(root)) {
+                throw new MojoExecutionException("File is not in source root ??? " + file);
+            }
+            return filePath.substring(root.length() + 1);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not getCanonicalPath from file " + file, e);
+        }
+    }
+
+    protected String buildClasspathString(List<String> classpathElements, String additionalClasspath) {
+        StringBuffer classpath = new StringBuffer();
+        Iterator<String> it = classpathElements.iterator();
+        while (it.hasNext()) {
+            String cpElement = it.next();
+            classpath.append(cpElement);
+            if (it.hasNext()) {
+                classpath.append(File.pathSeparator);
+            }
+        }
+        if (additionalClasspath != null) {
+            if (classpath.length() > 0) {
+                classpath.append(File.pathSeparator);
+            }
+            classpath.append(additionalClasspath);
+        }
+        return classpath.toString();
+    }
+
+    private void checkDir(File dir, String desc, boolean isTarget) throws MojoExecutionException {
+        if (dir.exists() && !dir.isDirectory()) {
+            throw new MojoExecutionException(desc + " is not a directory : " + dir);
+        } else if (!dir.exists() && isTarget && !dir.mkdirs()) {
+            throw new MojoExecutionException(desc + " could not be created : " + dir);
+        }
+
+        if (isTarget && !dir.canWrite()) {
+            throw new MojoExecutionException(desc + " is not writable : " + dir);
+        }
+    }
+
+    private URL[] getClasspathUrls() throws MojoExecutionException {
+        List<URL> classpathURLs = new ArrayList<URL>();
 
         for (int i = 0; i < classpathElements.size(); i++) {
             String element = (String) classpathElements.get(i);
@@ -479,7 +1874,253 @@ public class JasperReportsMojo extends AbstractMojo {
             }
         }
 
-        URL[] urls = (URL[]) classpathURLs.toArray(new URL[classpathURLs.size()]);
-        return new URLClassLoader(urls, classLoader);
+        return (URL[]) classpathURLs.toArray(new URL[classpathURLs.size()]);
+    }
+
+    /**
+     * Identifies the classpath of the reports, so that the executions of a session sharing it reuse the
+     * same class loader: jars by their path, size and modification time, directories by their path. The
+     * service tells parent class loaders apart itself.
+     */
+    private String getClasspathFingerprint() throws MojoExecutionException {
+        StringBuilder sb = new StringBuilder();
+        for (String element :
+                buildClasspathString(classpathElements, additionalClasspath).split(File.pathSeparator)) {
+            if (element.length() > 0) {
+                appendFile(sb, "classpath", new File(element), false);
+            }
+        }
+        try {
+            return XxHash64.hash(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new MojoExecutionException("UTF-8 is not supported", e);
+        }
+    }
+
+    /**
+     * The size, modification time and hash of a report design.
+     */
+    private static class SourceState {
+        private final long size;
+
+        private final long lastModified;
+
+        private final String hash;
+
+        SourceState(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private static class ValidateTask implements Callable<Void> {
+        private final File src;
+
+        private final ReportValidator validator;
+
+        ValidateTask(File src, ReportValidator validator) {
+            this.src = src;
+            this.validator = validator;
+        }
+
+        public Void call() throws MojoExecutionException {
+            try {
+                validator.validate(src);
+            } catch (JRException e) {
+                throw new MojoExecutionException("Invalid report design : " + src + ", " + e.getMessage(), e);
+            }
+            return null;
+        }
+    }
+
+    private class VerifyTask implements Callable<Void> {
+        private final File src;
+
+        private final JasperReportsContext reportsContext;
+
+        VerifyTask(File src, JasperReportsContext reportsContext) {
+            this.src = src;
+            this.reportsContext = reportsContext;
+        }
+
+        public Void call() throws MojoExecutionException {
+            int reserved;
+            try {
+                reserved = memory.acquire(estimateMemory(src));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting to verify report design : " + src, e);
+            }
+            try {
+                JasperDesign design = JRXmlLoader.load(reportsContext, src);
+                Collection<JRValidationFault> faults =
+                        getCompileManager(reportsContext).verify(design);
+                if (faults != null && !faults.isEmpty()) {
+                    throw new JRValidationException(faults);
+                }
+            } catch (JRException e) {
+                throw new MojoExecutionException(
+                        "Invalid report design : " + src + ", " + ReportValidator.getMessage(e), e);
+            } finally {
+                memory.release(reserved);
+            }
+            return null;
+        }
+    }
+
+    private class CompileTask implements Callable<Void> {
+        private final File src;
+
+        private final SourceMapping mapping;
+
+        private final JasperReportsContext reportsContext;
+
+        private final boolean separateTempDir;
+
+        CompileTask(File src, SourceMapping mapping, JasperReportsContext reportsContext, boolean separateTempDir) {
+            this.src = src;
+            this.mapping = mapping;
+            this.reportsContext = reportsContext;
+            this.separateTempDir = separateTempDir;
+        }
+
+        public Void call() throws MojoExecutionException {
+            int reserved;
+            try {
+                reserved = memory.acquire(estimateMemory(src));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting to compile report design : " + src, e);
+            }
+            try {
+                compileReport(src, mapping, reportsContext, separateTempDir);
+            } finally {
+                memory.release(reserved);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A report whose expression classes are compiled in batch, and which is written out once they are.
+     */
+    private static class PendingReport {
+        private final File src;
+
+        private final String srcName;
+
+        private final File dest;
+
+        private final JasperReport report;
+
+        private final Set<String> dependencies;
+
+        private final String cacheKey;
+
+        private final CompileTimings.Report timing;
+
+        PendingReport(
+                File src,
+                String srcName,
+                File dest,
+                JasperReport report,
+                Set<String> dependencies,
+                String cacheKey,
+                CompileTimings.Report timing) {
+            this.src = src;
+            this.srcName = srcName;
+            this.dest = dest;
+            this.report = report;
+            this.dependencies = dependencies;
+            this.cacheKey = cacheKey;
+            this.timing = timing;
+        }
+    }
+
+    private class GenerateTask implements Callable<PendingReport> {
+        private final File src;
+
+        private final SourceMapping mapping;
+
+        private final JasperReportsContext reportsContext;
+
+        GenerateTask(File src, SourceMapping mapping, JasperReportsContext reportsContext) {
+            this.src = src;
+            this.mapping = mapping;
+            this.reportsContext = reportsContext;
+        }
+
+        public PendingReport call() throws MojoExecutionException {
+            String srcName = getPathRelativeToRoot(src);
+            File dest = getDestination(src, srcName, mapping);
+
+            CompileTimings.Report timing = timings.start(srcName);
+            try {
+                JasperDesign design = loadDesign(src, srcName, reportsContext, timing);
+                Set<String> dependencies = getDependencies(design, src);
+                String cacheKey = null;
+                if (reportCache != null) {
+                    cacheKey = getCacheKey(srcName, dependencies);
+                    if (restoreFromCache(srcName, cacheKey, dest, design, dependencies, timing)) {
+                        return null;
+                    }
+                }
+
+                getLog().info("Compiling report file: " + srcName);
+                JasperReport report = compileDesign(src, srcName, design, reportsContext, timing);
+                return new PendingReport(src, srcName, dest, report, dependencies, cacheKey, timing);
+            } catch (JRException e) {
+                throw new MojoExecutionException("Error compiling report design : " + src, e);
+            } finally {
+                timings.end();
+            }
+        }
+    }
+
+    private class SaveTask implements Callable<Void> {
+        private final PendingReport pendingReport;
+
+        private final ExpressionBatch expressionBatch;
+
+        SaveTask(PendingReport pendingReport, ExpressionBatch expressionBatch) {
+            this.pendingReport = pendingReport;
+            this.expressionBatch = expressionBatch;
+        }
+
+        public Void call() throws MojoExecutionException {
+            try {
+                expressionBatch.resolve(pendingReport.report);
+                writeReport(pendingReport.srcName, pendingReport.report, pendingReport.dest, pendingReport.timing);
+            } catch (JRException e) {
+                throw new MojoExecutionException("Error compiling report design : " + pendingReport.src, e);
+            }
+            if (pendingReport.cacheKey != null) {
+                storeInCache(pendingReport.srcName, pendingReport.cacheKey, pendingReport.dest);
+            }
+            recordCompiled(pendingReport.srcName, pendingReport.dest, pendingReport.report, pendingReport.dependencies);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the report compiler threads, which need the report classloader as their context
+     * classloader, just like the calling thread.
+     */
+    private static class CompilerThreadFactory implements ThreadFactory {
+        private final ClassLoader contextClassLoader;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        CompilerThreadFactory(ClassLoader contextClassLoader) {
+            this.contextClassLoader = contextClassLoader;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "jasperreports-compiler-" + count.incrementAndGet());
+            thread.setContextClassLoader(contextClassLoader);
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -0,0 +1,201 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jasperreports.engine.JasperReportsContext;
+
+/**
+ * Keeps the standard file managers of the in-memory compilers, so that the compile classpath is
+ * opened and indexed once per build instead of once per report.
+ * <p>
+ * A file manager is not thread safe, so each one is used by a single compilation at a time: reports
+ * compiled concurrently get file managers of their own.
+ * </p>
+ */
+public class JavaFileManagerPool {
+
+    public static final String CONTEXT_KEY = JavaFileManagerPool.class.getName();
+
+    private final Map<String, LinkedList<StandardJavaFileManager>> idle =
+            new HashMap<String, LinkedList<StandardJavaFileManager>>();
+
+    private final List<StandardJavaFileManager> all = new ArrayList<StandardJavaFileManager>();
+
+    private final Map<String, URLClassLoader> classLoaders = new HashMap<String, URLClassLoader>();
+
+    private final Map<String, Set<String>> packages = new HashMap<String, Set<String>>();
+
+    /**
+     * @return the pool stored in the given context, or <code>null</code>
+     */
+    public static JavaFileManagerPool get(JasperReportsContext jasperReportsContext) {
+        return (JavaFileManagerPool) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    /**
+     * Creates a file manager of the given compiler, using the given classpath.
+     */
+    public static StandardJavaFileManager create(JavaCompiler tool, String classpath) throws IOException {
+        StandardJavaFileManager fileManager = tool.getStandardFileManager(null, null, null);
+        List<File> classpathFiles = new ArrayList<File>();
+        for (String element : classpath.split(File.pathSeparator)) {
+            if (element.length() > 0) {
+                classpathFiles.add(new File(element));
+            }
+        }
+        fileManager.setLocation(StandardLocation.CLASS_PATH, classpathFiles);
+        return fileManager;
+    }
+
+    /**
+     * Creates a class loader reading the classes of the given classpath and those of the JDK only,
+     * without the classes the running JVM was started with, for compilers which read the classpath
+     * through a class loader.
+     */
+    public static URLClassLoader createClassLoader(String classpath) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        for (String element : classpath.split(File.pathSeparator)) {
+            if (element.length() > 0) {
+                try {
+                    urls.add(new File(element).toURI().toURL());
+                } catch (MalformedURLException e) {
+                    throw new IOException("Invalid classpath element " + element, e);
+                }
+            }
+        }
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), getJdkClassLoader());
+    }
+
+    /**
+     * @return the class loader of the classes of the JDK: the platform class loader from Java 9, which
+     *         also sees the modules outside the boot layer such as <code>java.sql</code>, and the bootstrap
+     *         class loader before
+     */
+    static ClassLoader getJdkClassLoader() {
+        try {
+            return (ClassLoader)
+                    ClassLoader.class.getMethod("getPlatformClassLoader").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the packages of the given classpath, along with the packages enclosing them, indexed on first
+     * use.
+     */
+    public synchronized Set<String> getPackages(String classpath) throws IOException {
+        Set<String> classpathPackages = packages.get(classpath);
+        if (classpathPackages == null) {
+            classpathPackages = ClasspathIndex.getPackages(classpath);
+            packages.put(classpath, classpathPackages);
+        }
+        return classpathPackages;
+    }
+
+    /**
+     * Gets the class loader of the given classpath, created on first use. Unlike file managers, class
+     * loaders are thread safe and shared by concurrent compilations.
+     */
+    public synchronized ClassLoader getClassLoader(String classpath) throws IOException {
+        URLClassLoader classLoader = classLoaders.get(classpath);
+        if (classLoader == null) {
+            classLoader = createClassLoader(classpath);
+            classLoaders.put(classpath, classLoader);
+        }
+        return classLoader;
+    }
+
+    /**
+     * Takes an idle file manager for the given compiler and classpath out of the pool, or creates one.
+     */
+    public StandardJavaFileManager acquire(JavaCompiler tool, String classpath) throws IOException {
+        String key = getKey(tool, classpath);
+        synchronized (this) {
+            LinkedList<StandardJavaFileManager> fileManagers = idle.get(key);
+            if (fileManagers != null && !fileManagers.isEmpty()) {
+                return fileManagers.removeFirst();
+            }
+        }
+        StandardJavaFileManager fileManager = create(tool, classpath);
+        synchronized (this) {
+            all.add(fileManager);
+        }
+        return fileManager;
+    }
+
+    /**
+     * Puts a file manager obtained from {@link #acquire} back into the pool.
+     */
+    public synchronized void release(JavaCompiler tool, String classpath, StandardJavaFileManager fileManager) {
+        String key = getKey(tool, classpath);
+        LinkedList<StandardJavaFileManager> fileManagers = idle.get(key);
+        if (fileManagers == null) {
+            fileManagers = new LinkedList<StandardJavaFileManager>();
+            idle.put(key, fileManagers);
+        }
+        fileManagers.addFirst(fileManager);
+    }
+
+    /**
+     * Closes all the file managers and class loaders, releasing the jar files they opened.
+     */
+    public synchronized void close() {
+        for (StandardJavaFileManager fileManager : all) {
+            try {
+                fileManager.close();
+            } catch (IOException e) {
+                // nothing left to do with it anyway
+            }
+        }
+        all.clear();
+        idle.clear();
+        for (URLClassLoader classLoader : classLoaders.values()) {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                // nothing left to do with it anyway
+            }
+        }
+        classLoaders.clear();
+        packages.clear();
+    }
+
+    private static String getKey(JavaCompiler tool, String classpath) {
+        return tool.getClass().getName() + '\n' + classpath;
+    }
+}
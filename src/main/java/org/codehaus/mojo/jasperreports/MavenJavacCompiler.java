@@ -1,52 +1,66 @@
 package org.codehaus.mojo.jasperreports;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import net.sf.jasperreports.engine.DefaultJasperReportsContext;
 import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRPropertiesUtil;
 import net.sf.jasperreports.engine.JasperReportsContext;
 import net.sf.jasperreports.engine.design.JRAbstractMultiClassCompiler;
+import net.sf.jasperreports.engine.design.JRCompilationSourceCode;
+import net.sf.jasperreports.engine.design.JRCompilationUnit;
+import net.sf.jasperreports.engine.design.JRCompiler;
+import net.sf.jasperreports.engine.design.JRJavacCompiler;
+import net.sf.jasperreports.engine.design.JRSourceCompileTask;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
 import org.apache.maven.plugin.logging.Log;
 import org.codehaus.plexus.compiler.Compiler;
 import org.codehaus.plexus.compiler.CompilerConfiguration;
 import org.codehaus.plexus.compiler.CompilerException;
 import org.codehaus.plexus.compiler.CompilerMessage;
 import org.codehaus.plexus.compiler.CompilerResult;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.StringUtils;
 
 /**
  * @author Julien HENRY (henryju@users.sourceforge.net)
  */
-public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
+public class MavenJavacCompiler extends JRAbstractMultiClassCompiler implements BatchCompiler {
 
-    private static Log log;
+    private static CompilerSettings defaultSettings;
 
-    private static String compilerId = "javac";
-
-    private static Compiler compiler;
-
-    private static String executable;
-
-    private static boolean debug;
-
-    private static String encoding;
-
-    private static String sourceVersion;
-
-    private static String targetVersion;
+    private final CompilerSettings settings;
 
     private boolean fork = false;
 
+    /**
+     * @deprecated The settings of a compilation are held by the {@link CompilerSettings} of its
+     *             {@link JasperReportsContext}; this returns the log passed to {@link #init}.
+     */
+    @Deprecated
     public static Log getLog() {
-        return log;
+        return defaultSettings != null ? defaultSettings.getLog() : null;
     }
 
+    /**
+     * Sets the settings used by compilers whose {@link JasperReportsContext} holds no {@link CompilerSettings}.
+     *
+     * @deprecated Store a {@link CompilerSettings} in the context under {@link CompilerSettings#CONTEXT_KEY}
+     *             instead.
+     */
+    @Deprecated
     public static void init(
             Log log,
             Compiler compiler,
@@ -55,13 +69,8 @@ public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
             String executable,
             String sourceVersion,
             String targetVersion) {
-        MavenJavacCompiler.log = log;
-        MavenJavacCompiler.compiler = compiler;
-        MavenJavacCompiler.debug = debug;
-        MavenJavacCompiler.encoding = encoding;
-        MavenJavacCompiler.executable = executable;
-        MavenJavacCompiler.sourceVersion = sourceVersion;
-        MavenJavacCompiler.targetVersion = targetVersion;
+        defaultSettings =
+                new CompilerSettings(log, compiler, debug, encoding, executable, sourceVersion, targetVersion);
     }
 
     /**
@@ -72,6 +81,8 @@ public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
      */
     public MavenJavacCompiler(JasperReportsContext jasperReportsContext) {
         super(jasperReportsContext);
+        CompilerSettings contextSettings = CompilerSettings.get(jasperReportsContext);
+        this.settings = contextSettings != null ? contextSettings : defaultSettings;
     }
 
     /**
@@ -83,8 +94,193 @@ public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
         this(DefaultJasperReportsContext.getInstance());
     }
 
+    /**
+     * Records JasperReports' own javac compiler in the compiled reports, so that filling them does not need
+     * this plugin on the classpath.
+     */
+    @Override
+    protected String getCompilerClass() {
+        return JRJavacCompiler.class.getName();
+    }
+
+    /**
+     * @return the path of the report design being compiled, or <code>null</code> when compiling a batch
+     */
+    static String getCurrentReport(JasperReportsContext jasperReportsContext) {
+        CompileTimings timings = CompileTimings.get(jasperReportsContext);
+        return timings != null ? timings.getCurrentReport() : null;
+    }
+
     @Override
     public String compileClasses(File[] sourceFiles, String classpath) throws JRException {
+        if (!compile(sourceFiles, classpath).isEmpty()) {
+            throw new JRException("Error compiling report");
+        }
+        return null;
+    }
+
+    @Override
+    protected String compileUnits(JRCompilationUnit[] units, final String classpath, final File tempDirFile)
+            throws JRException {
+        ExpressionClassCache classCache = ExpressionClassCache.get(jasperReportsContext);
+        ExpressionBatch batch = ExpressionBatch.get(jasperReportsContext);
+        long start = System.nanoTime();
+        try {
+            if (classCache != null) {
+                units = classCache.restore(units);
+                if (units.length == 0) {
+                    return null;
+                }
+            }
+            if (batch != null) {
+                batch.defer(this, units);
+                return null;
+            }
+            ExpressionStore store = ExpressionStore.get(jasperReportsContext);
+            String errors;
+            if (store != null) {
+                errors = store.compile(units, new ExpressionStore.Compilation() {
+                    public String compile(JRCompilationUnit[] owned) throws JRException {
+                        return compileOwnUnits(owned, classpath, tempDirFile);
+                    }
+                });
+            } else {
+                errors = compileOwnUnits(units, classpath, tempDirFile);
+            }
+            if (errors == null && classCache != null) {
+                classCache.store(units);
+            }
+            return errors;
+        } finally {
+            CompileTimings timings = CompileTimings.get(jasperReportsContext);
+            if (timings != null) {
+                timings.add(CompileTimings.Phase.JAVAC, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private String compileOwnUnits(JRCompilationUnit[] units, String classpath, File tempDirFile) throws JRException {
+        return super.compileUnits(units, classpath, tempDirFile);
+    }
+
+    @Override
+    protected JRCompilationSourceCode generateSourceCode(JRSourceCompileTask sourceTask) throws JRException {
+        CompileEvents.Span span =
+                CompileEvents.get().begin(CompileTimings.Phase.GENERATE, getCurrentReport(jasperReportsContext));
+        long start = System.nanoTime();
+        try {
+            return super.generateSourceCode(sourceTask);
+        } finally {
+            CompileTimings timings = CompileTimings.get(jasperReportsContext);
+            if (timings != null) {
+                timings.add(CompileTimings.Phase.GENERATE, System.nanoTime() - start);
+            }
+            span.end();
+        }
+    }
+
+    @Override
+    protected File getSourceFile(File saveSourceDir, String unitName, JRCompilationSourceCode sourceCode) {
+        if (ExpressionBatch.get(jasperReportsContext) != null) {
+            // the batch writes the sources once all of them are known
+            return new File(saveSourceDir, getSourceFileName(unitName));
+        }
+        return super.getSourceFile(saveSourceDir, unitName, sourceCode);
+    }
+
+    public Map<String, byte[]> compileBatch(Map<String, String> sources, String classpath, Map<String, String> errors)
+            throws JRException {
+        JRPropertiesUtil properties = JRPropertiesUtil.getInstance(jasperReportsContext);
+        File tempDir = new File(properties.getProperty(JRCompiler.COMPILER_TEMP_DIR));
+        boolean keepJava = properties.getBooleanProperty(JRCompiler.COMPILER_KEEP_JAVA_FILE);
+
+        // Chunks compiled concurrently may hold classes of the same name, so each one gets its own directory
+        File chunkDir;
+        try {
+            chunkDir = Files.createTempDirectory(tempDir.toPath(), "batch").toFile();
+        } catch (IOException e) {
+            throw new JRException("Failed to create a temporary directory in " + tempDir, e);
+        }
+
+        File[] sourceFiles = new File[sources.size()];
+        int i = 0;
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            sourceFiles[i] = new File(chunkDir, getSourceFileName(source.getKey()));
+            JRSaver.saveClassSource(source.getValue(), sourceFiles[i]);
+            i++;
+        }
+
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        try {
+            for (CompilerMessage error : compile(sourceFiles, classpath)) {
+                String className = error.getFile() == null ? null : new File(error.getFile()).getName();
+                if (className != null && className.endsWith(".java")) {
+                    className = className.substring(0, className.length() - ".java".length());
+                }
+                String previous = errors.get(className);
+                errors.put(className, previous == null ? error.toString() : previous + "\n" + error);
+            }
+            for (String className : sources.keySet()) {
+                File classFile = new File(chunkDir, className + ".class");
+                if (!errors.containsKey(className) && classFile.exists()) {
+                    classes.put(className, JRLoader.loadBytes(classFile));
+                }
+            }
+        } finally {
+            if (keepJava) {
+                for (File sourceFile : sourceFiles) {
+                    sourceFile.renameTo(new File(tempDir, sourceFile.getName()));
+                }
+            }
+            try {
+                FileUtils.deleteDirectory(chunkDir);
+            } catch (IOException e) {
+                settings.getLog().warn("Failed to delete " + chunkDir + ": " + e.getMessage());
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Compiles the given sources next to them, logging the compiler messages. When a {@link ClasspathIndex}
+     * narrows the classpath, the sources are compiled again with the whole classpath if the narrowed one
+     * lacks classes they need.
+     *
+     * @return the compilation errors
+     */
+    private List<CompilerMessage> compile(File[] sourceFiles, String classpath) throws JRException {
+        if (settings == null) {
+            throw new JRException("No compiler settings found in the JasperReports context; "
+                    + getClass().getName() + " can only compile reports from within the jasperreports-maven-plugin");
+        }
+
+        ClasspathIndex classpathIndex = ClasspathIndex.get(jasperReportsContext);
+        if (classpathIndex != null) {
+            List<String> sources = new ArrayList<String>(sourceFiles.length);
+            try {
+                for (File sourceFile : sourceFiles) {
+                    sources.add(new String(Files.readAllBytes(sourceFile.toPath()), "ISO-8859-1"));
+                }
+            } catch (IOException e) {
+                throw new JRException("Error reading the expression sources", e);
+            }
+            String narrowed = classpathIndex.narrow(classpath, sources);
+            if (!narrowed.equals(classpath)) {
+                List<CompilerMessage> messages = performCompile(sourceFiles, narrowed);
+                if (!hasErrors(messages)) {
+                    return logMessages(settings.getLog(), messages);
+                }
+                settings.getLog().debug("Compiling again with the whole classpath, the narrowed one lacks classes");
+            }
+        }
+        return logMessages(settings.getLog(), performCompile(sourceFiles, classpath));
+    }
+
+    /**
+     * @return the messages of the compiler
+     */
+    private List<CompilerMessage> performCompile(File[] sourceFiles, String classpath) throws JRException {
+
         // ----------------------------------------------------------------------
         // Look up the compiler. This is done before other code than can
         // cause the mojo to return before the lookup is done possibly resulting
@@ -95,8 +291,8 @@ public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
         List<String> classpathAsList = new ArrayList<String>(Arrays.asList(classpath.split(",")));
         Set<File> sourceFilesAsSet = new HashSet<File>(Arrays.asList(sourceFiles));
 
-        if (getLog().isDebugEnabled()) {
-            getLog().debug("Classpath: " + classpath.replace(',', '\n'));
+        if (settings.getLog().isDebugEnabled()) {
+            settings.getLog().debug("Classpath: " + classpath.replace(',', '\n'));
         }
 
         // ----------------------------------------------------------------------
@@ -113,34 +309,34 @@ public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
 
         compilerConfiguration.setSourceFiles(sourceFilesAsSet);
 
-        compilerConfiguration.setDebug(debug);
+        compilerConfiguration.setDebug(settings.isDebug());
 
         compilerConfiguration.setMaxmem("1280m");
 
-        compilerConfiguration.setSourceEncoding(encoding);
+        compilerConfiguration.setSourceEncoding(settings.getEncoding());
 
-        compilerConfiguration.setSourceVersion(sourceVersion);
+        compilerConfiguration.setSourceVersion(settings.getSourceVersion());
 
-        compilerConfiguration.setTargetVersion(targetVersion);
+        compilerConfiguration.setTargetVersion(settings.getTargetVersion());
 
         compilerConfiguration.setFork(fork);
 
-        compilerConfiguration.setExecutable(executable);
+        compilerConfiguration.setExecutable(settings.getExecutable());
 
         // ----------------------------------------------------------------------
         // Dump configuration
         // ----------------------------------------------------------------------
 
-        if (getLog().isDebugEnabled()) {
+        if (settings.getLog().isDebugEnabled()) {
             try {
                 if (fork) {
                     if (compilerConfiguration.getExecutable() != null) {
-                        getLog().debug("Excutable: ");
-                        getLog().debug(" " + compilerConfiguration.getExecutable());
+                        settings.getLog().debug("Excutable: ");
+                        settings.getLog().debug(" " + compilerConfiguration.getExecutable());
                     }
                 }
 
-                String[] cl = compiler.createCommandLine(compilerConfiguration);
+                String[] cl = settings.getCompiler().createCommandLine(compilerConfiguration);
                 if (cl != null && cl.length > 0) {
                     StringBuffer sb = new StringBuffer();
                     sb.append(cl[0]);
@@ -148,11 +344,11 @@ public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
                         sb.append(" ");
                         sb.append(cl[i]);
                     }
-                    getLog().debug("Command line options:");
-                    getLog().debug(sb);
+                    settings.getLog().debug("Command line options:");
+                    settings.getLog().debug(sb);
                 }
             } catch (CompilerException ce) {
-                getLog().debug(ce);
+                settings.getLog().debug(ce);
             }
         }
 
@@ -161,20 +357,47 @@ public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
         // ----------------------------------------------------------------------
 
         if (StringUtils.isEmpty(compilerConfiguration.getSourceEncoding())) {
-            getLog().warn("File encoding has not been set, using platform encoding " + ReaderFactory.FILE_ENCODING
-                    + ", i.e. build is platform dependent!");
+            settings.getLog()
+                    .warn("File encoding has not been set, using platform encoding " + ReaderFactory.FILE_ENCODING
+                            + ", i.e. build is platform dependent!");
         }
 
         List<CompilerMessage> messages;
 
+        CompileEvents.Span span = CompileEvents.get()
+                .beginJavac(
+                        getCurrentReport(jasperReportsContext),
+                        sourceFiles.length,
+                        classpath.split(File.pathSeparator).length);
         try {
-            CompilerResult result = compiler.performCompile(compilerConfiguration);
+            CompilerResult result = settings.getCompiler().performCompile(compilerConfiguration);
             messages = result.getCompilerMessages();
         } catch (Exception e) {
             // TODO: don't catch Exception
             throw new JRException("Fatal error compiling", e);
+        } finally {
+            span.end();
         }
+        return messages;
+    }
 
+    static boolean hasErrors(Collection<CompilerMessage> messages) {
+        if (messages != null) {
+            for (CompilerMessage message : messages) {
+                if (message.isError()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Logs compiler messages, errors and warnings in separate blocks.
+     *
+     * @return the errors among the messages
+     */
+    static List<CompilerMessage> logMessages(Log log, List<CompilerMessage> messages) {
         List<CompilerMessage> warnings = new ArrayList<CompilerMessage>();
         List<CompilerMessage> errors = new ArrayList<CompilerMessage>();
         if (messages != null) {
@@ -187,35 +410,37 @@ public class MavenJavacCompiler extends JRAbstractMultiClassCompiler {
             }
         }
 
-        if (!errors.isEmpty()) {
-            if (!warnings.isEmpty()) {
-                getLog().info("-------------------------------------------------------------");
-                getLog().warn("COMPILATION WARNING : ");
-                getLog().info("-------------------------------------------------------------");
-                for (CompilerMessage warning : warnings) {
-                    getLog().warn(warning.toString());
+        // several reports may be compiled concurrently, keep each report's messages together
+        synchronized (log) {
+            if (!errors.isEmpty()) {
+                if (!warnings.isEmpty()) {
+                    log.info("-------------------------------------------------------------");
+                    log.warn("COMPILATION WARNING : ");
+                    log.info("-------------------------------------------------------------");
+                    for (CompilerMessage warning : warnings) {
+                        log.warn(warning.toString());
+                    }
+                    log.info(warnings.size() + ((warnings.size() > 1) ? " warnings " : "warning"));
+                    log.info("-------------------------------------------------------------");
                 }
-                getLog().info(warnings.size() + ((warnings.size() > 1) ? " warnings " : "warning"));
-                getLog().info("-------------------------------------------------------------");
-            }
 
-            getLog().info("-------------------------------------------------------------");
-            getLog().error("COMPILATION ERROR : ");
-            getLog().info("-------------------------------------------------------------");
+                log.info("-------------------------------------------------------------");
+                log.error("COMPILATION ERROR : ");
+                log.info("-------------------------------------------------------------");
 
-            for (CompilerMessage error : errors) {
-                getLog().error(error.toString());
-            }
-            getLog().info(errors.size() + ((errors.size() > 1) ? " errors " : "error"));
-            getLog().info("-------------------------------------------------------------");
+                for (CompilerMessage error : errors) {
+                    log.error(error.toString());
+                }
+                log.info(errors.size() + ((errors.size() > 1) ? " errors " : "error"));
+                log.info("-------------------------------------------------------------");
 
-            throw new JRException("Error compiling report");
-        } else {
-            for (CompilerMessage message : messages) {
-                getLog().warn(message.toString());
+            } else {
+                for (CompilerMessage message : warnings) {
+                    log.warn(message.toString());
+                }
             }
         }
 
-        return null;
+        return errors;
     }
 }
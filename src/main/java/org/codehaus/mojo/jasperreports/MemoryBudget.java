@@ -0,0 +1,191 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the memory taken by the report designs compiled at the same time.
+ * <p>
+ * The memory a compilation takes is estimated before the design is loaded, from the size of the file
+ * and the number of expressions it holds, which are counted in the XML without parsing it: loading a
+ * design takes several times its size, and each expression adds its generated source, syntax tree and
+ * bytecode. A compilation is admitted once its estimate fits in what is left of the budget; one
+ * estimated above the whole budget waits until it runs alone. The estimates are conservative rather
+ * than exact: the budget bounds the peak heap, it does not measure it.
+ * </p>
+ */
+public class MemoryBudget {
+
+    /**
+     * The memory taken by a loaded design, per byte of its file.
+     */
+    private static final long BYTES_PER_DESIGN_BYTE = 16;
+
+    /**
+     * The memory taken by the generated source, syntax tree and bytecode of an expression.
+     */
+    private static final long BYTES_PER_EXPRESSION = 8 * 1024;
+
+    /**
+     * The memory taken by a compilation besides the design and its expressions.
+     */
+    private static final long BYTES_PER_COMPILATION = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] EXPRESSION = "Expression".getBytes(StandardCharsets.US_ASCII);
+
+    private final int capacity;
+
+    private final Semaphore semaphore;
+
+    /**
+     * @param bytes the memory the compilations may take together
+     */
+    public MemoryBudget(long bytes) {
+        this.capacity = toKilobytes(bytes);
+        this.semaphore = new Semaphore(capacity, true);
+    }
+
+    public long getCapacity() {
+        return capacity * 1024L;
+    }
+
+    /**
+     * @return the estimated memory taken by the compilation of a report design
+     */
+    public static long estimate(File design) throws IOException {
+        ExpressionCounter counter = new ExpressionCounter();
+        long size = 0;
+        InputStream in = new FileInputStream(design);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                counter.update(buffer, read);
+                size += read;
+            }
+        } finally {
+            in.close();
+        }
+        return estimate(size, counter.getExpressions());
+    }
+
+    static long estimate(long size, int expressions) {
+        return BYTES_PER_COMPILATION + size * BYTES_PER_DESIGN_BYTE + expressions * BYTES_PER_EXPRESSION;
+    }
+
+    /**
+     * Counts the expressions of a design from their end tags, such as
+     * <code>&lt;/textFieldExpression&gt;</code>, as start tags may have attributes.
+     */
+    static int countExpressions(byte[] content) {
+        ExpressionCounter counter = new ExpressionCounter();
+        counter.update(content, content.length);
+        return counter.getExpressions();
+    }
+
+    /**
+     * Waits until the given amount of memory fits in the budget and takes it.
+     *
+     * @return the amount to give back with {@link #release}, in kilobytes
+     */
+    public int acquire(long bytes) throws InterruptedException {
+        int kilobytes = Math.min(capacity, toKilobytes(bytes));
+        semaphore.acquire(kilobytes);
+        return kilobytes;
+    }
+
+    public void release(int kilobytes) {
+        semaphore.release(kilobytes);
+    }
+
+    private static int toKilobytes(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (bytes + 1023) / 1024));
+    }
+
+    /**
+     * Counts the end tags of the expressions of a design read in chunks, which may split a tag.
+     */
+    private static class ExpressionCounter {
+        private static final int TEXT = 0;
+
+        private static final int TAG_START = 1;
+
+        private static final int END_TAG_NAME = 2;
+
+        private static final int END_TAG_SPACE = 3;
+
+        private int state = TEXT;
+
+        /**
+         * The last bytes of the name of the current end tag, written round.
+         */
+        private final byte[] name = new byte[EXPRESSION.length];
+
+        private int nameLength;
+
+        private int expressions;
+
+        void update(byte[] buffer, int length) {
+            for (int i = 0; i < length; i++) {
+                byte b = buffer[i];
+                if (b == '<') {
+                    state = TAG_START;
+                } else if (state == TAG_START) {
+                    state = b == '/' ? END_TAG_NAME : TEXT;
+                    nameLength = 0;
+                } else if (state == END_TAG_NAME || state == END_TAG_SPACE) {
+                    if (b == '>') {
+                        if (isExpression()) {
+                            expressions++;
+                        }
+                        state = TEXT;
+                    } else if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                        state = END_TAG_SPACE;
+                    } else if (state == END_TAG_NAME) {
+                        name[nameLength % name.length] = b;
+                        nameLength++;
+                    } else {
+                        state = TEXT;
+                    }
+                }
+            }
+        }
+
+        private boolean isExpression() {
+            if (nameLength < EXPRESSION.length) {
+                return false;
+            }
+            for (int i = 0; i < EXPRESSION.length; i++) {
+                if (name[(nameLength - EXPRESSION.length + i) % name.length] != EXPRESSION[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int getExpressions() {
+            return expressions;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A file manager keeping the compiled classes in memory, and delegating the lookup of the classpath
+ * to a (possibly shared) standard file manager.
+ */
+class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final Map<String, ByteArrayOutputStream> classes = new HashMap<String, ByteArrayOutputStream>();
+
+    MemoryFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    /**
+     * @return a compilation unit for the given source code
+     */
+    static JavaFileObject source(String className, String code) {
+        return new SourceObject(className, code);
+    }
+
+    /**
+     * @return the name of the class whose source is the given file object, or <code>null</code>
+     */
+    static String getClassName(JavaFileObject fileObject) {
+        return fileObject instanceof SourceObject ? ((SourceObject) fileObject).className : null;
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(
+            Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        synchronized (classes) {
+            classes.put(className, bytes);
+        }
+        return new ClassObject(className, bytes);
+    }
+
+    /**
+     * @return the bytecode of the given class, or <code>null</code> if it was not compiled
+     */
+    byte[] getClassBytes(String className) {
+        ByteArrayOutputStream bytes;
+        synchronized (classes) {
+            bytes = classes.get(className);
+        }
+        return bytes == null ? null : bytes.toByteArray();
+    }
+
+    /**
+     * Does not close the standard file manager, which outlives this one.
+     */
+    @Override
+    public void close() {}
+
+    private static class SourceObject extends SimpleJavaFileObject {
+        private final String className;
+
+        private final String code;
+
+        SourceObject(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.className = className;
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    private static class ClassObject extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream bytes;
+
+        ClassObject(String className, ByteArrayOutputStream bytes) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Combines the partial manifests and report indexes written by the builds compiling the shards of
+ * the report designs of a module, once their compiled reports are gathered in a single output
+ * directory. The merged manifest lets a later build compile incrementally, and the merged index lists
+ * all the reports.
+ * <p>
+ * The shards may be compiled on different machines, so the merged manifest only records the portable
+ * fingerprint of their compile environment, which leaves out the location of the classpath jars: the
+ * next build compiling the module checks it against its own environment.
+ * </p>
+ *
+ * @goal merge-shards
+ * @since 1.0-beta-5
+ */
+public class MergeShardsMojo extends AbstractMojo {
+
+    /**
+     * The manifests written by the builds of the shards.
+     *
+     * @parameter property="jasperreports.shardManifests"
+     * @required
+     * @since 1.0-beta-5
+     */
+    private List<File> shardManifests = new ArrayList<File>();
+
+    /**
+     * The report indexes written by the builds of the shards.
+     *
+     * @parameter property="jasperreports.shardReportIndexes"
+     * @since 1.0-beta-5
+     */
+    private List<File> shardReportIndexes = new ArrayList<File>();
+
+    /**
+     * The merged manifest.
+     *
+     * @parameter default-value="${project.build.directory}/jasperreports/manifest.txt"
+     * @since 1.0-beta-5
+     */
+    private File manifestFile;
+
+    /**
+     * The merged report index, which must be set when shard report indexes are given.
+     *
+     * @parameter property="jasperreports.reportIndexFile"
+     * @since 1.0-beta-5
+     */
+    private File reportIndexFile;
+
+    public void execute() throws MojoExecutionException {
+        BuildManifest merged = new BuildManifest();
+        boolean consistent = true;
+        for (File file : shardManifests) {
+            if (!file.isFile()) {
+                throw new MojoExecutionException("Missing shard manifest: " + file);
+            }
+            BuildManifest manifest;
+            try {
+                manifest = BuildManifest.read(file);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to read the shard manifest " + file, e);
+            }
+            if (manifest.getPortableEnvironment() == null) {
+                getLog().warn("The shard manifest " + file + " records no portable compile environment,"
+                        + " the next build compiles all report designs.");
+                consistent = false;
+            } else if (merged.getPortableEnvironment() == null) {
+                merged.setPortableEnvironment(manifest.getPortableEnvironment());
+            } else if (!merged.getPortableEnvironment().equals(manifest.getPortableEnvironment())) {
+                getLog().warn("The shard manifest " + file + " was written in another compile environment,"
+                        + " the next build compiles all report designs.");
+                consistent = false;
+            }
+            merged.merge(manifest);
+        }
+        if (!consistent) {
+            merged.setPortableEnvironment(null);
+        }
+        try {
+            merged.write(manifestFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + manifestFile, e);
+        }
+        getLog().info("Merged " + shardManifests.size() + " shard manifests into " + manifestFile);
+
+        if (!shardReportIndexes.isEmpty()) {
+            if (reportIndexFile == null) {
+                throw new MojoExecutionException("The report index file must be set to merge shard report indexes");
+            }
+            ReportIndex index = new ReportIndex();
+            for (File file : shardReportIndexes) {
+                if (!file.isFile()) {
+                    throw new MojoExecutionException("Missing shard report index: " + file);
+                }
+                try {
+                    index.merge(ReportIndex.read(file));
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Unable to read the shard report index " + file, e);
+                }
+            }
+            try {
+                index.write(reportIndexFile);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to write " + reportIndexFile, e);
+            }
+            getLog().info("Merged " + shardReportIndexes.size() + " shard report indexes into " + reportIndexFile);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes files through temporary files replacing them atomically, so that concurrent readers never
+ * see a partial file, and leaves files whose content does not change untouched, so that their
+ * modification time only changes along with their content.
+ */
+public class OutputFiles {
+
+    private OutputFiles() {}
+
+    /**
+     * Writes the given content to a file, unless it already holds it.
+     *
+     * @return whether the file was written
+     */
+    public static boolean writeIfChanged(byte[] content, File file) throws IOException {
+        if (hasContent(file, content)) {
+            return false;
+        }
+        write(content, file);
+        return true;
+    }
+
+    /**
+     * Writes the given content to a file.
+     */
+    public static void write(final byte[] content, File file) throws IOException {
+        write(file, new Content() {
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(content);
+            }
+        });
+    }
+
+    /**
+     * Copies a file to another one.
+     */
+    public static void copy(final File source, File file) throws IOException {
+        write(file, new Content() {
+            public void writeTo(OutputStream out) throws IOException {
+                Files.copy(source.toPath(), out);
+            }
+        });
+    }
+
+    /**
+     * Writes a file through a temporary file in the same directory, which then replaces it. The
+     * directory is created if needed.
+     */
+    public static void write(File file, Content content) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        File tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            OutputStream out = new FileOutputStream(tempFile);
+            try {
+                content.writeTo(out);
+            } finally {
+                out.close();
+            }
+            replace(tempFile, file);
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * @return whether the given file exists and holds the given content
+     */
+    static boolean hasContent(File file, byte[] content) throws IOException {
+        if (!file.isFile() || file.length() != content.length) {
+            return false;
+        }
+        byte[] buffer = new byte[8192];
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            int offset = 0;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                if (offset + read > content.length) {
+                    return false;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != content[offset++]) {
+                        return false;
+                    }
+                }
+            }
+            return offset == content.length;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Moves a file over another one, atomically when the file system supports it.
+     */
+    public static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(
+                    source.toPath(),
+                    target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The content of a file to write.
+     */
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,108 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A directory of compiled reports, stored under a key computed from everything the compiled report
+ * depends on, which can be shared by builds, branches and modules.
+ * <p>
+ * Entries are written and restored through temporary files, so that concurrent builds never see a
+ * partial file. The modification time of an entry is updated when it is restored, and the least
+ * recently used entries are deleted once the directory grows over its maximum size.
+ * </p>
+ */
+public class ReportCache {
+
+    private static final String EXTENSION = ".jasper";
+
+    private final File directory;
+
+    private final long maxSize;
+
+    /**
+     * @param maxSize the maximum size of the cache, in bytes
+     */
+    public ReportCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Copies the cached report with the given key to the destination, if there is one. The destination
+     * is left untouched if it already holds the cached report.
+     *
+     * @return whether the report was found in the cache
+     */
+    public boolean restore(String key, File dest) throws IOException {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return false;
+        }
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            // evicted by a concurrent build
+            return false;
+        }
+        OutputFiles.writeIfChanged(content, dest);
+        file.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stores a compiled report under the given key.
+     */
+    public void store(String key, File compiled) throws IOException {
+        OutputFiles.copy(compiled, getFile(key));
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in its maximum size.
+     *
+     * @return the number of deleted entries
+     */
+    public int evict() {
+        List<File> files = new ArrayList<File>();
+        long size = 0;
+        File[] dirs = directory.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] entries = dir.listFiles();
+                if (entries != null) {
+                    for (File entry : entries) {
+                        if (entry.getName().endsWith(EXTENSION)) {
+                            files.add(entry);
+                            size += entry.length();
+                        }
+                    }
+                }
+            }
+        }
+        return CacheFiles.evict(files, size, maxSize);
+    }
+
+    private File getFile(String key) {
+        return new File(new File(directory, key.substring(0, 2)), key + EXTENSION);
+    }
+}
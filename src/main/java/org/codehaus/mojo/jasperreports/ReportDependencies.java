@@ -0,0 +1,250 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sf.jasperreports.engine.JRExpression;
+import net.sf.jasperreports.engine.JRExpressionChunk;
+import net.sf.jasperreports.engine.JRImage;
+import net.sf.jasperreports.engine.JRReport;
+import net.sf.jasperreports.engine.JRReportTemplate;
+import net.sf.jasperreports.engine.JRSubreport;
+import net.sf.jasperreports.engine.util.JRElementsVisitor;
+import net.sf.jasperreports.engine.util.JRVisitorSupport;
+
+/**
+ * Finds the files of the source directory a report design refers to: style templates, subreports,
+ * images and resource bundles.
+ * <p>
+ * Only the string literals of the template, subreport and image expressions are considered. They are
+ * resolved against the directory of the design, then against the source directory, and a reference to
+ * a compiled subreport is mapped to its design. References only known when the report is filled, such
+ * as paths taken from parameters, cannot be followed.
+ * </p>
+ */
+public class ReportDependencies {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"((?:[^\"\\\\\\n]|\\\\.)*)\"");
+
+    private final File sourceDirectory;
+
+    private final String sourceFileExt;
+
+    private final String outputFileExt;
+
+    public ReportDependencies(File sourceDirectory, String sourceFileExt, String outputFileExt) {
+        this.sourceDirectory = sourceDirectory;
+        this.sourceFileExt = sourceFileExt;
+        this.outputFileExt = outputFileExt;
+    }
+
+    /**
+     * @param report the loaded report design
+     * @param src the file of the report design
+     * @return the paths, relative to the source directory, of the files the design refers to
+     */
+    public SortedSet<String> collect(JRReport report, File src) throws IOException {
+        final List<JRExpression> expressions = new ArrayList<JRExpression>();
+        JRReportTemplate[] templates = report.getTemplates();
+        if (templates != null) {
+            for (JRReportTemplate template : templates) {
+                expressions.add(template.getSourceExpression());
+            }
+        }
+        JRElementsVisitor.visitReport(report, new JRVisitorSupport() {
+            @Override
+            public void visitSubreport(JRSubreport subreport) {
+                expressions.add(subreport.getExpression());
+            }
+
+            @Override
+            public void visitImage(JRImage image) {
+                expressions.add(image.getExpression());
+            }
+        });
+
+        SortedSet<String> dependencies = new TreeSet<String>();
+        for (JRExpression expression : expressions) {
+            for (String literal : getStringLiterals(expression)) {
+                if (literal.endsWith(outputFileExt)) {
+                    literal = literal.substring(0, literal.length() - outputFileExt.length()) + sourceFileExt;
+                }
+                addFile(dependencies, src, literal);
+            }
+        }
+        if (report.getResourceBundle() != null) {
+            addResourceBundle(dependencies, src, report.getResourceBundle());
+        }
+
+        dependencies.remove(getRelativePath(src));
+        return dependencies;
+    }
+
+    static List<String> getStringLiterals(JRExpression expression) {
+        List<String> literals = new ArrayList<String>();
+        if (expression == null || expression.getChunks() == null) {
+            return literals;
+        }
+        for (JRExpressionChunk chunk : expression.getChunks()) {
+            if (chunk.getType() == JRExpressionChunk.TYPE_TEXT && chunk.getText() != null) {
+                Matcher matcher = STRING_LITERAL.matcher(chunk.getText());
+                while (matcher.find()) {
+                    if (matcher.group(1).length() > 0) {
+                        literals.add(unescape(matcher.group(1)));
+                    }
+                }
+            }
+        }
+        return literals;
+    }
+
+    /**
+     * @return the value of a string literal, given the text between its quotes
+     */
+    static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i++);
+            if (c != '\\' || i == text.length()) {
+                sb.append(c);
+                continue;
+            }
+            c = text.charAt(i++);
+            switch (c) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'u':
+                    while (i < text.length() && text.charAt(i) == 'u') {
+                        i++;
+                    }
+                    if (i + 4 <= text.length()) {
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                            i += 4;
+                            break;
+                        } catch (NumberFormatException e) {
+                            // not an escape, kept as is
+                        }
+                    }
+                    sb.append("\\u");
+                    break;
+                default:
+                    if (c >= '0' && c <= '7') {
+                        // up to three octal digits, at most \377
+                        int value = c - '0';
+                        int maxDigits = c <= '3' ? 2 : 1;
+                        for (int digits = 0;
+                                digits < maxDigits
+                                        && i < text.length()
+                                        && text.charAt(i) >= '0'
+                                        && text.charAt(i) <= '7';
+                                digits++) {
+                            value = value * 8 + text.charAt(i++) - '0';
+                        }
+                        sb.append((char) value);
+                    } else {
+                        // \", \' and \\
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private void addFile(SortedSet<String> dependencies, File src, String path) throws IOException {
+        File file = new File(path);
+        if (file.isAbsolute() || path.startsWith("/")) {
+            file = new File(sourceDirectory, path);
+        } else {
+            file = new File(src.getParentFile(), path);
+            if (!file.isFile()) {
+                file = new File(sourceDirectory, path);
+            }
+        }
+        if (file.isFile()) {
+            String relativePath = getRelativePath(file);
+            if (relativePath != null) {
+                dependencies.add(relativePath);
+            }
+        }
+    }
+
+    /**
+     * Adds the properties files of a resource bundle, for all locales.
+     */
+    private void addResourceBundle(SortedSet<String> dependencies, File src, String baseName) throws IOException {
+        String path = baseName.replace('.', '/');
+        File[] candidates = {new File(src.getParentFile(), path), new File(sourceDirectory, path)};
+        for (File candidate : candidates) {
+            final String name = candidate.getName();
+            File[] files = candidate.getParentFile().listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String fileName = file.getName();
+                if (file.isFile()
+                        && fileName.startsWith(name)
+                        && fileName.endsWith(".properties")
+                        && (fileName.length() == name.length() + ".properties".length()
+                                || fileName.charAt(name.length()) == '_')) {
+                    String relativePath = getRelativePath(file);
+                    if (relativePath != null) {
+                        dependencies.add(relativePath);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the path of the file relative to the source directory, or <code>null</code> if it is not
+     *         in the source directory
+     */
+    private String getRelativePath(File file) throws IOException {
+        String root = sourceDirectory.getCanonicalPath() + File.separator;
+        String filePath = file.getCanonicalPath();
+        if (!filePath.startsWith(root)) {
+            return null;
+        }
+        return filePath.substring(root.length());
+    }
+}
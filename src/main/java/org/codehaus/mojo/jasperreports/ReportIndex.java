@@ -0,0 +1,337 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import net.sf.jasperreports.engine.JRParameter;
+import net.sf.jasperreports.engine.JRReport;
+
+/**
+ * An index of the compiled reports, written as a properties file next to them so that applications
+ * can look reports up on the classpath without loading them.
+ * <p>
+ * Reports are identified by the path of the compiled report relative to the output directory, with
+ * <code>/</code> separators. The <code>reports</code> property lists these paths, separated by
+ * commas, and each report has the following properties, prefixed by its path and a dot. Within the
+ * lists, a comma or a backslash which is part of a path is preceded by a backslash.
+ * </p>
+ * <ul>
+ * <li><code>name</code>: the name of the report</li>
+ * <li><code>hash</code>: the hash of the compiled report, which changes whenever it is compiled
+ * differently</li>
+ * <li><code>parameters</code>: the names of the parameters of the report which are not system
+ * defined, separated by commas, each having its value class in a <code>parameter.</code><i>name</i>
+ * property</li>
+ * <li><code>subreports</code>: the paths of the compiled reports the report depends on</li>
+ * <li><code>resources</code>: the paths of the other files the report depends on, relative to the
+ * source directory</li>
+ * </ul>
+ * <p>
+ * The index is read when the build starts, updated as reports are compiled, and written back
+ * atomically when the build ends, only if it changed. Its properties are sorted and it holds no
+ * timestamp, so that it only changes along with the reports.
+ * </p>
+ */
+public class ReportIndex {
+
+    private static final String HEADER = "# Compiled reports, generated by the jasperreports-maven-plugin";
+
+    private static final String REPORTS = "reports";
+
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    private boolean modified;
+
+    /**
+     * Reads an index. A missing file gives an empty index, which is written even if no entry is added.
+     */
+    public static ReportIndex read(File file) throws IOException {
+        ReportIndex index = new ReportIndex();
+        if (!file.isFile()) {
+            index.modified = true;
+            return index;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        for (String path : split(properties.getProperty(REPORTS))) {
+            String name = properties.getProperty(path + ".name");
+            String hash = properties.getProperty(path + ".hash");
+            if (name == null || hash == null) {
+                // corrupt entry, the report is compiled again
+                continue;
+            }
+            Map<String, String> parameters = new LinkedHashMap<String, String>();
+            for (String parameter : split(properties.getProperty(path + ".parameters"))) {
+                parameters.put(parameter, properties.getProperty(path + ".parameter." + parameter));
+            }
+            index.entries.put(
+                    path,
+                    new Entry(
+                            name,
+                            hash,
+                            parameters,
+                            split(properties.getProperty(path + ".subreports")),
+                            split(properties.getProperty(path + ".resources"))));
+        }
+        return index;
+    }
+
+    private static List<String> split(String value) {
+        if (value == null || value.length() == 0) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                sb.append(value.charAt(++i));
+            } else if (c == ',') {
+                values.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        values.add(sb.toString());
+        return values;
+    }
+
+    /**
+     * @return whether the given report is indexed
+     */
+    public synchronized boolean contains(String path) {
+        return entries.containsKey(path);
+    }
+
+    /**
+     * @return the entry of the given report, or <code>null</code> if it is not indexed
+     */
+    public synchronized Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public synchronized void put(String path, Entry entry) {
+        if (!entry.equals(entries.put(path, entry))) {
+            modified = true;
+        }
+    }
+
+    public synchronized void remove(String path) {
+        if (entries.remove(path) != null) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Drops the entries of the reports which are not in the given collection.
+     */
+    public synchronized void prune(Collection<String> paths) {
+        if (entries.keySet().retainAll(paths)) {
+            modified = true;
+        }
+    }
+
+    /**
+     * Adds the entries of another index, such as the partial index of a shard, replacing those of the
+     * same paths.
+     */
+    public synchronized void merge(ReportIndex other) {
+        for (Map.Entry<String, Entry> entry : other.getEntries().entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return a copy of the entries, by path
+     */
+    public synchronized Map<String, Entry> getEntries() {
+        return new TreeMap<String, Entry>(entries);
+    }
+
+    /**
+     * @return whether entries were added, changed or removed since the index was read
+     */
+    public synchronized boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Writes the index to a temporary file, which then replaces the given file unless it holds the
+     * same index.
+     */
+    public synchronized void write(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(REPORTS, join(entries.keySet()));
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            String prefix = entry.getKey() + '.';
+            Entry value = entry.getValue();
+            properties.setProperty(prefix + "name", value.name);
+            properties.setProperty(prefix + "hash", value.hash);
+            properties.setProperty(prefix + "parameters", join(value.parameters.keySet()));
+            for (Map.Entry<String, String> parameter : value.parameters.entrySet()) {
+                properties.setProperty(prefix + "parameter." + parameter.getKey(), parameter.getValue());
+            }
+            properties.setProperty(prefix + "subreports", join(value.subreports));
+            properties.setProperty(prefix + "resources", join(value.resources));
+        }
+
+        // Properties escapes the keys and values, but writes them in no particular order after a timestamp
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        properties.store(buffer, null);
+        List<String> lines = new ArrayList<String>();
+        for (String line : buffer.toString("ISO-8859-1").split("\\r?\\n")) {
+            if (line.length() > 0 && !line.startsWith("#")) {
+                lines.add(line);
+            }
+        }
+        Collections.sort(lines);
+
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        OutputFiles.writeIfChanged(sb.toString().getBytes("ISO-8859-1"), file);
+        modified = false;
+    }
+
+    private static String join(Collection<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<String> it = values.iterator(); it.hasNext(); ) {
+            String value = it.next();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '\\') {
+                    sb.append('\\');
+                }
+                sb.append(c);
+            }
+            if (it.hasNext()) {
+                sb.append(',');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The indexed information about a compiled report.
+     */
+    public static class Entry {
+        private final String name;
+
+        private final String hash;
+
+        private final Map<String, String> parameters;
+
+        private final List<String> subreports;
+
+        private final List<String> resources;
+
+        /**
+         * @param parameters the value class names of the parameters, by parameter name
+         * @param subreports the paths of the compiled reports the report depends on
+         * @param resources the paths of the other files the report depends on
+         */
+        public Entry(
+                String name,
+                String hash,
+                Map<String, String> parameters,
+                Collection<String> subreports,
+                Collection<String> resources) {
+            this.name = name;
+            this.hash = hash;
+            this.parameters = Collections.unmodifiableMap(new LinkedHashMap<String, String>(parameters));
+            this.subreports = Collections.unmodifiableList(new ArrayList<String>(subreports));
+            this.resources = Collections.unmodifiableList(new ArrayList<String>(resources));
+        }
+
+        /**
+         * Creates the entry of a report from its design or compiled report, indexing the parameters
+         * which are not system defined.
+         */
+        public static Entry of(
+                JRReport report, String hash, Collection<String> subreports, Collection<String> resources) {
+            Map<String, String> parameters = new LinkedHashMap<String, String>();
+            for (JRParameter parameter : report.getParameters()) {
+                if (!parameter.isSystemDefined()) {
+                    parameters.put(parameter.getName(), parameter.getValueClassName());
+                }
+            }
+            return new Entry(report.getName(), hash, parameters, subreports, resources);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public Map<String, String> getParameters() {
+            return parameters;
+        }
+
+        public List<String> getSubreports() {
+            return subreports;
+        }
+
+        public List<String> getResources() {
+            return resources;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) obj;
+            return name.equals(other.name)
+                    && hash.equals(other.hash)
+                    && parameters.equals(other.parameters)
+                    && subreports.equals(other.subreports)
+                    && resources.equals(other.resources);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Splits the report designs of a module into shards compiled by separate builds, such as the agents of
+ * a CI pipeline.
+ * <p>
+ * Every build must select the same shards from the same designs, whatever it compiled before, so the
+ * split only depends on the paths and sizes of all the designs: the designs are taken from the largest
+ * to the smallest, and each is given to the shard with the least total size so far.
+ * </p>
+ */
+public class ReportShards {
+
+    private ReportShards() {}
+
+    /**
+     * @param sizes the sizes of all the designs, by path
+     * @param index the index of the shard to select, from 0
+     * @param count the number of shards
+     * @return the paths of the designs of the shard
+     */
+    public static Set<String> select(Map<String, Long> sizes, int index, int count) {
+        List<Map.Entry<String, Long>> designs = new ArrayList<Map.Entry<String, Long>>(sizes.entrySet());
+        Collections.sort(designs, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> design1, Map.Entry<String, Long> design2) {
+                int result = design2.getValue().compareTo(design1.getValue());
+                return result != 0 ? result : design1.getKey().compareTo(design2.getKey());
+            }
+        });
+
+        long[] loads = new long[count];
+        Set<String> shard = new TreeSet<String>();
+        for (Map.Entry<String, Long> design : designs) {
+            int lightest = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[lightest]) {
+                    lightest = i;
+                }
+            }
+            // empty designs still count, so that they are spread too
+            loads[lightest] += Math.max(1, design.getValue().longValue());
+            if (lightest == index) {
+                shard.add(design.getKey());
+            }
+        }
+        return shard;
+    }
+}
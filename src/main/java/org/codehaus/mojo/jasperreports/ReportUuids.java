@@ -0,0 +1,428 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import net.sf.jasperreports.components.list.ListComponent;
+import net.sf.jasperreports.components.table.BaseColumn;
+import net.sf.jasperreports.components.table.ColumnGroup;
+import net.sf.jasperreports.components.table.StandardBaseColumn;
+import net.sf.jasperreports.components.table.TableComponent;
+import net.sf.jasperreports.crosstabs.JRCrosstab;
+import net.sf.jasperreports.engine.DefaultJasperReportsContext;
+import net.sf.jasperreports.engine.JRBreak;
+import net.sf.jasperreports.engine.JRChart;
+import net.sf.jasperreports.engine.JRComponentElement;
+import net.sf.jasperreports.engine.JRDatasetRun;
+import net.sf.jasperreports.engine.JRElement;
+import net.sf.jasperreports.engine.JRElementDataset;
+import net.sf.jasperreports.engine.JREllipse;
+import net.sf.jasperreports.engine.JRExpressionCollector;
+import net.sf.jasperreports.engine.JRFrame;
+import net.sf.jasperreports.engine.JRGenericElement;
+import net.sf.jasperreports.engine.JRGroup;
+import net.sf.jasperreports.engine.JRImage;
+import net.sf.jasperreports.engine.JRLine;
+import net.sf.jasperreports.engine.JRPart;
+import net.sf.jasperreports.engine.JRRectangle;
+import net.sf.jasperreports.engine.JRRuntimeException;
+import net.sf.jasperreports.engine.JRSection;
+import net.sf.jasperreports.engine.JRStaticText;
+import net.sf.jasperreports.engine.JRSubreport;
+import net.sf.jasperreports.engine.JRTextField;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.base.JRBaseElement;
+import net.sf.jasperreports.engine.component.Component;
+import net.sf.jasperreports.engine.design.JRDesignDataset;
+import net.sf.jasperreports.engine.design.JRDesignDatasetRun;
+import net.sf.jasperreports.engine.design.JRDesignPart;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.util.JRElementsVisitor;
+import net.sf.jasperreports.engine.util.JRVisitorSupport;
+
+/**
+ * Gives deterministic UUIDs to the parts of a report design which have none.
+ * <p>
+ * JasperReports identifies elements, datasets, dataset runs, parts and table columns by UUID, and
+ * generates random ones for those which were not given one in the design when they are compiled, so
+ * that compiling the same design twice gives different reports. Before compiling, the design is walked
+ * in a stable order and every object whose UUID was not written in the design is given a UUID derived
+ * from a seed, such as the content hash of the design, and the position of the object in the walk.
+ * </p>
+ * <p>
+ * JasperReports creates a random UUID as soon as a missing one is read, so the UUIDs written in the
+ * design are read from its source with {@link #getDesignUuids(File)}. The design is walked through the
+ * JasperReports element visitor, which also enters frames, crosstabs, tables and lists. The elements and
+ * dataset runs of other components are those their component compiler collects the expressions of.
+ * </p>
+ */
+public class ReportUuids {
+
+    private static final Pattern UUID_ATTRIBUTE = Pattern.compile(
+            "uuid\\s*=\\s*[\"']([0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12})[\"']");
+
+    private ReportUuids() {}
+
+    /**
+     * @return the UUIDs written in the <code>uuid</code> attributes of a report design source
+     */
+    public static Set<UUID> getDesignUuids(File source) throws IOException {
+        Set<UUID> uuids = new HashSet<UUID>();
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(source), "UTF-8"));
+        try {
+            Scanner scanner = new Scanner(reader);
+            while (scanner.findWithinHorizon(UUID_ATTRIBUTE, 0) != null) {
+                uuids.add(UUID.fromString(scanner.match().group(1)));
+            }
+            if (scanner.ioException() != null) {
+                throw scanner.ioException();
+            }
+        } finally {
+            reader.close();
+        }
+        return uuids;
+    }
+
+    /**
+     * @param designUuids the UUIDs written in the design, which are kept
+     * @param seed distinguishes the UUIDs of the design from those of other designs
+     * @return the number of UUIDs given
+     */
+    public static int assign(JasperDesign design, Set<UUID> designUuids, String seed) {
+        int assigned = 0;
+        int position = 0;
+        for (Object object : collect(design)) {
+            position++;
+            UUID uuid = getUuid(object);
+            if (designUuids.contains(uuid)) {
+                continue;
+            }
+            UUID derived = createUuid(seed, position);
+            if (!derived.equals(uuid)) {
+                setUuid(object, derived);
+                assigned++;
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * @return the objects of the design identified by UUID, in a stable order
+     */
+    private static List<Object> collect(final JasperDesign design) {
+        final List<Object> objects = new ArrayList<Object>();
+        objects.add(design.getMainDesignDataset());
+        objects.addAll(design.getDatasetsList());
+        addParts(objects, design.getDetailSection());
+        for (JRGroup group : design.getGroupsList()) {
+            addParts(objects, group.getGroupHeaderSection());
+            addParts(objects, group.getGroupFooterSection());
+        }
+        JRElementsVisitor.visitReport(design, new JRVisitorSupport() {
+            @Override
+            public void visitBreak(JRBreak breakElement) {
+                objects.add(breakElement);
+            }
+
+            @Override
+            public void visitChart(JRChart chart) {
+                objects.add(chart);
+                if (chart.getDataset() != null) {
+                    addDatasetRun(objects, chart.getDataset().getDatasetRun());
+                }
+            }
+
+            @Override
+            public void visitCrosstab(JRCrosstab crosstab) {
+                objects.add(crosstab);
+                if (crosstab.getDataset() != null) {
+                    addDatasetRun(objects, crosstab.getDataset().getDatasetRun());
+                }
+            }
+
+            @Override
+            public void visitEllipse(JREllipse ellipse) {
+                objects.add(ellipse);
+            }
+
+            @Override
+            public void visitFrame(JRFrame frame) {
+                objects.add(frame);
+            }
+
+            @Override
+            public void visitImage(JRImage image) {
+                objects.add(image);
+            }
+
+            @Override
+            public void visitLine(JRLine line) {
+                objects.add(line);
+            }
+
+            @Override
+            public void visitRectangle(JRRectangle rectangle) {
+                objects.add(rectangle);
+            }
+
+            @Override
+            public void visitStaticText(JRStaticText staticText) {
+                objects.add(staticText);
+            }
+
+            @Override
+            public void visitSubreport(JRSubreport subreport) {
+                objects.add(subreport);
+            }
+
+            @Override
+            public void visitTextField(JRTextField textField) {
+                objects.add(textField);
+            }
+
+            @Override
+            public void visitComponentElement(JRComponentElement componentElement) {
+                objects.add(componentElement);
+                Component component = componentElement.getComponent();
+                if (component instanceof TableComponent) {
+                    addDatasetRun(objects, ((TableComponent) component).getDatasetRun());
+                    addColumns(objects, ((TableComponent) component).getColumns());
+                } else if (component instanceof ListComponent) {
+                    addDatasetRun(objects, ((ListComponent) component).getDatasetRun());
+                }
+                addComponentObjects(objects, design, componentElement);
+            }
+
+            @Override
+            public void visitGenericElement(JRGenericElement element) {
+                objects.add(element);
+            }
+        });
+
+        // the elements of tables and lists are both visited and collected from their component
+        List<Object> distinct = new ArrayList<Object>(objects.size());
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        for (Object object : objects) {
+            if (seen.add(object)) {
+                distinct.add(object);
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Adds the elements and dataset runs of a component, as collected by its component compiler. They
+     * are skipped when the component is not known, the compilation then failing anyway.
+     */
+    private static void addComponentObjects(
+            List<Object> objects, JasperDesign design, JRComponentElement componentElement) {
+        ComponentObjects componentObjects = new ComponentObjects(DefaultJasperReportsContext.getInstance(), design);
+        try {
+            componentObjects.collect(componentElement);
+        } catch (JRRuntimeException e) {
+            return;
+        }
+        objects.addAll(componentObjects.objects);
+    }
+
+    private static void addParts(List<Object> objects, JRSection section) {
+        if (section != null && section.getParts() != null) {
+            for (JRPart part : section.getParts()) {
+                objects.add(part);
+            }
+        }
+    }
+
+    private static void addDatasetRun(List<Object> objects, JRDatasetRun datasetRun) {
+        if (datasetRun != null) {
+            objects.add(datasetRun);
+        }
+    }
+
+    private static void addColumns(List<Object> objects, List<BaseColumn> columns) {
+        if (columns != null) {
+            for (BaseColumn column : columns) {
+                objects.add(column);
+                if (column instanceof ColumnGroup) {
+                    addColumns(objects, ((ColumnGroup) column).getColumns());
+                }
+            }
+        }
+    }
+
+    private static UUID getUuid(Object object) {
+        if (object instanceof JRElement) {
+            return ((JRElement) object).getUUID();
+        } else if (object instanceof JRDesignDataset) {
+            return ((JRDesignDataset) object).getUUID();
+        } else if (object instanceof JRDatasetRun) {
+            return ((JRDatasetRun) object).getUUID();
+        } else if (object instanceof JRPart) {
+            return ((JRPart) object).getUUID();
+        } else {
+            return ((BaseColumn) object).getUUID();
+        }
+    }
+
+    private static void setUuid(Object object, UUID uuid) {
+        if (object instanceof JRBaseElement) {
+            ((JRBaseElement) object).setUUID(uuid);
+        } else if (object instanceof JRDesignDataset) {
+            ((JRDesignDataset) object).setUUID(uuid);
+        } else if (object instanceof JRDesignDatasetRun) {
+            ((JRDesignDatasetRun) object).setUUID(uuid);
+        } else if (object instanceof JRDesignPart) {
+            ((JRDesignPart) object).setUUID(uuid);
+        } else if (object instanceof StandardBaseColumn) {
+            ((StandardBaseColumn) object).setUUID(uuid);
+        }
+    }
+
+    private static UUID createUuid(String seed, int position) {
+        try {
+            return UUID.nameUUIDFromBytes((seed + '#' + position).getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records the elements and dataset runs whose expressions are collected, including those of the
+     * datasets the components run, which JasperReports collects separately.
+     */
+    private static class ComponentObjects extends JRExpressionCollector {
+        private final List<Object> objects = new ArrayList<Object>();
+
+        ComponentObjects(JasperReportsContext jasperReportsContext, JasperDesign design) {
+            super(jasperReportsContext, null, design);
+        }
+
+        @Override
+        public JRExpressionCollector getDatasetCollector(String datasetName) {
+            return this;
+        }
+
+        @Override
+        public JRExpressionCollector getCollector(JRElementDataset elementDataset) {
+            return this;
+        }
+
+        @Override
+        public JRExpressionCollector getCollector(JRCrosstab crosstab) {
+            return this;
+        }
+
+        @Override
+        public void collect(JRDatasetRun datasetRun) {
+            objects.add(datasetRun);
+            super.collect(datasetRun);
+        }
+
+        @Override
+        public void collect(JRBreak breakElement) {
+            objects.add(breakElement);
+            super.collect(breakElement);
+        }
+
+        @Override
+        public void collect(JRLine line) {
+            objects.add(line);
+            super.collect(line);
+        }
+
+        @Override
+        public void collect(JRRectangle rectangle) {
+            objects.add(rectangle);
+            super.collect(rectangle);
+        }
+
+        @Override
+        public void collect(JREllipse ellipse) {
+            objects.add(ellipse);
+            super.collect(ellipse);
+        }
+
+        @Override
+        public void collect(JRImage image) {
+            objects.add(image);
+            super.collect(image);
+        }
+
+        @Override
+        public void collect(JRStaticText staticText) {
+            objects.add(staticText);
+            super.collect(staticText);
+        }
+
+        @Override
+        public void collect(JRTextField textField) {
+            objects.add(textField);
+            super.collect(textField);
+        }
+
+        @Override
+        public void collect(JRSubreport subreport) {
+            objects.add(subreport);
+            super.collect(subreport);
+        }
+
+        @Override
+        public void collect(JRChart chart) {
+            objects.add(chart);
+            super.collect(chart);
+        }
+
+        @Override
+        public void collect(JRCrosstab crosstab) {
+            objects.add(crosstab);
+            super.collect(crosstab);
+        }
+
+        @Override
+        public void collect(JRFrame frame) {
+            objects.add(frame);
+            super.collect(frame);
+        }
+
+        @Override
+        public void collect(JRComponentElement componentElement) {
+            objects.add(componentElement);
+            super.collect(componentElement);
+        }
+
+        @Override
+        public void collect(JRGenericElement element) {
+            objects.add(element);
+            super.collect(element);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRRuntimeException;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.xml.JRReportSaxParserFactory;
+import net.sf.jasperreports.engine.xml.JRSaxParserFactory;
+import net.sf.jasperreports.engine.xml.JRXmlDigester;
+import net.sf.jasperreports.engine.xml.JRXmlDigesterFactory;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Validates report designs against the JRXML schemas, without loading them.
+ * <p>
+ * JasperReports compiles the schemas again for every design it loads. The schemas are compiled once
+ * here and shared by all threads, each thread reusing its own parser, so that many designs can be
+ * validated quickly before any of them is compiled. When the validator is stored in the
+ * {@link JasperReportsContext} under {@link #CONTEXT_KEY}, the {@link ParserFactory} makes the
+ * loading of designs use the compiled schemas as well.
+ * </p>
+ */
+public class ReportValidator {
+
+    public static final String CONTEXT_KEY = ReportValidator.class.getName();
+
+    private final Schema schema;
+
+    private final JRXmlDigester entityResolver;
+
+    private final ThreadLocal<SAXParser> parsers = new ThreadLocal<SAXParser>();
+
+    public ReportValidator(JasperReportsContext jasperReportsContext) throws JRException {
+        List<String> locations = new ParserFactory(jasperReportsContext).getLocations();
+        Source[] sources = new Source[locations.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = new StreamSource(locations.get(i));
+        }
+        try {
+            schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                    .newSchema(sources);
+        } catch (SAXException e) {
+            throw new JRException("Unable to load the JRXML schemas", e);
+        }
+
+        // resolves the DTDs of older designs and the schemas of components to the bundled files
+        entityResolver = new JRXmlDigester();
+        JRXmlDigesterFactory.setComponentsInternalEntityResources(jasperReportsContext, entityResolver);
+    }
+
+    /**
+     * @return the validator stored in the given context, or <code>null</code>
+     */
+    public static ReportValidator get(JasperReportsContext jasperReportsContext) {
+        return (ReportValidator) jasperReportsContext.getValue(CONTEXT_KEY);
+    }
+
+    /**
+     * @return a factory of parsers validating against the compiled schemas
+     */
+    public SAXParserFactory createParserFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setSchema(schema);
+        return factory;
+    }
+
+    /**
+     * @throws JRException if the design is not well-formed or not valid, with the location of the
+     *         problem as message
+     */
+    public void validate(File file) throws JRException {
+        SAXParser parser = parsers.get();
+        if (parser == null) {
+            try {
+                parser = createParserFactory().newSAXParser();
+            } catch (ParserConfigurationException e) {
+                throw new JRException("Unable to create an XML parser", e);
+            } catch (SAXException e) {
+                throw new JRException("Unable to create an XML parser", e);
+            }
+            parsers.set(parser);
+        } else {
+            parser.reset();
+        }
+
+        try {
+            parser.parse(file, new Handler());
+        } catch (SAXParseException e) {
+            throw new JRException(getMessage(e), e);
+        } catch (SAXException e) {
+            throw new JRException(e.getMessage(), e);
+        } catch (IOException e) {
+            throw new JRException("Unable to read " + file, e);
+        } catch (JRRuntimeException e) {
+            // an entity JasperReports does not load
+            throw new JRException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the message of a failure to load or validate a design, with the location of the problem
+     *         when it is a parse error
+     */
+    public static String getMessage(JRException e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof SAXParseException) {
+                return getMessage((SAXParseException) cause);
+            }
+        }
+        return e.getMessage();
+    }
+
+    private static String getMessage(SAXParseException e) {
+        return "line " + e.getLineNumber() + ", column " + e.getColumnNumber() + ": " + e.getMessage();
+    }
+
+    /**
+     * Fails on the first problem, like JasperReports does when loading a design.
+     */
+    private class Handler extends DefaultHandler {
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) {
+            return entityResolver.resolveEntity(publicId, systemId);
+        }
+
+        @Override
+        public void warning(SAXParseException e) throws SAXException {
+            throw e;
+        }
+
+        @Override
+        public void error(SAXParseException e) throws SAXException {
+            throw e;
+        }
+    }
+
+    /**
+     * The parser factory of report designs, set as the
+     * {@link JRSaxParserFactory#PROPERTY_REPORT_PARSER_FACTORY} of the JasperReports context. It creates
+     * parsers validating against the schemas compiled by the validator of the context, if there is one.
+     * Designs are always validated while they are loaded: JasperReports relies on the default values
+     * of the schemas.
+     */
+    public static class ParserFactory extends JRReportSaxParserFactory {
+        public ParserFactory(JasperReportsContext jasperReportsContext) {
+            super(jasperReportsContext);
+        }
+
+        @Override
+        protected SAXParserFactory createSAXParserFactory() throws ParserConfigurationException, SAXException {
+            ReportValidator validator = get(jasperReportsContext);
+            return validator != null ? validator.createParserFactory() : super.createSAXParserFactory();
+        }
+
+        @Override
+        protected void configureParser(SAXParser parser) throws SAXException {
+            if (get(jasperReportsContext) == null) {
+                super.configureParser(parser);
+            }
+        }
+
+        /**
+         * @return the schemas JasperReports validates report designs against
+         */
+        List<String> getLocations() {
+            return getSchemaLocations();
+        }
+    }
+}
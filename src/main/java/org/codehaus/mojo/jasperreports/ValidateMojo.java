@@ -0,0 +1,44 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Validates all the JasperReports xml design files against the JRXML schemas, in parallel, without
+ * compiling them.
+ *
+ * @goal validate-reports
+ * @phase validate
+ * @requiresDependencyResolution compile
+ * @since 1.0-beta-5
+ */
+public class ValidateMojo extends JasperReportsMojo {
+
+    public void execute() throws MojoExecutionException {
+        Set<File> sources =
+                getSourceDirectory().isDirectory() ? scanSrcDir(getSourceMapping()) : Collections.<File>emptySet();
+        if (sources.isEmpty()) {
+            getLog().info("No report design to validate");
+            return;
+        }
+        validate(sources);
+    }
+}
@@ -0,0 +1,195 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Compiles the report designs, then watches the source directory and compiles the changed designs
+ * and the designs depending on changed files again, until Maven is interrupted.
+ * <p>
+ * Every change runs the incremental compilation of the <code>compile-reports</code> goal within the
+ * same JVM and Maven session, so that the project is resolved once and the report class loader and
+ * compilers stay warm. Bursts of changes, like an editor saving several files, are compiled together.
+ * A failing report is logged and compiled again on the next change.
+ * </p>
+ *
+ * @goal watch
+ * @requiresDependencyResolution compile
+ * @since 1.0-beta-5
+ */
+public class WatchMojo extends JasperReportsMojo {
+
+    /**
+     * The time in milliseconds without further changes after which changed files are compiled.
+     *
+     * @parameter property="jasperreports.watchDelay" default-value="200"
+     * @since 1.0-beta-5
+     */
+    private long watchDelay;
+
+    /**
+     * The service keeping the resources warm between the compilations when the session has none.
+     */
+    private CompilerService watchService;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        try {
+            watch();
+        } finally {
+            closeService();
+        }
+    }
+
+    /**
+     * Closes the resources kept between the compilations.
+     */
+    void closeService() {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+    }
+
+    @Override
+    protected CompilerService getCompilerService() {
+        CompilerService service = super.getCompilerService();
+        if (service != null) {
+            return service;
+        }
+        if (watchService == null) {
+            watchService = new CompilerService();
+        }
+        return watchService;
+    }
+
+    private void watch() throws MojoExecutionException {
+        compileChanges();
+
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to watch " + getSourceDirectory(), e);
+        }
+        try {
+            register(watcher, getSourceDirectory().toPath());
+            getLog().info("Watching " + getSourceDirectory() + " for changes, press Ctrl+C to stop.");
+            while (true) {
+                processChanges(watcher, watcher.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to watch " + getSourceDirectory(), e);
+        } finally {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                getLog().debug(e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the end of the burst of changes starting with the events of the given key, then compiles
+     * the changes.
+     *
+     * @return whether the compilation succeeded
+     */
+    boolean processChanges(WatchService watcher, WatchKey key) throws IOException, InterruptedException {
+        do {
+            handleEvents(watcher, key);
+            key = watcher.poll(watchDelay, TimeUnit.MILLISECONDS);
+        } while (key != null);
+
+        long start = System.nanoTime();
+        if (compileChanges()) {
+            getLog().info("Compiled the changes in " + (System.nanoTime() - start) / 1000000 + " ms.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs the incremental compilation, logging its failures. The resources of the compilation are kept
+     * by the compiler service between the calls.
+     *
+     * @return whether the compilation succeeded
+     */
+    boolean compileChanges() {
+        try {
+            super.execute();
+            return true;
+        } catch (MojoExecutionException e) {
+            getLog().error(e.getMessage(), e.getCause());
+        } catch (MojoFailureException e) {
+            getLog().error(e.getMessage(), e.getCause());
+        }
+        return false;
+    }
+
+    /**
+     * Registers new directories, and resets the key so that it reports further events.
+     */
+    private void handleEvents(WatchService watcher, WatchKey key) throws IOException {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (getLog().isDebugEnabled()) {
+                getLog().debug("Changed: " + path);
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                register(watcher, path);
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Watches a directory and its subdirectories.
+     */
+    static void register(final WatchService watcher, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(
+                        watcher,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,189 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The 64 bits xxHash, a fast non-cryptographic hash used to detect changed files.
+ *
+ * @see <a href="https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">xxHash specification</a>
+ */
+public class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long seed;
+
+    private long v1;
+
+    private long v2;
+
+    private long v3;
+
+    private long v4;
+
+    private final byte[] stripe = new byte[32];
+
+    private int stripeLength;
+
+    private long totalLength;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+    }
+
+    /**
+     * @return the hash of the content of a file, as 16 hexadecimal digits
+     */
+    public static String hash(File file) throws IOException {
+        XxHash64 hash = new XxHash64();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[(int) Math.max(1, Math.min(BUFFER_SIZE, file.length()))];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                hash.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(hash.getValue());
+    }
+
+    /**
+     * @return the hash of the given bytes, as 16 hexadecimal digits
+     */
+    public static String hash(byte[] bytes) {
+        XxHash64 hash = new XxHash64();
+        hash.update(bytes, 0, bytes.length);
+        return toHex(hash.getValue());
+    }
+
+    public static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+
+        if (stripeLength > 0) {
+            int count = Math.min(32 - stripeLength, length);
+            System.arraycopy(bytes, offset, stripe, stripeLength, count);
+            stripeLength += count;
+            offset += count;
+            if (stripeLength < 32) {
+                return;
+            }
+            consumeStripe(stripe, 0);
+            stripeLength = 0;
+        }
+
+        for (; offset + 32 <= end; offset += 32) {
+            consumeStripe(bytes, offset);
+        }
+
+        if (offset < end) {
+            stripeLength = end - offset;
+            System.arraycopy(bytes, offset, stripe, 0, stripeLength);
+        }
+    }
+
+    public long getValue() {
+        long hash;
+        if (totalLength >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+        hash += totalLength;
+
+        int offset = 0;
+        for (; offset + 8 <= stripeLength; offset += 8) {
+            hash ^= round(0, readLong(stripe, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (offset + 4 <= stripeLength) {
+            hash ^= (readInt(stripe, offset) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            offset += 4;
+        }
+        for (; offset < stripeLength; offset++) {
+            hash ^= (stripe[offset] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void consumeStripe(byte[] bytes, int offset) {
+        v1 = round(v1, readLong(bytes, offset));
+        v2 = round(v2, readLong(bytes, offset + 8));
+        v3 = round(v3, readLong(bytes, offset + 16));
+        v4 = round(v4, readLong(bytes, offset + 24));
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        return (acc ^ round(0, value)) * PRIME1 + PRIME4;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return (readInt(bytes, offset) & 0xFFFFFFFFL) | ((long) readInt(bytes, offset + 4) << 32);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,146 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The {@link CompileEvents} of the Java Flight Recorder. This class is compiled for Java 11 from a source
+ * directory of its own, and only loaded through {@link CompileEvents#get}.
+ */
+class JfrCompileEvents extends CompileEvents {
+
+    @Override
+    public Span begin(CompileTimings.Phase phase, String report) {
+        ReportEvent event;
+        switch (phase) {
+            case LOAD:
+                event = new LoadEvent();
+                break;
+            case VERIFY:
+                event = new VerifyEvent();
+                break;
+            case GENERATE:
+                event = new GenerateEvent();
+                break;
+            case JAVAC:
+                event = new JavacEvent();
+                break;
+            default:
+                event = new WriteEvent();
+                break;
+        }
+        return start(event, report);
+    }
+
+    @Override
+    public Span beginJavac(String report, int sourceCount, int classpathSize) {
+        JavacEvent event = new JavacEvent();
+        event.sourceCount = sourceCount;
+        event.classpathSize = classpathSize;
+        return start(event, report);
+    }
+
+    @Override
+    public Span beginUpToDateCheck(String report) {
+        return start(new UpToDateCheckEvent(), report);
+    }
+
+    private static Span start(ReportEvent event, String report) {
+        if (!event.isEnabled()) {
+            return Span.NONE;
+        }
+        event.report = report;
+        event.begin();
+        return new EventSpan(event);
+    }
+
+    private static class EventSpan extends Span {
+        private final ReportEvent event;
+
+        EventSpan(ReportEvent event) {
+            this.event = event;
+        }
+
+        @Override
+        public void setUpToDate(boolean upToDate) {
+            if (event instanceof UpToDateCheckEvent) {
+                ((UpToDateCheckEvent) event).upToDate = upToDate;
+            }
+        }
+
+        @Override
+        public void stop() {
+            event.end();
+        }
+
+        @Override
+        public void end() {
+            event.commit();
+        }
+    }
+
+    @Category({"JasperReports", "Compile"})
+    abstract static class ReportEvent extends Event {
+        @Label("Report")
+        @Description("The path of the report design")
+        String report;
+    }
+
+    @Name("org.codehaus.mojo.jasperreports.Load")
+    @Label("Report Load")
+    @Description("Parsing and validating the XML of a report design")
+    static class LoadEvent extends ReportEvent {}
+
+    @Name("org.codehaus.mojo.jasperreports.Verify")
+    @Label("Report Verification")
+    @Description("Verifying a report design and collecting its expressions")
+    static class VerifyEvent extends ReportEvent {}
+
+    @Name("org.codehaus.mojo.jasperreports.Generate")
+    @Label("Expression Source Generation")
+    @Description("Generating the sources of the expression classes of a report design")
+    static class GenerateEvent extends ReportEvent {}
+
+    @Name("org.codehaus.mojo.jasperreports.Javac")
+    @Label("Expression Compilation")
+    @Description("Compiling expression classes, of a single report design or of a batch of them")
+    static class JavacEvent extends ReportEvent {
+        @Label("Source Count")
+        int sourceCount;
+
+        @Label("Classpath Size")
+        @Description("The number of classpath entries")
+        int classpathSize;
+    }
+
+    @Name("org.codehaus.mojo.jasperreports.Write")
+    @Label("Report Serialization")
+    @Description("Serializing and writing a compiled report, or restoring it from the cache")
+    static class WriteEvent extends ReportEvent {}
+
+    @Name("org.codehaus.mojo.jasperreports.UpToDateCheck")
+    @Label("Up-to-date Check")
+    @Description("Checking whether a report design needs to be compiled")
+    static class UpToDateCheckEvent extends ReportEvent {
+        @Label("Up To Date")
+        boolean upToDate;
+    }
+}
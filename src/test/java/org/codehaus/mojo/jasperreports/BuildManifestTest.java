@@ -0,0 +1,164 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+public class BuildManifestTest extends TestCase {
+    private File file;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("manifest", ".txt");
+        file.delete();
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testMissingFileGivesEmptyManifest() throws IOException {
+        BuildManifest manifest = BuildManifest.read(file);
+        assertNull(manifest.get("Report.jrxml"));
+        assertFalse(manifest.isModified());
+    }
+
+    public void testWrittenEntriesAreReadBack() throws IOException {
+        BuildManifest manifest = new BuildManifest();
+        manifest.put("Report.jrxml", new BuildManifest.Entry(12, 34, "abc", "def"));
+        manifest.put("sub/Sub Report.jrxml", new BuildManifest.Entry(56, 78, "ghi", "jkl"));
+        assertTrue(manifest.isModified());
+        manifest.write(file);
+        assertFalse(manifest.isModified());
+
+        BuildManifest read = BuildManifest.read(file);
+        assertEquals(new BuildManifest.Entry(12, 34, "abc", "def"), read.get("Report.jrxml"));
+        BuildManifest.Entry entry = read.get("sub/Sub Report.jrxml");
+        assertEquals(56, entry.getSize());
+        assertEquals(78, entry.getLastModified());
+        assertEquals("ghi", entry.getSourceHash());
+        assertEquals("jkl", entry.getOutputHash());
+    }
+
+    public void testUnchangedEntryDoesNotModify() throws IOException {
+        BuildManifest manifest = new BuildManifest();
+        manifest.put("Report.jrxml", new BuildManifest.Entry(12, 34, "abc", "def"));
+        manifest.write(file);
+
+        BuildManifest read = BuildManifest.read(file);
+        read.put("Report.jrxml", new BuildManifest.Entry(12, 34, "abc", "def"));
+        read.remove("Missing.jrxml");
+        assertFalse(read.isModified());
+        read.put("Report.jrxml", new BuildManifest.Entry(12, 35, "abc", "def"));
+        assertTrue(read.isModified());
+    }
+
+    public void testUnknownFormatIsIgnored() throws IOException {
+        FileWriter writer = new FileWriter(file);
+        writer.write("Report.jrxml\t12\t34\tabc\tdef\n");
+        writer.close();
+        assertNull(BuildManifest.read(file).get("Report.jrxml"));
+    }
+
+    public void testDependenciesAreReadBack() throws IOException {
+        BuildManifest manifest = new BuildManifest();
+        manifest.put(
+                "Master.jrxml", new BuildManifest.Entry(1, 2, "abc", "def", Arrays.asList("Sub.jrxml", "styles.jrtx")));
+        manifest.put("styles.jrtx", BuildManifest.Entry.resource(3, 4, "ghi"));
+        manifest.write(file);
+
+        BuildManifest read = BuildManifest.read(file);
+        assertEquals(
+                Arrays.asList("Sub.jrxml", "styles.jrtx"),
+                read.get("Master.jrxml").getDependencies());
+        assertTrue(read.get("styles.jrtx").isResource());
+        assertTrue(read.get("styles.jrtx").getDependencies().isEmpty());
+        assertFalse(read.get("Master.jrxml").isResource());
+    }
+
+    public void testDependentsAreTransitive() {
+        BuildManifest manifest = new BuildManifest();
+        manifest.put("Master.jrxml", new BuildManifest.Entry(1, 2, "a", "b", Arrays.asList("Sub.jrxml")));
+        manifest.put("Sub.jrxml", new BuildManifest.Entry(1, 2, "a", "b", Arrays.asList("logo.png")));
+        manifest.put("Other.jrxml", new BuildManifest.Entry(1, 2, "a", "b", Arrays.asList("styles.jrtx")));
+        manifest.put("logo.png", BuildManifest.Entry.resource(1, 2, "a"));
+        manifest.put("styles.jrtx", BuildManifest.Entry.resource(1, 2, "a"));
+
+        assertEquals(
+                new HashSet<String>(Arrays.asList("Master.jrxml", "Sub.jrxml")),
+                manifest.getDependents(Collections.singleton("logo.png")));
+        assertEquals(Collections.singleton("Master.jrxml"), manifest.getDependents(Collections.singleton("Sub.jrxml")));
+        assertTrue(manifest.getDependents(Collections.singleton("Master.jrxml")).isEmpty());
+    }
+
+    public void testPruneDropsUnusedEntries() {
+        BuildManifest manifest = new BuildManifest();
+        manifest.put("Master.jrxml", new BuildManifest.Entry(1, 2, "a", "b", Arrays.asList("logo.png")));
+        manifest.put("Deleted.jrxml", new BuildManifest.Entry(1, 2, "a", "b", Arrays.asList("styles.jrtx")));
+        manifest.put("logo.png", BuildManifest.Entry.resource(1, 2, "a"));
+        manifest.put("styles.jrtx", BuildManifest.Entry.resource(1, 2, "a"));
+
+        manifest.prune(Collections.singleton("Master.jrxml"));
+        assertNotNull(manifest.get("Master.jrxml"));
+        assertNotNull(manifest.get("logo.png"));
+        assertNull(manifest.get("Deleted.jrxml"));
+        assertNull(manifest.get("styles.jrtx"));
+    }
+
+    public void testMergeCombinesShards() {
+        BuildManifest shard1 = new BuildManifest();
+        shard1.put("A.jrxml", new BuildManifest.Entry(1, 2, "a", "b", Arrays.asList("B.jrxml", "logo.png")));
+        shard1.put("logo.png", BuildManifest.Entry.resource(1, 2, "c"));
+        shard1.put("B.jrxml", new BuildManifest.Entry(3, 4, "old", "old"));
+        shard1.prune(Collections.singleton("A.jrxml"));
+        assertNull(shard1.get("B.jrxml"));
+
+        BuildManifest shard2 = new BuildManifest();
+        shard2.put("B.jrxml", new BuildManifest.Entry(5, 6, "d", "e"));
+
+        BuildManifest merged = new BuildManifest();
+        merged.merge(shard1);
+        merged.merge(shard2);
+        assertEquals(3, merged.getEntries().size());
+        assertEquals("d", merged.get("B.jrxml").getSourceHash());
+        assertEquals(Collections.singleton("A.jrxml"), merged.getDependents(Collections.singleton("B.jrxml")));
+    }
+
+    public void testEnvironmentIsReadBack() throws IOException {
+        BuildManifest manifest = new BuildManifest();
+        manifest.setEnvironment("0123456789abcdef");
+        manifest.put("Report.jrxml", new BuildManifest.Entry(12, 34, "abc", "def"));
+        manifest.write(file);
+
+        BuildManifest read = BuildManifest.read(file);
+        assertEquals("0123456789abcdef", read.getEnvironment());
+        read.setEnvironment("0123456789abcdef");
+        assertFalse(read.isModified());
+        read.clear();
+        assertTrue(read.isModified());
+        assertNull(read.get("Report.jrxml"));
+    }
+}
@@ -0,0 +1,117 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+public class ClasspathIndexTest extends TestCase {
+    public void testJdkPackagesIncludeThoseOfPlatformModules() throws Exception {
+        Set<String> packages = ClasspathIndex.getJdkPackages();
+        assertTrue(packages.contains("java.sql"));
+        assertTrue(packages.contains("java"));
+        assertFalse(packages.contains("java.lang.String"));
+    }
+
+    private File dir;
+
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("classpath", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    protected void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testReferencedPackagesAreFound() {
+        Set<String> packages = new HashSet<String>();
+        ClasspathIndex.addReferencedPackages(
+                "import java.util.*;\n"
+                        + "import org.example.util.Formats;\n"
+                        + "// com.example.comment.Ignored\n"
+                        + "public class R {\n"
+                        + "  Object e() { return new org.example . money.Amount(\"net.example.Literal\", 1.5f)"
+                        + ".format(); }\n"
+                        + "}\n",
+                packages);
+
+        assertTrue(packages.contains("java.util"));
+        assertTrue(packages.contains("org.example.util"));
+        assertTrue(packages.contains("org.example.money"));
+        assertFalse(packages.contains("com.example.comment"));
+        assertFalse(packages.contains("net.example"));
+        assertFalse(packages.contains("org.example.util.Formats"));
+    }
+
+    public void testOnlyEntriesProvidingReferencedPackagesAreKept() throws IOException {
+        File money = createJar("money.jar", "org/example/money/Amount.class");
+        File other = createJar("other.jar", "com/example/other/Thing.class", "META-INF/MANIFEST.MF");
+        File versioned = createJar("versioned.jar", "META-INF/versions/11/org/example/util/Formats.class");
+        File classes = new File(dir, "classes");
+        new File(classes, "com/example/app").mkdirs();
+        new File(classes, "com/example/app/App.class").createNewFile();
+        String classpath = money
+                + File.pathSeparator
+                + other
+                + File.pathSeparator
+                + versioned
+                + File.pathSeparator
+                + classes
+                + File.pathSeparator
+                + new File(dir, "missing.jar");
+
+        ClasspathIndex index = new ClasspathIndex(classpath, new SystemStreamLog());
+        assertEquals(
+                money + File.pathSeparator + versioned,
+                index.narrow(
+                        classpath,
+                        Arrays.asList(
+                                "import org.example.util.*; class A {}", "class B { org.example.money.Amount a; }")));
+        assertEquals(classes.getPath(), index.narrow(classpath, Collections.singleton("com.example.app.App")));
+        assertEquals("elsewhere.jar", index.narrow("elsewhere.jar", Collections.singleton("class C {}")));
+    }
+
+    private File createJar(String name, String... entries) throws IOException {
+        File jar = new File(dir, name);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+}
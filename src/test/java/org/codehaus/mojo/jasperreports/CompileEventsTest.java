@@ -0,0 +1,51 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import junit.framework.TestCase;
+
+public class CompileEventsTest extends TestCase {
+
+    public void testFlightRecorderEventsAreUsedWhenAvailable() {
+        boolean available;
+        try {
+            Class.forName("jdk.jfr.Event");
+            available = !System.getProperty("java.specification.version").startsWith("1.");
+        } catch (ClassNotFoundException e) {
+            available = false;
+        }
+        assertEquals(
+                available,
+                CompileEvents.JFR_IMPLEMENTATION.equals(
+                        CompileEvents.get().getClass().getName()));
+    }
+
+    public void testSpansCanBeEndedWithoutRecording() {
+        CompileEvents events = CompileEvents.get();
+        for (CompileTimings.Phase phase : CompileTimings.Phase.values()) {
+            events.begin(phase, "Report.jrxml").end();
+        }
+        events.beginJavac(null, 3, 10).end();
+        CompileEvents.Span check = events.beginUpToDateCheck("Report.jrxml");
+        check.stop();
+        check.setUpToDate(true);
+        check.end();
+    }
+}
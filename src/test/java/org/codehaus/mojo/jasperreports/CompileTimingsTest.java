@@ -0,0 +1,68 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class CompileTimingsTest extends TestCase {
+
+    public void testTimeIsAddedToTheReportOfTheCurrentThread() {
+        CompileTimings timings = new CompileTimings();
+        CompileTimings.Report report = timings.start("Report.jrxml");
+        timings.add(CompileTimings.Phase.JAVAC, 5000000);
+        timings.end();
+        timings.add(CompileTimings.Phase.JAVAC, 7000000);
+
+        assertEquals(5000000, report.get(CompileTimings.Phase.JAVAC));
+        assertEquals(5000000, timings.getTotal(CompileTimings.Phase.JAVAC));
+    }
+
+    public void testSlowestReportsComeFirst() {
+        CompileTimings timings = new CompileTimings();
+        timings.start("Fast.jrxml").add(CompileTimings.Phase.LOAD, 1);
+        timings.start("Slow.jrxml").add(CompileTimings.Phase.LOAD, 3);
+        timings.start("Medium.jrxml").add(CompileTimings.Phase.WRITE, 2);
+
+        List<CompileTimings.Report> slowest = timings.getSlowest(2);
+        assertEquals(2, slowest.size());
+        assertEquals("Slow.jrxml", slowest.get(0).getName());
+        assertEquals("Medium.jrxml", slowest.get(1).getName());
+    }
+
+    public void testCsvHasOneLinePerReport() throws IOException {
+        CompileTimings timings = new CompileTimings();
+        timings.start("a,b.jrxml").add(CompileTimings.Phase.VERIFY, 1500000);
+        File file = File.createTempFile("timings", ".csv");
+        try {
+            timings.write(file);
+            List<String> lines = Files.readAllLines(file.toPath());
+            assertEquals(2, lines.size());
+            assertEquals("report,cached,load_ms,verify_ms,generate_ms,javac_ms,write_ms,total_ms", lines.get(0));
+            assertEquals("\"a,b.jrxml\",false,0.000,1.500,0.000,0.000,0.000,1.500", lines.get(1));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.TestCase;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+
+public class CompilerServiceTest extends TestCase {
+    private final ClassLoader parent = getClass().getClassLoader();
+
+    public void testSameClasspathSharesResources() {
+        CompilerService service = new CompilerService();
+        CompilerService.Resources first = service.acquire("a", new URL[0], parent);
+        service.release(first);
+        CompilerService.Resources second = service.acquire("a", new URL[0], parent);
+        assertSame(first, second);
+        assertNotSame(first, service.acquire("b", new URL[0], parent));
+        service.close();
+    }
+
+    public void testOtherParentClassLoaderGetsOtherResources() {
+        CompilerService service = new CompilerService();
+        ClassLoader other = new URLClassLoader(new URL[0], parent);
+        CompilerService.Resources first = service.acquire("a", new URL[0], parent);
+        CompilerService.Resources second = service.acquire("a", new URL[0], other);
+        assertNotSame(first, second);
+        assertSame(other, second.getClassLoader().getParent());
+        service.close();
+    }
+
+    public void testLeastRecentlyUsedIdleResourcesAreDropped() {
+        CompilerService service = new CompilerService();
+        CompilerService.Resources busy = service.acquire("busy", new URL[0], parent);
+        CompilerService.Resources oldest = null;
+        for (int i = 0; i < 6; i++) {
+            CompilerService.Resources resources = service.acquire("idle" + i, new URL[0], parent);
+            service.release(resources);
+            if (i == 0) {
+                oldest = resources;
+            }
+        }
+        assertSame(busy, service.acquire("busy", new URL[0], parent));
+        assertNotSame(oldest, service.acquire("idle0", new URL[0], parent));
+        service.close();
+    }
+
+    public void testServiceIsKeptForTheSession() {
+        RepositorySystemSession session = new DefaultRepositorySystemSession();
+        assertNull(CompilerService.get(session));
+
+        CompilerService.start(session);
+        CompilerService service = CompilerService.get(session);
+        assertNotNull(service);
+        assertSame(service, CompilerService.get(session));
+
+        CompilerService.stop(session);
+        assertNull(CompilerService.get(session));
+    }
+
+    public void testReleasedEnvironmentsAreReusedClean() {
+        CompilerService.Resources resources = new CompilerService.Resources(new URL[0], parent);
+        CompilerService.Environment first = resources.acquireEnvironment();
+        first.getContext().setValue("value", "first");
+        first.getContext().setProperty("property", "first");
+        assertNotSame(first, resources.acquireEnvironment());
+        resources.releaseEnvironment(first);
+
+        CompilerService.Environment second = resources.acquireEnvironment();
+        assertSame(first, second);
+        assertSame(first.getCompileManager(), second.getCompileManager());
+        assertNull(second.getContext().getValue("value"));
+        assertNull(second.getContext().getProperty("property"));
+        resources.close();
+    }
+}
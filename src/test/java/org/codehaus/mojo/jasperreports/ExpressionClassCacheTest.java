@@ -0,0 +1,80 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+public class ExpressionClassCacheTest extends TestCase {
+    private File dir;
+
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("expressions", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    protected void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testClassesAreKeyedBySource() {
+        ExpressionClassCache cache = new ExpressionClassCache(dir, "0123456789abcdef", 1024, new SystemStreamLog());
+        assertNull(cache.get("Report_abc", "class Report_abc {}"));
+
+        cache.put("Report_abc", "class Report_abc {}", new byte[] {1, 2, 3});
+        assertTrue(Arrays.equals(new byte[] {1, 2, 3}, cache.get("Report_abc", "class Report_abc {}")));
+        assertNull(cache.get("Report_abc", "import java.util.*; class Report_abc {}"));
+        assertNull(cache.get("Other_abc", "class Report_abc {}"));
+        assertEquals(1, cache.getRestored());
+    }
+
+    public void testOtherEnvironmentsArePruned() {
+        new ExpressionClassCache(dir, "0123456789abcdef", 1024, new SystemStreamLog())
+                .put("Report_abc", "class Report_abc {}", new byte[] {1});
+        ExpressionClassCache cache = new ExpressionClassCache(dir, "fedcba9876543210", 1024, new SystemStreamLog());
+        cache.put("Report_abc", "class Report_abc {}", new byte[] {2});
+
+        cache.prune();
+        assertFalse(new File(dir, "0123456789abcdef").exists());
+        assertTrue(Arrays.equals(new byte[] {2}, cache.get("Report_abc", "class Report_abc {}")));
+    }
+
+    public void testLeastRecentlyUsedClassesAreEvicted() {
+        ExpressionClassCache cache = new ExpressionClassCache(dir, "0123456789abcdef", 5, new SystemStreamLog());
+        cache.put("Sales", "class Sales {}", new byte[] {1, 2});
+        cache.put("Stock", "class Stock {}", new byte[] {3, 4});
+        cache.put("Orders", "class Orders {}", new byte[] {5, 6});
+        File[] files = new File(dir, "0123456789abcdef").listFiles();
+        for (File file : files) {
+            file.setLastModified(file.getName().startsWith("Stock") ? 1000000000000L : 2000000000000L);
+        }
+
+        assertEquals(1, cache.evict());
+        assertNull(cache.get("Stock", "class Stock {}"));
+        assertNotNull(cache.get("Sales", "class Sales {}"));
+        assertEquals(0, cache.evict());
+    }
+}
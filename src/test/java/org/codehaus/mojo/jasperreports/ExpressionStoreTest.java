@@ -0,0 +1,164 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.design.JRCompilationUnit;
+import net.sf.jasperreports.engine.design.JRDefaultCompilationSourceCode;
+
+public class ExpressionStoreTest extends TestCase {
+
+    public void testRenamedClassesLoad() throws Exception {
+        byte[] classBytes = compile("Sales", source("Sales", "total"));
+
+        assertEquals(
+                "total",
+                load("SalesDe", ClassFiles.rename(classBytes, "Sales", "SalesDe"))
+                        .toString());
+        assertSame(classBytes, ClassFiles.rename(classBytes, "Sales", "Sales"));
+    }
+
+    public void testRenamingKeepsLiteralsAndMemberNames() throws Exception {
+        String source = "public class Sales {\n"
+                + "  private final Sales Sales = this;\n"
+                + "  private final java.util.List<Sales> all = java.util.Collections.singletonList(this);\n"
+                + "  public String toString() {\n"
+                + "    return \"Sales\" + \" Sales_Items \" + Sales.getClass().getName() + all.get(0).getClass().getName();\n"
+                + "  }\n"
+                + "}\n";
+        byte[] renamed = ClassFiles.rename(compile("Sales", source), "Sales", "SalesDe");
+        assertEquals(
+                "Sales Sales_Items SalesDeSalesDe", load("SalesDe", renamed).toString());
+    }
+
+    public void testTypesAreRenamedInDescriptors() {
+        assertEquals(
+                "(LSalesDe;[LSalesDe;)LSalesDe;",
+                ClassFiles.renameTypes("(LSales;[LSales;)LSales;", "Sales", "SalesDe"));
+        assertEquals(
+                "Ljava/util/List<LSalesDe;>;", ClassFiles.renameTypes("Ljava/util/List<LSales;>;", "Sales", "SalesDe"));
+        assertEquals(
+                "(LSales_Items;Lcom/LSales;)V",
+                ClassFiles.renameTypes("(LSales_Items;Lcom/LSales;)V", "Sales", "SalesDe"));
+    }
+
+    public void testKeysLeaveOutTheDeclaredClassNameOnly() {
+        assertEquals(
+                ExpressionStore.getKey("Sales", source("Sales", "total")),
+                ExpressionStore.getKey("SalesDe", source("SalesDe", "total")));
+        assertFalse(ExpressionStore.getKey("Sales", source("Sales", "Sales"))
+                .equals(ExpressionStore.getKey("SalesDe", source("SalesDe", "SalesDe"))));
+        assertFalse(ExpressionStore.getKey("Sales", source("Sales", "total"))
+                .equals(ExpressionStore.getKey("Sales", source("Sales", "count"))));
+    }
+
+    public void testClassesDifferingByNameAreCompiledOnce() throws JRException {
+        ExpressionStore store = new ExpressionStore();
+        RecordingCompilation compilation = new RecordingCompilation();
+
+        JRCompilationUnit sales = unit("Sales", "total");
+        assertNull(store.compile(new JRCompilationUnit[] {sales}, compilation));
+        JRCompilationUnit salesDe = unit("SalesDe", "total");
+        JRCompilationUnit stock = unit("Stock", "count");
+        assertNull(store.compile(new JRCompilationUnit[] {salesDe, stock}, compilation));
+
+        assertEquals(2, compilation.compiled.size());
+        assertEquals("Sales", compilation.compiled.get(0));
+        assertEquals("Stock", compilation.compiled.get(1));
+        assertEquals(1, store.getReused());
+        assertTrue(salesDe.getCompileData() instanceof byte[]);
+    }
+
+    public void testFailedClassesAreCompiledByEachReport() throws JRException {
+        ExpressionStore store = new ExpressionStore();
+        RecordingCompilation compilation = new RecordingCompilation();
+        compilation.failing = true;
+
+        assertNotNull(store.compile(new JRCompilationUnit[] {unit("Sales", "total")}, compilation));
+        compilation.failing = false;
+        JRCompilationUnit salesDe = unit("SalesDe", "total");
+        assertNull(store.compile(new JRCompilationUnit[] {salesDe}, compilation));
+
+        assertEquals(2, compilation.compiled.size());
+        assertEquals(0, store.getReused());
+        assertTrue(salesDe.getCompileData() instanceof byte[]);
+    }
+
+    private static Object load(final String className, final byte[] classBytes) throws Exception {
+        return new ClassLoader(ExpressionStoreTest.class.getClassLoader()) {
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                if (!className.equals(name)) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, classBytes, 0, classBytes.length);
+            }
+        }.loadClass(className).newInstance();
+    }
+
+    private static String source(String className, String value) {
+        return "public class " + className + " {\n  public String toString() {\n    return \"" + value
+                + "\";\n  }\n}\n";
+    }
+
+    private static JRCompilationUnit unit(final String className, String value) {
+        JRCompilationUnit unit = new JRCompilationUnit(className) {
+            // the compile name comes from a compile task, which needs a whole report design
+            public String getCompileName() {
+                return className;
+            }
+        };
+        unit.setSource(new JRDefaultCompilationSourceCode(source(className, value), null), null, null);
+        return unit;
+    }
+
+    private static byte[] compile(String className, String source) {
+        JavaCompiler tool = ToolProvider.getSystemJavaCompiler();
+        MemoryFileManager fileManager = new MemoryFileManager(tool.getStandardFileManager(null, null, null));
+        List<JavaFileObject> units = Collections.singletonList(MemoryFileManager.source(className, source));
+        assertTrue(tool.getTask(null, fileManager, null, null, null, units).call());
+        return fileManager.getClassBytes(className);
+    }
+
+    private static class RecordingCompilation implements ExpressionStore.Compilation {
+        private final List<String> compiled = new ArrayList<String>();
+
+        private boolean failing;
+
+        public String compile(JRCompilationUnit[] units) {
+            for (JRCompilationUnit unit : units) {
+                compiled.add(unit.getCompileName());
+                if (failing) {
+                    return unit.getCompileName() + " does not compile";
+                }
+                unit.setCompileData(ExpressionStoreTest.compile(unit.getCompileName(), unit.getSourceCode()));
+            }
+            return null;
+        }
+    }
+}
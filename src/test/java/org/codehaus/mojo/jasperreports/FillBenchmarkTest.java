@@ -0,0 +1,74 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class FillBenchmarkTest extends TestCase {
+    private File file;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("fill-benchmark", ".csv");
+        file.delete();
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testWrittenResultsAreReadBack() throws IOException {
+        FillBenchmark benchmark = new FillBenchmark();
+        benchmark.add(new FillBenchmark.Result("Report.jasper", 3, 12500000, 2000000, 4096));
+        benchmark.add(new FillBenchmark.Result("sub/A, \"B\".jasper", 1, 1000000, 0, -1));
+        benchmark.write(file);
+
+        FillBenchmark read = FillBenchmark.read(file);
+        FillBenchmark.Result result = read.get("Report.jasper");
+        assertEquals(3, result.getPages());
+        assertEquals(12500000, result.getFillNanos());
+        assertEquals(2000000, result.getExportNanos());
+        assertEquals(4096, result.getAllocatedBytes());
+        result = read.get("sub/A, \"B\".jasper");
+        assertEquals(1, result.getPages());
+        assertEquals(-1, result.getAllocatedBytes());
+    }
+
+    public void testRegressionsBeyondThresholdAndNoise() {
+        FillBenchmark baseline = new FillBenchmark();
+        baseline.add(new FillBenchmark.Result("Slow.jasper", 1, 100000000, 0, 1024 * 1024));
+        baseline.add(new FillBenchmark.Result("Noisy.jasper", 1, 1000000, 0, 1024));
+        baseline.add(new FillBenchmark.Result("Stable.jasper", 1, 100000000, 0, 1024 * 1024));
+
+        FillBenchmark current = new FillBenchmark();
+        current.add(new FillBenchmark.Result("Slow.jasper", 1, 200000000, 0, 4 * 1024 * 1024));
+        current.add(new FillBenchmark.Result("Noisy.jasper", 1, 5000000, 0, 4096));
+        current.add(new FillBenchmark.Result("Stable.jasper", 1, 120000000, 0, 1024 * 1024));
+        current.add(new FillBenchmark.Result("New.jasper", 1, 900000000, 0, 1024 * 1024));
+
+        List<String> regressions = current.compare(baseline, 50, 10000000);
+        assertEquals(2, regressions.size());
+        assertTrue(regressions.get(0).startsWith("Slow.jasper: fill time"));
+        assertTrue(regressions.get(1).startsWith("Slow.jasper: allocated"));
+    }
+}
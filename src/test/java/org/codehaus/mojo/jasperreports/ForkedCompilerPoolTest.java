@@ -0,0 +1,66 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.compiler.CompilerMessage;
+
+public class ForkedCompilerPoolTest extends TestCase {
+    private ForkedCompilerPool pool;
+
+    protected void setUp() throws Exception {
+        pool = new ForkedCompilerPool(1, "64m", Collections.<String>emptyList());
+    }
+
+    protected void tearDown() {
+        pool.close();
+    }
+
+    public void testCompilesInWorker() throws Exception {
+        List<String> options = Arrays.asList("-g:none", "-proc:none");
+        Map<String, String> sources = new LinkedHashMap<String, String>();
+        sources.put("Good", "public class Good { String value() { return \"good\"; } }");
+        Map<CompilerMessage, String> messages = new LinkedHashMap<CompilerMessage, String>();
+
+        Map<String, byte[]> classes = pool.compile(options, "", sources, messages);
+        assertTrue(messages.isEmpty());
+        assertEquals(Collections.singleton("Good"), classes.keySet());
+        byte[] classBytes = classes.get("Good");
+        assertEquals((byte) 0xCA, classBytes[0]);
+        assertEquals((byte) 0xFE, classBytes[1]);
+
+        // the same worker answers the next request
+        sources.put("Bad", "public class Bad { int value() { return missing; } }");
+        classes = pool.compile(options, "", sources, messages);
+        assertFalse(classes.containsKey("Bad"));
+        assertEquals(1, messages.size());
+        CompilerMessage message = messages.keySet().iterator().next();
+        assertTrue(message.isError());
+        assertEquals("Bad.java", message.getFile());
+        assertEquals(1, message.getStartLine());
+        assertEquals("Bad", messages.get(message));
+    }
+}
@@ -0,0 +1,63 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.MojoExecutionException;
+
+public class InMemoryJavacCompilerTest extends TestCase {
+
+    public void testDesignIsCompiled() throws Exception {
+        ReportProject project = new ReportProject("platform-types");
+        try {
+            assertEquals(Arrays.asList("Timestamps.jrxml"), project.execute(createMojo(project)));
+            assertTrue(project.getOutput("Timestamps.jasper").isFile());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testExpressionErrorsAreReportedWithTheirLine() throws Exception {
+        ReportProject project = new ReportProject("expression-errors");
+        try {
+            project.execute(createMojo(project));
+            fail();
+        } catch (MojoExecutionException e) {
+            assertEquals("Error compiling 2 report designs, see above for details", e.getMessage());
+            assertTrue(project.getOutput("Plain.jasper").isFile());
+            assertTrue(
+                    project.getErrors().toString(),
+                    EcjCompilerTest.containsError(project, "Sales", "noSuchSalesMethod"));
+            assertTrue(
+                    project.getErrors().toString(),
+                    EcjCompilerTest.containsError(project, "Stock", "noSuchStockMethod"));
+        } finally {
+            project.delete();
+        }
+    }
+
+    private static JasperReportsMojo createMojo(ReportProject project) throws Exception {
+        JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+        Mojos.set(mojo, "compiler", InMemoryJavacCompiler.class.getName());
+        return mojo;
+    }
+}
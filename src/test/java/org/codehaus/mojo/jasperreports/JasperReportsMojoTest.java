@@ -20,11 +20,23 @@ package org.codehaus.mojo.jasperreports;
  */
 
 import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.TestCase;
+import net.sf.jasperreports.engine.JREmptyDataSource;
+import net.sf.jasperreports.engine.JasperFillManager;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.design.JRJavacCompiler;
+import net.sf.jasperreports.engine.util.JRLoader;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.FileUtils;
 
 /**
  * @author gjoseph
@@ -56,4 +68,247 @@ public class JasperReportsMojoTest extends TestCase {
                 "foo" + File.pathSeparator + "plop",
                 mojo.buildClasspathString(Collections.singletonList("foo"), "plop"));
     }
+
+    public void testDefaultConfigurationCompilesAllReports() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            assertEquals(Arrays.asList("Master.jrxml", "Plain.jrxml", "sub/Child.jrxml"), project.compile());
+
+            for (String path : Arrays.asList("Master.jasper", "Plain.jasper", "sub/Child.jasper")) {
+                JasperReport report = (JasperReport) JRLoader.loadObject(project.getOutput(path));
+                assertEquals(JRJavacCompiler.class.getName(), report.getCompilerClass());
+            }
+            JasperReport plain = (JasperReport) JRLoader.loadObject(project.getOutput("Plain.jasper"));
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            parameters.put("TITLE", " Sales ");
+            JasperPrint print = JasperFillManager.fillReport(plain, parameters, new JREmptyDataSource());
+            assertEquals(1, print.getPages().size());
+
+            assertFalse(project.getOutput("META-INF/jasperreports/reports.properties")
+                    .exists());
+            // the JDT compiler of JasperReports, which records itself as javac, does not reuse classes
+            assertFalse(new File(project.getBuildDirectory(), "jasperreports/expressions").exists());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testConfiguredCompilerOfThePluginIsUsed() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "compiler", MavenJavacCompiler.class.getName());
+            assertEquals(Arrays.asList("Master.jrxml", "Plain.jrxml", "sub/Child.jrxml"), project.execute(mojo));
+            JasperReport report = (JasperReport) JRLoader.loadObject(project.getOutput("Plain.jasper"));
+            assertEquals(JRJavacCompiler.class.getName(), report.getCompilerClass());
+            assertTrue(new File(project.getBuildDirectory(), "jasperreports/expressions").isDirectory());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testConcurrentFailuresAreReportedInSourceOrder() throws Exception {
+        ReportProject project = new ReportProject("expression-errors");
+        try {
+            for (int run = 0; run < 3; run++) {
+                JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+                Mojos.set(mojo, "threads", Integer.valueOf(3));
+                try {
+                    project.execute(mojo);
+                    fail();
+                } catch (MojoExecutionException e) {
+                    assertEquals("Error compiling 2 report designs, see above for details", e.getMessage());
+                    assertTrue(e.getCause().getMessage().endsWith("Sales.jrxml"));
+                }
+                List<String> failed = new ArrayList<String>();
+                for (String error : project.getErrors()) {
+                    if (error.startsWith("Error compiling report design : ")) {
+                        failed.add(new File(error.substring(0, error.indexOf('\n'))).getName());
+                    }
+                }
+                assertEquals(Arrays.asList("Sales.jrxml", "Stock.jrxml"), failed);
+            }
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testInvalidDesignsAreAllReportedBeforeCompiling() throws Exception {
+        ReportProject project = new ReportProject("design-errors");
+        try {
+            JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "threads", Integer.valueOf(2));
+            try {
+                project.execute(mojo);
+                fail();
+            } catch (MojoExecutionException e) {
+                assertEquals("Error verifying 3 report designs, see above for details", e.getMessage());
+            }
+            List<String> invalid = new ArrayList<String>();
+            for (String error : project.getErrors()) {
+                if (error.startsWith("Invalid report design : ")) {
+                    invalid.add(error.substring(0, error.indexOf('\n')));
+                }
+            }
+            assertEquals(3, invalid.size());
+            assertTrue(invalid.get(0), invalid.get(0).contains("MissingField.jrxml, Report design not valid"));
+            assertTrue(invalid.get(1), invalid.get(1).contains("MissingVariable.jrxml, Report design not valid"));
+            assertTrue(invalid.get(2), invalid.get(2).matches(".*Unknown\\.jrxml, line \\d+, column \\d+: .*"));
+            assertFalse(project.getOutput("Plain.jasper").exists());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testCompilingTheSameDesignGivesTheSameReport() throws Exception {
+        ReportProject first = new ReportProject("components");
+        ReportProject second = new ReportProject("components");
+        try {
+            assertEquals(Arrays.asList("Components.jrxml"), first.compile());
+            assertEquals(Arrays.asList("Components.jrxml"), second.compile());
+            assertTrue(Arrays.equals(
+                    Files.readAllBytes(first.getOutput("Components.jasper").toPath()),
+                    Files.readAllBytes(second.getOutput("Components.jasper").toPath())));
+        } finally {
+            first.delete();
+            second.delete();
+        }
+    }
+
+    public void testManifestKeepsUnchangedReports() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            project.compile();
+            assertTrue(new File(project.getBuildDirectory(), "jasperreports/manifest.txt").isFile());
+
+            assertEquals(Collections.emptyList(), project.compile());
+            assertTrue(project.getMessages().contains("Nothing to compile - all Jasper reports are up to date"));
+
+            File plain = project.getSource("Plain.jrxml");
+            plain.setLastModified(plain.lastModified() + 2000);
+            assertEquals(Collections.emptyList(), project.compile());
+
+            project.append("Plain.jrxml", "\n");
+            assertEquals(Arrays.asList("Plain.jrxml"), project.compile());
+
+            project.getOutput("Plain.jasper").delete();
+            assertEquals(Arrays.asList("Plain.jrxml"), project.compile());
+            assertTrue(project.getOutput("Plain.jasper").isFile());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testCleanBuildRestoresReportsFromTheCache() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            File cacheDirectory = new File(project.getBasedir(), "cache");
+            JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "cacheDirectory", cacheDirectory);
+            assertEquals(Arrays.asList("Master.jrxml", "Plain.jrxml", "sub/Child.jrxml"), project.execute(mojo));
+
+            FileUtils.deleteDirectory(project.getBuildDirectory());
+            mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "cacheDirectory", cacheDirectory);
+            project.execute(mojo);
+            assertEquals(Arrays.asList("Master.jrxml", "Plain.jrxml", "sub/Child.jrxml"), project.getRestored());
+            assertTrue(project.getOutput("Master.jasper").isFile());
+            assertTrue(project.getOutput("sub/Child.jasper").isFile());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testChangedClassesOfTheClasspathBypassTheCache() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            File cacheDirectory = new File(project.getBasedir(), "cache");
+            File classes = new File(project.getBasedir(), "lib/classes");
+            File classFile = new File(classes, "org/example/Helper.class");
+            classFile.getParentFile().mkdirs();
+            FileUtils.fileWrite(classFile.getPath(), "first");
+            JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "cacheDirectory", cacheDirectory);
+            Mojos.set(mojo, "additionalClasspath", classes.getPath());
+            project.execute(mojo);
+            assertEquals(Collections.emptyList(), project.getRestored());
+
+            FileUtils.fileWrite(classFile.getPath(), "second");
+            FileUtils.deleteDirectory(project.getBuildDirectory());
+            mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "cacheDirectory", cacheDirectory);
+            Mojos.set(mojo, "additionalClasspath", classes.getPath());
+            assertEquals(Arrays.asList("Master.jrxml", "Plain.jrxml", "sub/Child.jrxml"), project.execute(mojo));
+            assertEquals(Collections.emptyList(), project.getRestored());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testMergedShardsAreUpToDate() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            File target = project.getBuildDirectory();
+            List<String> compiled = new ArrayList<String>();
+            for (int shard = 0; shard < 2; shard++) {
+                JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+                Mojos.set(mojo, "shardCount", Integer.valueOf(2));
+                Mojos.set(mojo, "shardIndex", Integer.valueOf(shard));
+                Mojos.set(mojo, "manifestFile", new File(target, "manifest-" + shard + ".txt"));
+                Mojos.set(mojo, "reportIndexFile", new File(target, "reports-" + shard + ".properties"));
+                List<String> shardReports = project.execute(mojo);
+                assertFalse(shardReports.isEmpty());
+                compiled.addAll(shardReports);
+            }
+            Collections.sort(compiled);
+            assertEquals(Arrays.asList("Master.jrxml", "Plain.jrxml", "sub/Child.jrxml"), compiled);
+
+            File reportIndexFile = project.getOutput("META-INF/jasperreports/reports.properties");
+            MergeShardsMojo merge = new MergeShardsMojo();
+            Mojos.set(
+                    merge,
+                    "shardManifests",
+                    Arrays.asList(new File(target, "manifest-0.txt"), new File(target, "manifest-1.txt")));
+            Mojos.set(
+                    merge,
+                    "shardReportIndexes",
+                    Arrays.asList(new File(target, "reports-0.properties"), new File(target, "reports-1.properties")));
+            Mojos.set(merge, "manifestFile", new File(target, "jasperreports/manifest.txt"));
+            Mojos.set(merge, "reportIndexFile", reportIndexFile);
+            merge.execute();
+
+            JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "reportIndexFile", reportIndexFile);
+            assertEquals(Collections.emptyList(), project.execute(mojo));
+            assertEquals(3, ReportIndex.read(reportIndexFile).getEntries().size());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testBatchCompilesAllReports() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            JasperReportsMojo mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "compiler", MavenJavacCompiler.class.getName());
+            Mojos.set(mojo, "batch", Boolean.TRUE);
+            Mojos.set(mojo, "batchSize", Integer.valueOf(2));
+            assertEquals(Arrays.asList("Master.jrxml", "Plain.jrxml", "sub/Child.jrxml"), project.execute(mojo));
+
+            JasperReport plain = (JasperReport) JRLoader.loadObject(project.getOutput("Plain.jasper"));
+            JasperPrint print =
+                    JasperFillManager.fillReport(plain, new HashMap<String, Object>(), new JREmptyDataSource());
+            assertEquals(1, print.getPages().size());
+
+            project.append("sub/Child.jrxml", "\n");
+            mojo = project.configure(new JasperReportsMojo());
+            Mojos.set(mojo, "compiler", MavenJavacCompiler.class.getName());
+            Mojos.set(mojo, "batch", Boolean.TRUE);
+            Mojos.set(mojo, "batchSize", Integer.valueOf(2));
+            assertEquals(Arrays.asList("Master.jrxml", "sub/Child.jrxml"), project.execute(mojo));
+            assertTrue(project.getOutput("sub/Child.jasper").isFile());
+        } finally {
+            project.delete();
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+public class MemoryBudgetTest extends TestCase {
+
+    public void testExpressionsAreCounted() throws Exception {
+        String design = "<jasperReport><variable name=\"v\"><variableExpression><![CDATA[1]]></variableExpression>"
+                + "</variable><textField><textFieldExpression><![CDATA[$V{v}]]></textFieldExpression></textField>"
+                + "<staticText><text><![CDATA[Expression>]]></text></staticText></jasperReport>";
+        assertEquals(2, MemoryBudget.countExpressions(design.getBytes("UTF-8")));
+
+        String attributes = "<textField><textFieldExpression class=\"java.lang.String\"><![CDATA[\"</a>\"]]>"
+                + "</textFieldExpression ></textField><textField><c:textFieldExpression><![CDATA[$V{v}]]>"
+                + "</c:textFieldExpression></textField><textField><expression/></textField>";
+        assertEquals(2, MemoryBudget.countExpressions(attributes.getBytes("UTF-8")));
+        assertTrue(MemoryBudget.estimate(100000, 100) > MemoryBudget.estimate(100000, 10));
+    }
+
+    public void testDesignFilesAreReadInChunks() throws Exception {
+        StringBuilder design = new StringBuilder("<jasperReport>");
+        for (int i = 0; i < 1000; i++) {
+            design.append("<textField><textFieldExpression><![CDATA[$F{f")
+                    .append(i)
+                    .append("}]]></textFieldExpression></textField>");
+        }
+        design.append("</jasperReport>");
+        byte[] content = design.toString().getBytes("UTF-8");
+        File file = File.createTempFile("MemoryBudgetTest", ".jrxml");
+        try {
+            FileUtils.fileWrite(file.getPath(), "UTF-8", design.toString());
+            assertEquals(1000, MemoryBudget.countExpressions(content));
+            assertEquals(MemoryBudget.estimate(content.length, 1000), MemoryBudget.estimate(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testCompilationsWaitForMemory() throws Exception {
+        final MemoryBudget budget = new MemoryBudget(10 * 1024 * 1024);
+        // an estimate above the whole budget takes all of it
+        int all = budget.acquire(20 * 1024 * 1024);
+        assertEquals(10 * 1024, all);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    budget.release(budget.acquire(1024 * 1024));
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    // the test fails
+                }
+            }
+        };
+        thread.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        budget.release(all);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,109 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import org.codehaus.plexus.util.FileUtils;
+
+public class MergeShardsMojoTest extends TestCase {
+    private File dir;
+
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("shards", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    protected void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testShardsAreMergedWithTheirPortableEnvironment() throws Exception {
+        File manifest0 = writeManifest("manifest-0.txt", "local-0", "portable", "Sales.jrxml");
+        File manifest1 = writeManifest("manifest-1.txt", "local-1", "portable", "Stock.jrxml");
+        File index0 = writeIndex("reports-0.properties", "Sales.jasper");
+        File index1 = writeIndex("reports-1.properties", "Stock.jasper");
+
+        MergeShardsMojo mojo = createMojo(Arrays.asList(manifest0, manifest1), Arrays.asList(index0, index1));
+        mojo.execute();
+
+        BuildManifest merged = BuildManifest.read(new File(dir, "manifest.txt"));
+        assertNull(merged.getEnvironment());
+        assertEquals("portable", merged.getPortableEnvironment());
+        assertEquals(
+                Arrays.asList("Sales.jrxml", "Stock.jrxml"),
+                Arrays.asList(merged.getEntries().keySet().toArray()));
+        ReportIndex index = ReportIndex.read(new File(dir, "reports.properties"));
+        assertTrue(index.contains("Sales.jasper"));
+        assertTrue(index.contains("Stock.jasper"));
+    }
+
+    public void testShardsOfDifferentEnvironmentsAreNotReused() throws Exception {
+        File manifest0 = writeManifest("manifest-0.txt", "local-0", "portable-0", "Sales.jrxml");
+        File manifest1 = writeManifest("manifest-1.txt", "local-1", "portable-1", "Stock.jrxml");
+
+        createMojo(Arrays.asList(manifest0, manifest1), Collections.<File>emptyList())
+                .execute();
+
+        BuildManifest merged = BuildManifest.read(new File(dir, "manifest.txt"));
+        assertNull(merged.getEnvironment());
+        assertNull(merged.getPortableEnvironment());
+        assertFalse(new File(dir, "reports.properties").exists());
+    }
+
+    private MergeShardsMojo createMojo(List<File> manifests, List<File> indexes) throws Exception {
+        MergeShardsMojo mojo = new MergeShardsMojo();
+        Mojos.set(mojo, "shardManifests", manifests);
+        Mojos.set(mojo, "shardReportIndexes", indexes);
+        Mojos.set(mojo, "manifestFile", new File(dir, "manifest.txt"));
+        Mojos.set(mojo, "reportIndexFile", new File(dir, "reports.properties"));
+        return mojo;
+    }
+
+    private File writeManifest(String name, String environment, String portableEnvironment, String design)
+            throws IOException {
+        BuildManifest manifest = new BuildManifest();
+        manifest.setEnvironment(environment);
+        manifest.setPortableEnvironment(portableEnvironment);
+        manifest.put(design, new BuildManifest.Entry(10, 1000, "0a1b", "2c3d", Collections.<String>emptyList()));
+        File file = new File(dir, name);
+        manifest.write(file);
+        return file;
+    }
+
+    private File writeIndex(String name, String report) throws IOException {
+        JasperDesign design = new JasperDesign();
+        design.setName(report.substring(0, report.indexOf('.')));
+        ReportIndex index = ReportIndex.read(new File(dir, name));
+        index.put(
+                report,
+                ReportIndex.Entry.of(design, "0a1b", Collections.<String>emptyList(), Collections.<String>emptyList()));
+        File file = new File(dir, name);
+        index.write(file);
+        return file;
+    }
+}
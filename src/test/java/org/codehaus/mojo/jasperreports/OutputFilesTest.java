@@ -0,0 +1,75 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class OutputFilesTest extends TestCase {
+    private File file;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("report", ".jasper");
+        file.delete();
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testUnchangedContentIsNotWritten() throws IOException {
+        assertTrue(OutputFiles.writeIfChanged(new byte[] {1, 2, 3}, file));
+        assertTrue(file.setLastModified(1000000000000L));
+
+        assertFalse(OutputFiles.writeIfChanged(new byte[] {1, 2, 3}, file));
+        assertEquals(1000000000000L, file.lastModified());
+
+        assertTrue(OutputFiles.writeIfChanged(new byte[] {1, 2, 4}, file));
+        assertTrue(OutputFiles.writeIfChanged(new byte[] {1, 2}, file));
+        assertEquals(2, Files.readAllBytes(file.toPath()).length);
+        assertEquals(
+                1,
+                file.getParentFile()
+                        .list(new java.io.FilenameFilter() {
+                            public boolean accept(File dir, String name) {
+                                return name.startsWith(file.getName());
+                            }
+                        })
+                        .length);
+    }
+
+    public void testCopyCreatesTheDirectory() throws IOException {
+        assertTrue(OutputFiles.writeIfChanged(new byte[] {1, 2, 3}, file));
+        File dir = new File(file.getPath() + ".dir");
+        File copy = new File(dir, "copy.jasper");
+        try {
+            OutputFiles.copy(file, copy);
+            assertTrue(Arrays.equals(new byte[] {1, 2, 3}, Files.readAllBytes(copy.toPath())));
+            assertEquals(1, dir.list().length);
+        } finally {
+            copy.delete();
+            dir.delete();
+        }
+    }
+}
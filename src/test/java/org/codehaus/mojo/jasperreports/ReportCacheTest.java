@@ -0,0 +1,77 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+public class ReportCacheTest extends TestCase {
+    private File dir;
+
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("cache", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    protected void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File write(String name, int size) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[size]);
+        out.close();
+        return file;
+    }
+
+    public void testStoredReportIsRestored() throws IOException {
+        ReportCache cache = new ReportCache(new File(dir, "cache"), 1000);
+        File dest = new File(dir, "Report.jasper");
+        assertFalse(cache.restore("0123456789abcdef", dest));
+        assertFalse(dest.exists());
+
+        cache.store("0123456789abcdef", write("compiled.jasper", 10));
+        assertTrue(cache.restore("0123456789abcdef", dest));
+        assertEquals(10, dest.length());
+    }
+
+    public void testLeastRecentlyUsedReportsAreEvicted() throws IOException {
+        ReportCache cache = new ReportCache(new File(dir, "cache"), 25);
+        cache.store("aa00000000000000", write("a.jasper", 10));
+        cache.store("bb00000000000000", write("b.jasper", 10));
+        cache.store("cc00000000000000", write("c.jasper", 10));
+        new File(dir, "cache/aa/aa00000000000000.jasper").setLastModified(1000000000000L);
+        new File(dir, "cache/bb/bb00000000000000.jasper").setLastModified(3000000000000L);
+        new File(dir, "cache/cc/cc00000000000000.jasper").setLastModified(2000000000000L);
+
+        assertEquals(1, cache.evict());
+        File dest = new File(dir, "Report.jasper");
+        assertFalse(cache.restore("aa00000000000000", dest));
+        assertTrue(cache.restore("bb00000000000000", dest));
+        assertTrue(cache.restore("cc00000000000000", dest));
+        assertEquals(0, cache.evict());
+    }
+}
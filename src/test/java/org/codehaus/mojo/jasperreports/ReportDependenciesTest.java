@@ -0,0 +1,110 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+import net.sf.jasperreports.engine.design.JRDesignExpression;
+import net.sf.jasperreports.engine.xml.JRXmlLoader;
+import org.codehaus.plexus.util.FileUtils;
+
+public class ReportDependenciesTest extends TestCase {
+    public void testStringLiteralsOfExpression() {
+        assertEquals(
+                Arrays.asList("sub/Child.jasper"),
+                ReportDependencies.getStringLiterals(
+                        new JRDesignExpression("$P{SUBREPORT_DIR} + \"sub/Child.jasper\"")));
+        assertEquals(
+                Arrays.asList("a \"quoted\" name.png", "other.png"),
+                ReportDependencies.getStringLiterals(
+                        new JRDesignExpression("$F{x} ? \"a \\\"quoted\\\" name.png\" : \"other.png\"")));
+    }
+
+    public void testStringLiteralsAreUnescaped() {
+        assertEquals(
+                Arrays.asList("a\\b.jasper", "tab\there", "\u00e9t\u00e9.png", "A1"),
+                ReportDependencies.getStringLiterals(new JRDesignExpression(
+                        "\"a\\\\b.jasper\" + \"tab\\there\" + \"\\u00e9t\\351.png\" + \"\\1011\"")));
+        assertEquals("\\u12", ReportDependencies.unescape("\\u12"));
+        assertEquals("\\", ReportDependencies.unescape("\\\\"));
+    }
+
+    public void testNoLiteralsInParameterChunks() {
+        assertEquals(
+                Collections.emptyList(), ReportDependencies.getStringLiterals(new JRDesignExpression("$P{IMAGE}")));
+        assertEquals(Collections.emptyList(), ReportDependencies.getStringLiterals(null));
+    }
+
+    public void testCompiledSubreportsAndTemplatesResolveToTheirSources() throws Exception {
+        File sourceDirectory = getSourceDirectory();
+        ReportDependencies dependencies = new ReportDependencies(sourceDirectory, ".jrxml", ".jasper");
+        File master = new File(sourceDirectory, "Master.jrxml");
+        assertEquals(
+                Arrays.asList("styles.jrtx", "sub" + File.separator + "Child.jrxml"),
+                Arrays.asList(
+                        dependencies.collect(JRXmlLoader.load(master), master).toArray()));
+    }
+
+    public void testImagesAndResourceBundlesOfAllLocales() throws Exception {
+        File sourceDirectory = getSourceDirectory();
+        ReportDependencies dependencies = new ReportDependencies(sourceDirectory, ".jrxml", ".jasper");
+        File child = new File(sourceDirectory, "sub/Child.jrxml");
+        String sub = "sub" + File.separator;
+        assertEquals(
+                Arrays.asList(sub + "logo.png", sub + "messages.properties", sub + "messages_de.properties"),
+                Arrays.asList(
+                        dependencies.collect(JRXmlLoader.load(child), child).toArray()));
+    }
+
+    public void testChangedSubreportMakesItsMasterStale() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            assertEquals(Arrays.asList("Master.jrxml", "Plain.jrxml", "sub/Child.jrxml"), project.compile());
+            assertEquals(Collections.emptyList(), project.compile());
+
+            project.append("sub/Child.jrxml", "\n");
+            assertEquals(Arrays.asList("Master.jrxml", "sub/Child.jrxml"), project.compile());
+        } finally {
+            project.delete();
+        }
+    }
+
+    public void testChangedResourcesMakeTheirDependentsStale() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        try {
+            project.compile();
+
+            project.change("sub/messages_de.properties", "count.label=Zahl\n");
+            assertEquals(Arrays.asList("Master.jrxml", "sub/Child.jrxml"), project.compile());
+
+            project.change("styles.jrtx", FileUtils.fileRead(project.getSource("styles.jrtx")) + "\n");
+            assertEquals(Arrays.asList("Master.jrxml"), project.compile());
+        } finally {
+            project.delete();
+        }
+    }
+
+    private File getSourceDirectory() {
+        return new File(getClass().getResource("/reports").getPath());
+    }
+}
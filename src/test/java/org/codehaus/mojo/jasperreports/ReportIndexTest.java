@@ -0,0 +1,126 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import net.sf.jasperreports.engine.design.JRDesignParameter;
+import net.sf.jasperreports.engine.design.JasperDesign;
+
+public class ReportIndexTest extends TestCase {
+    private File file;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("reports", ".properties");
+        file.delete();
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    public void testWrittenEntriesAreReadBack() throws Exception {
+        JasperDesign design = new JasperDesign();
+        design.setName("Sub Report");
+        JRDesignParameter parameter = new JRDesignParameter();
+        parameter.setName("TITLE");
+        parameter.setValueClass(String.class);
+        design.addParameter(parameter);
+
+        ReportIndex index = ReportIndex.read(file);
+        assertTrue(index.isModified());
+        index.put(
+                "sub/Sub Report.jasper",
+                ReportIndex.Entry.of(design, "abc", Arrays.asList("Child.jasper"), Arrays.asList("styles.jrtx")));
+        index.write(file);
+        assertFalse(index.isModified());
+
+        ReportIndex.Entry entry = ReportIndex.read(file).get("sub/Sub Report.jasper");
+        assertEquals("Sub Report", entry.getName());
+        assertEquals("abc", entry.getHash());
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("TITLE", "java.lang.String");
+        assertEquals(parameters, entry.getParameters());
+        assertEquals(Arrays.asList("Child.jasper"), entry.getSubreports());
+        assertEquals(Arrays.asList("styles.jrtx"), entry.getResources());
+
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        assertEquals("sub/Sub Report.jasper", properties.getProperty("reports"));
+        assertEquals("java.lang.String", properties.getProperty("sub/Sub Report.jasper.parameter.TITLE"));
+    }
+
+    public void testSeparatorsInPathsAreEscaped() throws IOException {
+        ReportIndex index = new ReportIndex();
+        index.put(
+                "Sales, 2024.jasper",
+                new ReportIndex.Entry(
+                        "Sales",
+                        "abc",
+                        Collections.<String, String>emptyMap(),
+                        Arrays.asList("Region, North.jasper", "a\\b.jasper"),
+                        Arrays.asList("styles.jrtx")));
+        index.put("Stock.jasper", index.get("Sales, 2024.jasper"));
+        index.write(file);
+
+        ReportIndex read = ReportIndex.read(file);
+        assertEquals(
+                Arrays.asList("Sales, 2024.jasper", "Stock.jasper"),
+                Arrays.asList(read.getEntries().keySet().toArray()));
+        assertEquals(
+                Arrays.asList("Region, North.jasper", "a\\b.jasper"),
+                read.get("Sales, 2024.jasper").getSubreports());
+    }
+
+    public void testPruneDropsMissingReports() throws IOException {
+        ReportIndex index = new ReportIndex();
+        ReportIndex.Entry entry = new ReportIndex.Entry(
+                "Report",
+                "abc",
+                Collections.<String, String>emptyMap(),
+                Collections.<String>emptyList(),
+                Collections.<String>emptyList());
+        index.put("A.jasper", entry);
+        index.put("B.jasper", entry);
+        index.write(file);
+
+        ReportIndex read = ReportIndex.read(file);
+        read.put("A.jasper", entry);
+        assertFalse(read.isModified());
+        read.prune(Collections.singleton("A.jasper"));
+        assertTrue(read.isModified());
+        assertTrue(read.contains("A.jasper"));
+        assertFalse(read.contains("B.jasper"));
+    }
+}
@@ -0,0 +1,240 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import net.sf.jasperreports.engine.JRReport;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.compiler.Compiler;
+import org.codehaus.plexus.compiler.javac.InProcessCompiler;
+import org.codehaus.plexus.compiler.javac.JavacCompiler;
+import org.codehaus.plexus.compiler.javac.JavaxToolsCompiler;
+import org.codehaus.plexus.compiler.manager.CompilerManager;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * A project whose report designs are copied from the test resources, compiled by the mojos configured
+ * with the defaults Maven would inject.
+ */
+class ReportProject {
+
+    private static final String COMPILING = "Compiling report file: ";
+
+    private static final String RESTORED = "Restored report file from cache: ";
+
+    private final File basedir;
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+    ReportProject(String resources) throws IOException {
+        basedir = File.createTempFile("project", "");
+        basedir.delete();
+        File source = new File(ReportProject.class.getResource("/" + resources).getPath());
+        FileUtils.copyDirectoryStructure(source, getSourceDirectory());
+    }
+
+    File getBasedir() {
+        return basedir;
+    }
+
+    File getSourceDirectory() {
+        return new File(basedir, "src/main/jasperreports");
+    }
+
+    File getBuildDirectory() {
+        return new File(basedir, "target");
+    }
+
+    File getOutputDirectory() {
+        return new File(getBuildDirectory(), "classes");
+    }
+
+    File getSource(String path) {
+        return new File(getSourceDirectory(), path);
+    }
+
+    File getOutput(String path) {
+        return new File(getOutputDirectory(), path);
+    }
+
+    /**
+     * Changes a file of the source directory, so that both its content and its modification time differ.
+     */
+    void change(String path, String content) throws IOException {
+        File file = getSource(path);
+        long lastModified = file.lastModified();
+        FileUtils.fileWrite(file, "UTF-8", content);
+        file.setLastModified(lastModified + 2000);
+    }
+
+    void append(String path, String content) throws IOException {
+        change(path, FileUtils.fileRead(getSource(path), "UTF-8") + content);
+    }
+
+    /**
+     * Sets the parameters of a mojo to their default values.
+     */
+    <T extends JasperReportsMojo> T configure(T mojo) throws Exception {
+        MavenProject project = new MavenProject();
+        project.setFile(new File(basedir, "pom.xml"));
+        Build build = new Build();
+        build.setDirectory(getBuildDirectory().getPath());
+        build.setOutputDirectory(getOutputDirectory().getPath());
+        project.setBuild(build);
+
+        final Compiler javac = new JavacCompiler() {
+            @Override
+            protected InProcessCompiler inProcessCompiler() {
+                return new JavaxToolsCompiler();
+            }
+        };
+        CompilerManager compilerManager = new CompilerManager() {
+            public Compiler getCompiler(String compilerId) {
+                return javac;
+            }
+        };
+
+        File jasperreports = new File(JRReport.class
+                .getProtectionDomain()
+                .getCodeSource()
+                .getLocation()
+                .toURI());
+        File target = getBuildDirectory();
+        Mojos.set(mojo, "project", project);
+        Mojos.set(mojo, "javaDirectory", new File(target, "jasperreports/java"));
+        Mojos.set(mojo, "outputDirectory", getOutputDirectory());
+        Mojos.set(mojo, "sourceDirectory", getSourceDirectory());
+        Mojos.set(mojo, "sourceFileExt", ".jrxml");
+        Mojos.set(mojo, "outputFileExt", ".jasper");
+        Mojos.set(mojo, "keepSerializedObject", Boolean.TRUE);
+        Mojos.set(mojo, "xmlValidation", Boolean.TRUE);
+        Mojos.set(mojo, "verifyDesigns", Boolean.TRUE);
+        Mojos.set(mojo, "classpathElements", Collections.singletonList(jasperreports.getPath()));
+        Mojos.set(mojo, "compilerManager", compilerManager);
+        Mojos.set(mojo, "source", "1.8");
+        Mojos.set(mojo, "target", "1.8");
+        Mojos.set(mojo, "encoding", "UTF-8");
+        Mojos.set(mojo, "batchSize", Integer.valueOf(500));
+        Mojos.set(mojo, "manifestFile", new File(target, "jasperreports/manifest.txt"));
+        Mojos.set(mojo, "shardCount", Integer.valueOf(1));
+        Mojos.set(mojo, "cacheMaxSize", Long.valueOf(512));
+        Mojos.set(mojo, "reuseExpressionClasses", Boolean.TRUE);
+        Mojos.set(mojo, "expressionClassDirectory", new File(target, "jasperreports/expressions"));
+        Mojos.set(mojo, "expressionClassMaxSize", Long.valueOf(64));
+        Mojos.set(mojo, "timingsFile", new File(target, "jasperreports/compile-timings.json"));
+        Mojos.set(mojo, "slowestReports", Integer.valueOf(5));
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public boolean isInfoEnabled() {
+                return true;
+            }
+
+            @Override
+            public void info(CharSequence content) {
+                messages.add(content.toString());
+            }
+
+            @Override
+            public void error(CharSequence content) {
+                errors.add(content.toString());
+            }
+
+            @Override
+            public void error(CharSequence content, Throwable error) {
+                errors.add(error == null ? content.toString() : content + "\n" + error.getMessage());
+            }
+        });
+        return mojo;
+    }
+
+    /**
+     * Compiles the reports with the default configuration.
+     *
+     * @return the paths of the compiled designs
+     */
+    List<String> compile() throws Exception {
+        return execute(configure(new JasperReportsMojo()));
+    }
+
+    /**
+     * @return the paths of the designs compiled by the mojo
+     */
+    List<String> execute(JasperReportsMojo mojo) throws Exception {
+        clearMessages();
+        mojo.execute();
+        return getCompiled();
+    }
+
+    /**
+     * @return the paths of the designs compiled since the messages were last cleared
+     */
+    List<String> getCompiled() {
+        return getReports(COMPILING);
+    }
+
+    void clearMessages() {
+        messages.clear();
+        errors.clear();
+    }
+
+    /**
+     * @return the paths of the designs restored from the cache by the last execution
+     */
+    List<String> getRestored() {
+        return getReports(RESTORED);
+    }
+
+    List<String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return the errors logged by the last execution, followed by the messages of their causes
+     */
+    List<String> getErrors() {
+        return errors;
+    }
+
+    private List<String> getReports(String prefix) {
+        TreeSet<String> reports = new TreeSet<String>();
+        synchronized (messages) {
+            for (String message : messages) {
+                if (message.startsWith(prefix)) {
+                    reports.add(message.substring(prefix.length()).replace(File.separatorChar, '/'));
+                }
+            }
+        }
+        return new ArrayList<String>(reports);
+    }
+
+    void delete() throws IOException {
+        FileUtils.deleteDirectory(basedir);
+    }
+}
@@ -0,0 +1,67 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class ReportShardsTest extends TestCase {
+
+    public void testShardsCoverAllDesignsOnce() {
+        Map<String, Long> sizes = new TreeMap<String, Long>();
+        for (int i = 0; i < 50; i++) {
+            sizes.put("report" + i + ".jrxml", Long.valueOf(1000 + i * 37 % 500));
+        }
+
+        Set<String> all = new HashSet<String>();
+        long[] loads = new long[3];
+        for (int index = 0; index < 3; index++) {
+            Set<String> shard = ReportShards.select(sizes, index, 3);
+            assertEquals(shard, ReportShards.select(new TreeMap<String, Long>(sizes), index, 3));
+            for (String design : shard) {
+                assertTrue(all.add(design));
+                loads[index] += sizes.get(design).longValue();
+            }
+        }
+        assertEquals(sizes.keySet(), all);
+        for (long load : loads) {
+            assertTrue(Math.abs(load - loads[0]) <= 1500);
+        }
+    }
+
+    public void testLargeDesignsAreSpread() {
+        Map<String, Long> sizes = new TreeMap<String, Long>();
+        sizes.put("Large1.jrxml", Long.valueOf(100000));
+        sizes.put("Large2.jrxml", Long.valueOf(90000));
+        sizes.put("Small1.jrxml", Long.valueOf(1000));
+        sizes.put("Small2.jrxml", Long.valueOf(0));
+
+        assertEquals(Collections.singleton("Large1.jrxml"), ReportShards.select(sizes, 0, 2));
+        assertEquals(
+                new HashSet<String>(Arrays.asList("Large2.jrxml", "Small1.jrxml", "Small2.jrxml")),
+                ReportShards.select(sizes, 1, 2));
+    }
+}
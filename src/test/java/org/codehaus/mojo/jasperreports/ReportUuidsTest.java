@@ -0,0 +1,131 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+import net.sf.jasperreports.components.iconlabel.IconLabelComponent;
+import net.sf.jasperreports.components.map.StandardMapComponent;
+import net.sf.jasperreports.engine.JRComponentElement;
+import net.sf.jasperreports.engine.JRDatasetRun;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.design.JRDesignBand;
+import net.sf.jasperreports.engine.design.JRDesignFrame;
+import net.sf.jasperreports.engine.design.JRDesignStaticText;
+import net.sf.jasperreports.engine.design.JasperDesign;
+import net.sf.jasperreports.engine.xml.JRXmlLoader;
+import org.codehaus.plexus.util.FileUtils;
+
+public class ReportUuidsTest extends TestCase {
+
+    private static final UUID EXPLICIT = UUID.fromString("00000000-0000-4000-8000-000000000001");
+
+    public void testMissingUuidsAreDerivedFromTheSeed() {
+        Set<UUID> designUuids = Collections.singleton(EXPLICIT);
+        JasperDesign design1 = createDesign();
+        JasperDesign design2 = createDesign();
+        assertEquals(3, ReportUuids.assign(design1, designUuids, "0a1b2c3d4e5f6071"));
+        assertEquals(3, ReportUuids.assign(design2, designUuids, "0a1b2c3d4e5f6071"));
+        assertEquals(0, ReportUuids.assign(design2, designUuids, "0a1b2c3d4e5f6071"));
+
+        JRDesignFrame frame1 = (JRDesignFrame) design1.getTitle().getElements()[0];
+        JRDesignFrame frame2 = (JRDesignFrame) design2.getTitle().getElements()[0];
+        assertEquals(frame1.getUUID(), frame2.getUUID());
+        assertEquals(frame1.getElements()[0].getUUID(), frame2.getElements()[0].getUUID());
+        assertFalse(frame1.getUUID().equals(frame1.getElements()[0].getUUID()));
+        assertEquals(EXPLICIT, frame1.getElements()[1].getUUID());
+        assertEquals(
+                design1.getMainDesignDataset().getUUID(),
+                design2.getMainDesignDataset().getUUID());
+
+        JasperDesign other = createDesign();
+        ReportUuids.assign(other, designUuids, "1b2c3d4e5f607182");
+        assertFalse(frame1.getUUID().equals(other.getTitle().getElements()[0].getUUID()));
+    }
+
+    public void testElementsAndDatasetRunsOfComponentsAreGivenUuids() throws JRException {
+        String source = getClass().getResource("/components/Components.jrxml").getPath();
+        JasperDesign design1 = JRXmlLoader.load(source);
+        JasperDesign design2 = JRXmlLoader.load(source);
+        Set<UUID> designUuids = Collections.emptySet();
+        ReportUuids.assign(design1, designUuids, "0a1b2c3d4e5f6071");
+        ReportUuids.assign(design2, designUuids, "0a1b2c3d4e5f6071");
+
+        IconLabelComponent iconLabel1 = (IconLabelComponent) getComponent(design1, 0);
+        IconLabelComponent iconLabel2 = (IconLabelComponent) getComponent(design2, 0);
+        assertEquals(
+                iconLabel1.getLabelTextField().getUUID(),
+                iconLabel2.getLabelTextField().getUUID());
+        assertEquals(
+                iconLabel1.getIconTextField().getUUID(),
+                iconLabel2.getIconTextField().getUUID());
+
+        JRDatasetRun run1 = getMarkerDatasetRun(design1);
+        JRDatasetRun run2 = getMarkerDatasetRun(design2);
+        assertEquals(run1.getUUID(), run2.getUUID());
+    }
+
+    private static Object getComponent(JasperDesign design, int index) {
+        return ((JRComponentElement) design.getTitle().getElements()[index]).getComponent();
+    }
+
+    private static JRDatasetRun getMarkerDatasetRun(JasperDesign design) {
+        StandardMapComponent map = (StandardMapComponent) getComponent(design, 1);
+        return map.getMarkerItemDataList().get(0).getDataset().getDatasetRun();
+    }
+
+    public void testDesignUuidsAreReadFromTheSource() throws IOException {
+        File source = File.createTempFile("ReportUuidsTest", ".jrxml");
+        try {
+            FileUtils.fileWrite(
+                    source.getPath(),
+                    "UTF-8",
+                    "<jasperReport name=\"Report\" uuid=\"00000000-0000-4000-8000-000000000001\">\n"
+                            + "<staticText><reportElement uuid='00000000-0000-4000-8000-000000000002'/>"
+                            + "<text>uuid=\"not-a-uuid\"</text></staticText>\n"
+                            + "</jasperReport>\n");
+            Set<UUID> uuids = ReportUuids.getDesignUuids(source);
+            assertEquals(2, uuids.size());
+            assertTrue(uuids.contains(EXPLICIT));
+            assertTrue(uuids.contains(UUID.fromString("00000000-0000-4000-8000-000000000002")));
+        } finally {
+            source.delete();
+        }
+    }
+
+    private static JasperDesign createDesign() {
+        JasperDesign design = new JasperDesign();
+        design.setName("Report");
+        JRDesignFrame frame = new JRDesignFrame();
+        frame.addElement(new JRDesignStaticText());
+        JRDesignStaticText explicit = new JRDesignStaticText();
+        explicit.setUUID(EXPLICIT);
+        frame.addElement(explicit);
+        JRDesignBand title = new JRDesignBand();
+        title.addElement(frame);
+        design.setTitle(title);
+        return design;
+    }
+}
@@ -0,0 +1,75 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+
+public class ReportValidatorTest extends TestCase {
+    private static final String HEADER = "<jasperReport xmlns=\"http://jasperreports.sourceforge.net/jasperreports\""
+            + " name=\"Report\" pageWidth=\"595\" pageHeight=\"842\" columnWidth=\"555\">";
+
+    private File file;
+
+    protected void setUp() throws IOException {
+        file = File.createTempFile("Report", ".jrxml");
+    }
+
+    protected void tearDown() {
+        file.delete();
+    }
+
+    private void write(String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+    }
+
+    public void testValidDesignPasses() throws IOException, JRException {
+        ReportValidator validator = new ReportValidator(new SimpleJasperReportsContext());
+        write(HEADER + "<title><band height=\"20\"/></title></jasperReport>");
+        validator.validate(file);
+        validator.validate(file);
+    }
+
+    public void testInvalidDesignFailsWithLocation() throws IOException, JRException {
+        ReportValidator validator = new ReportValidator(new SimpleJasperReportsContext());
+        write(HEADER + "\n<title><band bogus=\"1\"/></title></jasperReport>");
+        try {
+            validator.validate(file);
+            fail("invalid design accepted");
+        } catch (JRException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("line 2,"));
+        }
+
+        write(HEADER + "<title>");
+        try {
+            validator.validate(file);
+            fail("malformed design accepted");
+        } catch (JRException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.nio.file.FileSystems;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class WatchMojoTest extends TestCase {
+
+    public void testChangedDesignIsCompiledAgain() throws Exception {
+        ReportProject project = new ReportProject("reports");
+        WatchMojo mojo = project.configure(new WatchMojo());
+        Mojos.set(mojo, "watchDelay", Long.valueOf(100));
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        try {
+            assertTrue(mojo.compileChanges());
+            assertTrue(project.getCompiled().contains("Plain.jrxml"));
+            CompilerService service = mojo.getCompilerService();
+            WatchMojo.register(watcher, mojo.getSourceDirectory().toPath());
+
+            project.clearMessages();
+            project.append("Plain.jrxml", "\n");
+            WatchKey key = watcher.poll(10, TimeUnit.SECONDS);
+            assertNotNull(key);
+            assertTrue(mojo.processChanges(watcher, key));
+            assertEquals(Arrays.asList("Plain.jrxml"), project.getCompiled());
+            assertSame(service, mojo.getCompilerService());
+        } finally {
+            watcher.close();
+            mojo.closeService();
+            project.delete();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.codehaus.mojo.jasperreports;
+
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License") you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class XxHash64Test extends TestCase {
+    private static long hash(String s) throws IOException {
+        byte[] bytes = s.getBytes("US-ASCII");
+        XxHash64 hash = new XxHash64();
+        hash.update(bytes, 0, bytes.length);
+        return hash.getValue();
+    }
+
+    public void testReferenceValues() throws IOException {
+        assertEquals(0xEF46DB3751D8E999L, hash(""));
+        assertEquals(0x44BC2CF5AD770999L, hash("abc"));
+        assertEquals(0xFBCEA83C8A378BF1L, hash("Nobody inspects the spammish repetition"));
+    }
+
+    public void testChunkedUpdatesGiveSameValue() throws IOException {
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        XxHash64 whole = new XxHash64();
+        whole.update(bytes, 0, bytes.length);
+
+        for (int chunk : new int[] {1, 7, 32, 33, 100}) {
+            XxHash64 chunked = new XxHash64();
+            for (int offset = 0; offset < bytes.length; offset += chunk) {
+                chunked.update(bytes, offset, Math.min(chunk, bytes.length - offset));
+            }
+            assertEquals("chunk " + chunk, whole.getValue(), chunked.getValue());
+        }
+    }
+
+    public void testFileHash() throws IOException {
+        File file = File.createTempFile("xxhash", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("abc".getBytes("US-ASCII"));
+            out.close();
+            assertEquals("44bc2cf5ad770999", XxHash64.hash(file));
+        } finally {
+            file.delete();
+        }
+    }
+}